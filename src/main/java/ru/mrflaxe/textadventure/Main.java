@@ -1,44 +1,93 @@
 package ru.mrflaxe.textadventure;
 
-import java.sql.SQLException;
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
 
+import com.pengrad.telegrambot.TelegramBot;
+
+import ru.mrflaxe.textadventure.cluster.ClusterRole;
+import ru.mrflaxe.textadventure.cluster.IngressNode;
 import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.console.AdminServer;
 import ru.mrflaxe.textadventure.console.ConsoleRequestHandler;
-import ru.mrflaxe.textadventure.database.Database;
-import ru.mrflaxe.textadventure.database.DatabaseManager;
-import ru.mrflaxe.textadventure.database.model.AchievementModel;
-import ru.mrflaxe.textadventure.database.model.ProfileModel;
-import ru.mrflaxe.textadventure.database.model.SaveModel;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.startup.StartupOrchestrator;
+import ru.mrflaxe.textadventure.update.polling.PollingController;
 
 public class Main {
     
     public static void main(String[] args) {
-        Configuration messages = new Configuration("messages.yml");
         Configuration config = new Configuration("config.yml");
-        Configuration achievements = new Configuration("achievements.yml");
+        Logger.configure(config);
+        
+        ClusterRole role = getClusterRole(config);
+        
+        // Ingress only forwards updates, it doesn't need database and quests
+        if(role == ClusterRole.INGRESS) {
+            launchIngress(config);
+            return;
+        }
+        
+        StartupOrchestrator startup = new StartupOrchestrator(config);
+        MyBot bot;
+        
+        try {
+            bot = startup.start(role);
+        } catch (CompletionException e) {
+            Logger.error("Failed to start the bot", e.getCause());
+            Logger.flush();
+            System.exit(1);
+            return;
+        }
+        
+        Logger.info("{}", startup.getReport());
+        
+        ConsoleRequestHandler console = new ConsoleRequestHandler(bot);
+        startAdminServer(config, console);
         
-        Database database = new Database(config);
-        initializeDatabase(database);
+        console.run();
+    }
+    
+    // Admin port is closed by default
+    private static void startAdminServer(Configuration config, ConsoleRequestHandler console) {
+        if(!config.containsSection("admin.port") || config.getInt("admin.port") <= 0) {
+            return;
+        }
         
-        DatabaseManager databaseManager = null;
+        int port = config.getInt("admin.port");
         
         try {
-            databaseManager = new DatabaseManager(database.getConnection());
-        } catch (SQLException e) {
-            System.err.println("Failed to create DatabaseManager");
+            new AdminServer(console, port).start();
+            Logger.info("Admin commands are accepted on 127.0.0.1:{}", port);
+        } catch (IOException e) {
+            Logger.error("Failed to open admin port {}: {}", port, e.getMessage());
+        }
+    }
+    
+    private static ClusterRole getClusterRole(Configuration config) {
+        if(!config.containsSection("cluster.role")) {
+            return ClusterRole.STANDALONE;
         }
         
-        MyBot bot = new MyBot(messages, config, achievements, databaseManager);
-        bot.launch();
+        ClusterRole role = ClusterRole.getByKey(config.getString("cluster.role"));
+        
+        if(role == null) {
+            Logger.warn("Unknown cluster role '{}', bot will work standalone", config.getString("cluster.role"));
+            return ClusterRole.STANDALONE;
+        }
         
-        new ConsoleRequestHandler(bot).run();
+        return role;
     }
     
-    private static void initializeDatabase(Database database) {
-        database.establishConnection();
+    private static void launchIngress(Configuration config) {
+        TelegramBot bot = MyBot.createTelegramBot(config);
+        
+        IngressNode ingress = new IngressNode(config);
+        ingress.start();
+        
+        PollingController pollingController = new PollingController(ingress, config);
+        pollingController.start(bot);
         
-        database.createTable(ProfileModel.class);
-        database.createTable(SaveModel.class);
-        database.createTable(AchievementModel.class);
+        Logger.info("Ingress node is forwarding updates to workers");
     }
 }
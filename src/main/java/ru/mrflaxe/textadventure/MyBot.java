@@ -1,67 +1,170 @@
 package ru.mrflaxe.textadventure;
 
-import java.util.Set;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import com.pengrad.telegrambot.TelegramBot;
-import com.pengrad.telegrambot.model.request.ParseMode;
-import com.pengrad.telegrambot.request.GetUpdates;
-import com.pengrad.telegrambot.request.SendMessage;
 
+import lombok.Getter;
+import okhttp3.OkHttpClient;
 import ru.mrflaxe.textadventure.achievement.AchievmentManager;
+import ru.mrflaxe.textadventure.cluster.WorkerNode;
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.logging.Logger;
 import ru.mrflaxe.textadventure.quest.QuestSessionManager;
+import ru.mrflaxe.textadventure.quest.registry.QuestRegistry;
+import ru.mrflaxe.textadventure.shutdown.ShutdownCoordinator;
+import ru.mrflaxe.textadventure.shutdown.ShutdownReport;
+import ru.mrflaxe.textadventure.startup.StartupOrchestrator;
 import ru.mrflaxe.textadventure.update.UpdateProvider;
-import ru.mrflaxe.textadventure.user.User;
+import ru.mrflaxe.textadventure.update.polling.PollingController;
+import ru.mrflaxe.textadventure.update.response.StaticResponseSender;
 import ru.mrflaxe.textadventure.user.UserProvider;
 
 public class MyBot {
     
     private final TelegramBot myBot;
+    private final Configuration config;
     private final Configuration messages;
     private final DatabaseManager databaseManager;
+    
+    @Getter
     private final UserProvider userProvider;
+    
+    @Getter
     private final AchievmentManager achievementManager;
+    
+    @Getter
     private final UpdateProvider updateProvider;
+    
+    @Getter
     private final QuestSessionManager sessionManager;
     
-    public MyBot(Configuration messages, Configuration config, Configuration achievements, DatabaseManager databaseManager) {
-        String token = config.getString("bot-token");
+    @Getter
+    private final PollingController pollingController;
+    
+    private WorkerNode workerNode;
+    
+    /**
+     * Creates the bot from parts which are built by {@link StartupOrchestrator}.
+     */
+    public MyBot(
+            Configuration messages,
+            Configuration config,
+            DatabaseManager databaseManager,
+            UserProvider userProvider,
+            AchievmentManager achievementManager,
+            QuestRegistry questRegistry
+            ) {
+        OkHttpClient httpClient = createHttpClient();
         
-        this.myBot = new TelegramBot(token);
+        this.myBot = createTelegramBot(config, httpClient);
+        this.config = config;
         this.messages = messages;
         this.databaseManager = databaseManager;
-        this.userProvider = new UserProvider(databaseManager);
-        this.achievementManager = new AchievmentManager(achievements, databaseManager);
-        this.updateProvider = new UpdateProvider(myBot, config, messages, databaseManager, achievementManager, userProvider);
+        this.userProvider = userProvider;
+        this.achievementManager = achievementManager;
+        this.updateProvider = new UpdateProvider(
+                myBot,
+                new StaticResponseSender(httpClient, config),
+                config,
+                messages,
+                databaseManager,
+                achievementManager,
+                questRegistry,
+                userProvider
+                );
         this.sessionManager = updateProvider.getQuestSessions();
+        this.pollingController = new PollingController(updateProvider, config);
     }
     
     public void launch() {
         registerUpdateListener();
     }
     
+    /**
+     * Launches the bot as cluster worker. Updates come from ingress node instead of polling.
+     */
+    public void launchWorker() {
+        int port = config.containsSection("cluster.port") ? config.getInt("cluster.port") : 8081;
+        
+        // Worker endpoints have no authentication, so only local ingress can reach them by default
+        String host = config.containsSection("cluster.bind") ? config.getString("cluster.bind") : "127.0.0.1";
+        this.workerNode = new WorkerNode(updateProvider, userProvider, sessionManager, host, port);
+        
+        int leaderboardRefresh = config.containsSection("cluster.leaderboard-refresh")
+                ? config.getInt("cluster.leaderboard-refresh")
+                : 5;
+        
+        achievementManager.scheduleLeaderboardRebuild(Math.max(1, leaderboardRefresh));
+        
+        try {
+            workerNode.start();
+        } catch (IOException e) {
+            Logger.error("Failed to start cluster worker on {}:{}: {}", host, port, e.getMessage());
+        }
+    }
+    
+    /**
+     * Creates Telegram bot client with token and Bot API url from config.
+     * @param config - main configuration
+     * @return bot client
+     */
+    public static TelegramBot createTelegramBot(Configuration config) {
+        return createTelegramBot(config, createHttpClient());
+    }
+    
+    /**
+     * Creates Telegram bot client which sends requests through given HTTP client.
+     * @param config - main configuration
+     * @param httpClient - HTTP client to share with other senders
+     * @return bot client
+     */
+    public static TelegramBot createTelegramBot(Configuration config, OkHttpClient httpClient) {
+        TelegramBot.Builder builder = new TelegramBot.Builder(config.getString("bot-token"))
+                .okHttpClient(httpClient);
+        
+        // Local Bot API server or the stub for load tests
+        if(config.containsSection("bot-api-url")) {
+            builder.apiUrl(config.getString("bot-api-url"));
+        }
+        
+        return builder.build();
+    }
+    
+    // The same timeouts as the library sets for its own client
+    private static OkHttpClient createHttpClient() {
+        return new OkHttpClient.Builder()
+                .connectTimeout(75, TimeUnit.SECONDS)
+                .writeTimeout(75, TimeUnit.SECONDS)
+                .readTimeout(75, TimeUnit.SECONDS)
+                .build();
+    }
+    
     private void registerUpdateListener() {
-        myBot.setUpdatesListener(updateProvider, new GetUpdates());
+        pollingController.start(myBot);
     }
     
     public void disable() {
-        Set<User> activeUsers = sessionManager.getActivePlayers();
-        String notify = messages.getString("on-disable");
+        if(workerNode != null) {
+            workerNode.stop();
+        }
+        
+        ShutdownCoordinator coordinator = new ShutdownCoordinator(
+                myBot,
+                pollingController,
+                config,
+                messages,
+                updateProvider,
+                sessionManager
+                );
         
-        activeUsers.forEach(user -> {
-            long chatID = user.getChatID();
-            
-            updateProvider.returnToMainMenu(user);
-            
-            SendMessage request = new SendMessage(chatID, notify);
-            request.parseMode(ParseMode.HTML);
-            
-            myBot.execute(request);
-        });
+        ShutdownReport report = coordinator.shutdown();
+        Logger.info("{}", report);
         
-        sessionManager.closeAllSessions();
         databaseManager.shutdown();
+        myBot.shutdown();
         
         System.exit(0);
     }
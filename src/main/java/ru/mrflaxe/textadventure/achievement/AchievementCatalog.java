@@ -0,0 +1,38 @@
+package ru.mrflaxe.textadventure.achievement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.configuration.ConfigurationSection;
+
+/**
+ * Achievements described in achievements.yml. <br>
+ * Doesn't need database, so quests can be parsed while database connection is established.
+ */
+public class AchievementCatalog {
+    
+    private final Map<String, Achievement> achievments;
+    
+    public AchievementCatalog(Configuration achievments) {
+        this.achievments = new HashMap<>();
+        
+        Map<String, ConfigurationSection> subsections = achievments.getAllSubsections();
+        
+        subsections.entrySet().stream()
+            .forEach(set -> {
+                String id = set.getKey();
+                
+                ConfigurationSection section = set.getValue();
+                String name = section.getString("name");
+                String description = section.getString("description");
+                
+                Achievement achievment = new Achievement(id, name, description);
+                this.achievments.put(id, achievment);
+            });
+    }
+    
+    public Achievement getAchievement(String achievmentID) {
+        return achievments.get(achievmentID);
+    }
+}
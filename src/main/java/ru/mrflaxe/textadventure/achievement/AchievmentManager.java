@@ -1,54 +1,116 @@
 package ru.mrflaxe.textadventure.achievement;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
 
-import ru.mrflaxe.textadventure.configuration.Configuration;
-import ru.mrflaxe.textadventure.configuration.ConfigurationSection;
+import lombok.Getter;
 import ru.mrflaxe.textadventure.database.DatabaseManager;
 import ru.mrflaxe.textadventure.database.model.AchievementModel;
+import ru.mrflaxe.textadventure.logging.Logger;
 import ru.mrflaxe.textadventure.user.User;
 
 public class AchievmentManager {
-
-    private final Configuration achievments;
+    
+    private final AchievementCatalog catalog;
     private final DatabaseManager databaseManager;
     
-    private final Map<String, Achievement> achievmentContainer;
+    @Getter
+    private final Leaderboard leaderboard;
+    
+    // Receive chat id of every player who got an achievement
+    private final List<LongConsumer> listeners;
     
-    public AchievmentManager(Configuration achievments, DatabaseManager databaseManager) {
-        this.achievments = achievments;
+    public AchievmentManager(AchievementCatalog catalog, DatabaseManager databaseManager) {
+        this.catalog = catalog;
         this.databaseManager = databaseManager;
         
-        this.achievmentContainer = new HashMap<>();
-        initializeAchievments();
+        this.leaderboard = new Leaderboard();
+        this.listeners = new CopyOnWriteArrayList<>();
+        
+        rebuildLeaderboard();
     }
     
     public Achievement getAchievement(String achievmentID) {
-        return achievmentContainer.get(achievmentID);
+        return catalog.getAchievement(achievmentID);
     }
     
-    public void addAchievement(User user, Achievement achievment) {
+    /**
+     * Gives achievement to the user. Leaderboard and listeners are updated only if it was saved.
+     * @param user - who gets the achievement
+     * @param achievment - achievement to give
+     * @return true if the achievement was saved, otherwise false
+     */
+    public boolean addAchievement(User user, Achievement achievment) {
         long chatID = user.getChatID();
         
         AchievementModel achievmentModel = new AchievementModel(chatID, achievment);
-        databaseManager.saveAchievment(achievmentModel);
+        
+        if(!databaseManager.saveAchievment(achievmentModel)) {
+            return false;
+        }
+        
+        leaderboard.add(chatID, getDay(achievmentModel));
+        listeners.forEach(listener -> listener.accept(chatID));
+        return true;
+    }
+    
+    /**
+     * Adds listener called after a player gets an achievement.
+     * @param listener - receives chat id of the player
+     */
+    public void addAchievementListener(LongConsumer listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Builds the leaderboard again from all achievements in database in one pass.
+     */
+    public void rebuildLeaderboard() {
+        long start = System.currentTimeMillis();
+        
+        // Chat id, count of achievements and day of the last one
+        Map<Long, long[]> counts = new HashMap<>();
+        
+        long read = databaseManager.forEachAchievement(achievement -> {
+            long[] value = counts.computeIfAbsent(achievement.getChatID(), key -> new long[2]);
+            value[0]++;
+            value[1] = Math.max(value[1], getDay(achievement));
+        });
+        
+        if(read < 0) {
+            Logger.error("Failed to build achievement leaderboard. It will have only new achievements.");
+            return;
+        }
+        
+        leaderboard.rebuild(counts);
+        Logger.info("Built achievement leaderboard of {} players from {} achievements in {} ms",
+                counts.size(), read, System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * Rebuilds the leaderboard periodically. <br>
+     * Needed when other processes give achievements to the same database, such as other cluster workers.
+     * @param minutes - interval between rebuilds
+     */
+    public void scheduleLeaderboardRebuild(int minutes) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leaderboard-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        scheduler.scheduleWithFixedDelay(this::rebuildLeaderboard, minutes, minutes, TimeUnit.MINUTES);
     }
     
-    private void initializeAchievments() {
-        Map<String, ConfigurationSection> subsections = achievments.getAllSubsections();
-        
-        subsections.entrySet().stream()
-            .forEach(set -> {
-                String id = set.getKey();
-                
-                ConfigurationSection section = set.getValue();
-                String name = section.getString("name");
-                String description = section.getString("description");
-                
-                Achievement achievment = new Achievement(id, name, description);
-                achievmentContainer.put(id, achievment);
-            });
+    // Dates are stored without time, so achievements of one day are equal
+    private long getDay(AchievementModel achievement) {
+        return achievement.getDate() == null ? 0 : achievement.getDate().toLocalDate().toEpochDay();
     }
     
 }
@@ -0,0 +1,242 @@
+package ru.mrflaxe.textadventure.achievement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Players ranked by count of achievements. Who reached the count earlier is higher,
+ * players who reached it on the same day are ordered by chat id.
+ * <br><br>
+ * Players are kept in a treap where each node knows size of its subtree,
+ * so adding an achievement, top of K players and rank of a player take O(log n).
+ * Achievement dates are stored with day precision, so the day is used as time in both cases:
+ * while building from database and when an achievement is given.
+ */
+public class Leaderboard {
+    
+    // Player and his node in the tree
+    private final Map<Long, Node> players;
+    private Node root;
+    
+    public Leaderboard() {
+        this.players = new HashMap<>();
+    }
+    
+    /**
+     * Counts one more achievement of the player.
+     * @param chatID - chat id of the player
+     * @param day - epoch day when the achievement was given
+     */
+    public synchronized void add(long chatID, long day) {
+        Node node = players.get(chatID);
+        
+        if(node == null) {
+            node = new Node(chatID);
+            players.put(chatID, node);
+        } else {
+            root = remove(root, node);
+            node.left = null;
+            node.right = null;
+            node.size = 1;
+        }
+        
+        node.count++;
+        node.day = Math.max(node.day, day);
+        
+        Node[] parts = split(root, node);
+        root = merge(merge(parts[0], node), parts[1]);
+    }
+    
+    /**
+     * Replaces all players at once.
+     * @param counts - chat id and its count of achievements with day of the last one
+     */
+    public synchronized void rebuild(Map<Long, long[]> counts) {
+        players.clear();
+        root = null;
+        
+        counts.forEach((chatID, value) -> {
+            Node node = new Node(chatID);
+            node.count = (int) value[0];
+            node.day = value[1];
+            
+            players.put(chatID, node);
+            
+            Node[] parts = split(root, node);
+            root = merge(merge(parts[0], node), parts[1]);
+        });
+    }
+    
+    /**
+     * Gets the best players.
+     * @param limit - max count of players
+     * @return places from the first one
+     */
+    public synchronized List<Place> getTop(int limit) {
+        List<Place> top = new ArrayList<>(Math.min(limit, players.size()));
+        collect(root, top, limit);
+        
+        return top;
+    }
+    
+    /**
+     * Gets place of the player.
+     * @param chatID - chat id of the player
+     * @return place of the player or null if he hasn't any achievement
+     */
+    public synchronized Place getPlace(long chatID) {
+        Node node = players.get(chatID);
+        
+        if(node == null) {
+            return null;
+        }
+        
+        // Count of players above the node
+        int above = 0;
+        Node current = root;
+        
+        while(current != node) {
+            if(compare(node, current) < 0) {
+                current = current.left;
+            } else {
+                above += size(current.left) + 1;
+                current = current.right;
+            }
+        }
+        
+        above += size(node.left);
+        return new Place(above + 1, chatID, node.count);
+    }
+    
+    public synchronized int size() {
+        return players.size();
+    }
+    
+    private void collect(Node node, List<Place> top, int limit) {
+        if(node == null || top.size() >= limit) {
+            return;
+        }
+        
+        collect(node.left, top, limit);
+        
+        if(top.size() < limit) {
+            top.add(new Place(top.size() + 1, node.chatID, node.count));
+        }
+        
+        collect(node.right, top, limit);
+    }
+    
+    // Splits the tree into nodes placed above the key and all the others
+    private Node[] split(Node node, Node key) {
+        if(node == null) {
+            return new Node[2];
+        }
+        
+        if(compare(node, key) < 0) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            update(node);
+            
+            parts[0] = node;
+            return parts;
+        }
+        
+        Node[] parts = split(node.left, key);
+        node.left = parts[1];
+        update(node);
+        
+        parts[1] = node;
+        return parts;
+    }
+    
+    // All nodes of the left tree are above nodes of the right one
+    private Node merge(Node left, Node right) {
+        if(left == null) {
+            return right;
+        }
+        
+        if(right == null) {
+            return left;
+        }
+        
+        if(left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+    
+    private Node remove(Node node, Node key) {
+        if(node == key) {
+            return merge(node.left, node.right);
+        }
+        
+        if(compare(key, node) < 0) {
+            node.left = remove(node.left, key);
+        } else {
+            node.right = remove(node.right, key);
+        }
+        
+        update(node);
+        return node;
+    }
+    
+    // Negative if the first node is placed above the second one
+    private int compare(Node first, Node second) {
+        if(first.count != second.count) {
+            return Integer.compare(second.count, first.count);
+        }
+        
+        if(first.day != second.day) {
+            return Long.compare(first.day, second.day);
+        }
+        
+        return Long.compare(first.chatID, second.chatID);
+    }
+    
+    private void update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+    
+    private int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+    
+    @Getter
+    @AllArgsConstructor
+    public static class Place {
+        
+        private final int rank;
+        private final long chatID;
+        private final int achievements;
+    }
+    
+    private static class Node {
+        
+        private final long chatID;
+        private final int priority;
+        
+        private int count;
+        private long day;
+        
+        private int size;
+        private Node left;
+        private Node right;
+        
+        private Node(long chatID) {
+            this.chatID = chatID;
+            this.priority = ThreadLocalRandom.current().nextInt();
+            this.size = 1;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ru.mrflaxe.textadventure.cluster;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.Getter;
+
+/**
+ * Role of this bot instance in the cluster.
+ */
+public enum ClusterRole {
+    
+    // One instance receives and handles all updates
+    STANDALONE("standalone"),
+    // Receives updates and forwards each chat to its worker
+    INGRESS("ingress"),
+    // Handles updates of its chats received from ingress
+    WORKER("worker");
+    
+    @Getter
+    private final String key;
+    
+    private ClusterRole(String key) {
+        this.key = key;
+    }
+    
+    /**
+     * Gets role by its config key.
+     * @param key - key from configuration
+     * @return role or null if there is no role with such key
+     */
+    @Nullable
+    public static ClusterRole getByKey(String key) {
+        if(key == null) {
+            return null;
+        }
+        
+        ClusterRole[] values = values();
+        
+        for (int i = 0; i < values.length; i++) {
+            if(values[i].getKey().equalsIgnoreCase(key)) {
+                return values[i];
+            }
+        }
+        
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.mrflaxe.textadventure.cluster;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import ru.mrflaxe.textadventure.error.NotConfirmedException;
+
+/**
+ * Plain HTTP calls between cluster nodes. Bodies are UTF-8 text.
+ */
+public class ClusterTransport {
+    
+    private static final int CONNECT_TIMEOUT = 2000;
+    
+    /**
+     * Sends POST request to another node.
+     * @param address - host and port of the node
+     * @param path - path of the endpoint
+     * @param body - request body
+     * @param timeout - read timeout in milliseconds
+     * @return response body
+     * @throws NotConfirmedException if the request was sent but the node didn't respond or responded with error
+     * @throws IOException if node is not available
+     */
+    public static String post(String address, String path, String body, int timeout) throws IOException {
+        HttpURLConnection connection = open(address, path, timeout);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        connection.setFixedLengthStreamingMode(bytes.length);
+        
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(bytes);
+        }
+        
+        try {
+            return readResponse(connection);
+        } catch (IOException e) {
+            throw new NotConfirmedException(address, e);
+        }
+    }
+    
+    /**
+     * Sends GET request to another node.
+     * @param address - host and port of the node
+     * @param path - path of the endpoint
+     * @param timeout - read timeout in milliseconds
+     * @return response body
+     * @throws IOException if node is not available or responded with error
+     */
+    public static String get(String address, String path, int timeout) throws IOException {
+        HttpURLConnection connection = open(address, path, timeout);
+        connection.setRequestMethod("GET");
+        
+        return readResponse(connection);
+    }
+    
+    public static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream input = exchange.getRequestBody()) {
+            return read(input);
+        }
+    }
+    
+    public static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+    
+    private static HttpURLConnection open(String address, String path, int timeout) throws IOException {
+        URL url = new URL("http://" + address + path);
+        
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(timeout);
+        
+        return connection;
+    }
+    
+    private static String readResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        
+        if(code != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Node responded with code " + code);
+        }
+        
+        try (InputStream input = connection.getInputStream()) {
+            return read(input);
+        }
+    }
+    
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        
+        int read;
+        while((read = input.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
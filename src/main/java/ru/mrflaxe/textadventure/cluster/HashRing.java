@@ -0,0 +1,86 @@
+package ru.mrflaxe.textadventure.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Consistent hash ring of worker nodes. <br>
+ * Every node takes several points on the ring and a chat belongs to the first point after its hash.
+ * When a node joins or leaves only chats of its points move, all other chats stay on their nodes.
+ * <br><br>
+ * The ring depends only on node names and count of virtual nodes,
+ * so ingress and workers build the same ring from the same member list.
+ */
+public class HashRing {
+    
+    private final TreeMap<Long, String> points;
+    private final Set<String> nodes;
+    
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        this.points = new TreeMap<>();
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+    
+    /**
+     * Gets node owning the chat.
+     * @param chatID - chat id
+     * @return node name or null if ring is empty
+     */
+    @Nullable
+    public String getNode(long chatID) {
+        if(points.isEmpty()) {
+            return null;
+        }
+        
+        Map.Entry<Long, String> point = points.ceilingEntry(mix(chatID));
+        
+        if(point == null) {
+            point = points.firstEntry();
+        }
+        
+        return point.getValue();
+    }
+    
+    public Set<String> getNodes() {
+        return nodes;
+    }
+    
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+    
+    // FNV-1a over name bytes, mixed so close names get far points
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        
+        return mix(hash);
+    }
+    
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        
+        return value;
+    }
+}
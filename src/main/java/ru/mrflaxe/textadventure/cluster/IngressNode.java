@@ -0,0 +1,218 @@
+package ru.mrflaxe.textadventure.cluster;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.UpdatesListener;
+import com.pengrad.telegrambot.model.Update;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.error.NotConfirmedException;
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Receives updates and forwards every chat to the worker owning it on the {@link HashRing}. <br>
+ * Ingress checks workers once per health interval. When a worker joins or leaves the new ring is sent to all workers,
+ * they release sessions of chats they don't own anymore and ingress passes these chats to their new owners.
+ * Updates are not forwarded while the ring changes.
+ * <br><br>
+ * If a worker isn't available it's removed from the ring and its updates go to the next owner.
+ * Updates which couldn't be delivered to anyone are not confirmed and come again with the next poll.
+ * Updates which were sent to a worker that didn't answer are not sent to anyone else,
+ * because the worker may have handled them already and players would get replies twice.
+ */
+public class IngressNode implements UpdatesListener {
+    
+    private static final int FORWARD_TIMEOUT = 10_000;
+    private static final int HEALTH_TIMEOUT = 2_000;
+    
+    private final List<String> workers;
+    private final int virtualNodes;
+    private final int healthInterval;
+    
+    private final ScheduledExecutorService healthChecker;
+    
+    private HashRing ring;
+    
+    public IngressNode(Configuration config) {
+        this.workers = config.getStringList("cluster.workers");
+        this.virtualNodes = config.containsSection("cluster.virtual-nodes")
+                ? config.getInt("cluster.virtual-nodes")
+                : 128;
+        this.healthInterval = config.containsSection("cluster.health-interval")
+                ? config.getInt("cluster.health-interval")
+                : 5;
+        
+        this.ring = new HashRing(new TreeSet<>(), virtualNodes);
+        
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Finds available workers and starts checking them periodically.
+     */
+    public void start() {
+        checkWorkers();
+        healthChecker.scheduleWithFixedDelay(this::checkWorkers, healthInterval, healthInterval, TimeUnit.SECONDS);
+    }
+    
+    public void stop() {
+        healthChecker.shutdownNow();
+    }
+    
+    @Override
+    public synchronized int process(List<Update> updates) {
+        List<Update> pending = updates;
+        
+        // Each round sends updates to their owners. Updates of workers which didn't respond
+        // are removed from the ring and routed again to new owners
+        while(!pending.isEmpty()) {
+            if(ring.isEmpty()) {
+                Logger.warn("No workers available, {} updates will be received again", pending.size());
+                return getLastConfirmed(updates, pending);
+            }
+            
+            List<Update> failed = new ArrayList<>();
+            
+            groupByWorker(pending).forEach((worker, batch) -> {
+                if(!forward(worker, batch)) {
+                    failed.addAll(batch);
+                }
+            });
+            
+            pending = failed;
+        }
+        
+        return CONFIRMED_UPDATES_ALL;
+    }
+    
+    private boolean forward(String worker, List<Update> updates) {
+        String body = updates.stream().map(BotUtils::toJson).collect(Collectors.joining(",", "[", "]"));
+        
+        try {
+            ClusterTransport.post(worker, "/updates", body, FORWARD_TIMEOUT);
+            return true;
+        } catch (NotConfirmedException e) {
+            Logger.warn("Worker {} didn't confirm {} updates, they won't be sent again: {}", worker, updates.size(), e.getMessage());
+            removeWorker(worker);
+            
+            // Counted as delivered, losing them is better than answering twice
+            return true;
+        } catch (IOException e) {
+            Logger.warn("Worker {} didn't accept updates: {}", worker, e.getMessage());
+            removeWorker(worker);
+            
+            return false;
+        }
+    }
+    
+    private void removeWorker(String worker) {
+        Set<String> alive = new TreeSet<>(ring.getNodes());
+        alive.remove(worker);
+        changeRing(alive);
+    }
+    
+    // Updates of one worker go in one request keeping their order
+    private Map<String, List<Update>> groupByWorker(List<Update> updates) {
+        Map<String, List<Update>> batches = new LinkedHashMap<>();
+        
+        for (Update update : updates) {
+            String worker = ring.getNode(getRoutingKey(update));
+            batches.computeIfAbsent(worker, key -> new ArrayList<>()).add(update);
+        }
+        
+        return batches;
+    }
+    
+    // Confirms only updates before the first lost one, so lost ones come again.
+    // Workers skip updates they already handled
+    private int getLastConfirmed(List<Update> updates, List<Update> lost) {
+        int firstLost = lost.stream().mapToInt(Update::updateId).min().getAsInt();
+        int confirmed = firstLost - 1;
+        
+        return confirmed < updates.get(0).updateId() ? CONFIRMED_UPDATES_NONE : confirmed;
+    }
+    
+    private synchronized void checkWorkers() {
+        Set<String> alive = new TreeSet<>();
+        
+        for (String worker : workers) {
+            try {
+                ClusterTransport.get(worker, "/health", HEALTH_TIMEOUT);
+                alive.add(worker);
+            } catch (IOException ignored) {
+            }
+        }
+        
+        if(!alive.equals(ring.getNodes())) {
+            changeRing(alive);
+        }
+    }
+    
+    // Sends new ring to workers and moves released sessions to their new owners
+    private void changeRing(Set<String> alive) {
+        Logger.info("Cluster workers changed: {} -> {}", ring.getNodes(), alive);
+        
+        this.ring = new HashRing(alive, virtualNodes);
+        
+        Map<String, List<Long>> adopted = new HashMap<>();
+        
+        for (String worker : alive) {
+            String body = worker + "\n" + virtualNodes + "\n" + String.join("\n", alive);
+            
+            try {
+                String released = ClusterTransport.post(worker, "/ring", body, FORWARD_TIMEOUT);
+                
+                for (String line : released.split("\n")) {
+                    if(line.isEmpty()) {
+                        continue;
+                    }
+                    
+                    long chatID = Long.parseLong(line);
+                    adopted.computeIfAbsent(ring.getNode(chatID), key -> new ArrayList<>()).add(chatID);
+                }
+            } catch (IOException | NumberFormatException e) {
+                Logger.error("Failed to send ring to worker {}: {}", worker, e.getMessage());
+            }
+        }
+        
+        adopted.forEach((worker, chats) -> {
+            String body = chats.stream().map(String::valueOf).collect(Collectors.joining("\n"));
+            
+            try {
+                ClusterTransport.post(worker, "/adopt", body, FORWARD_TIMEOUT);
+                Logger.info("Moved {} sessions to worker {}", chats.size(), worker);
+            } catch (IOException e) {
+                Logger.error("Failed to move sessions to worker {}: {}", worker, e.getMessage());
+            }
+        });
+    }
+    
+    // Chat id for messages and callbacks, update id for anything else
+    private long getRoutingKey(Update update) {
+        if(update.message() != null) {
+            return update.message().chat().id();
+        }
+        
+        if(update.callbackQuery() != null && update.callbackQuery().from() != null) {
+            return update.callbackQuery().from().id();
+        }
+        
+        return update.updateId();
+    }
+}
@@ -0,0 +1,180 @@
+package ru.mrflaxe.textadventure.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.model.Update;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.quest.QuestSessionManager;
+import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+import ru.mrflaxe.textadventure.update.UpdateProvider;
+import ru.mrflaxe.textadventure.user.User;
+import ru.mrflaxe.textadventure.user.UserProvider;
+
+/**
+ * Handles updates forwarded by {@link IngressNode}. <br>
+ * All requests are handled one by one on the same thread, so updates keep their order
+ * and the ring never changes in the middle of an update.
+ * <br><br>
+ * Endpoints: <br>
+ * /health - answers 'ok' <br>
+ * /updates - JSON array of updates to handle <br>
+ * /ring - new ring members, responds with chats whose sessions were released <br>
+ * /adopt - chats whose sessions should be continued here without sending their branches again
+ */
+public class WorkerNode {
+    
+    // Count of remembered update ids. Ingress may send the same update again after a failure
+    private static final int HANDLED_UPDATES_MEMORY = 10_000;
+    
+    private final UpdateProvider updateProvider;
+    private final UserProvider userProvider;
+    private final QuestSessionManager sessionManager;
+    private final String host;
+    private final int port;
+    
+    private final Map<Integer, Boolean> handledUpdates;
+    private final ExecutorService executor;
+    
+    private HttpServer server;
+    
+    public WorkerNode(UpdateProvider updateProvider, UserProvider userProvider, QuestSessionManager sessionManager, String host, int port) {
+        this.updateProvider = updateProvider;
+        this.userProvider = userProvider;
+        this.sessionManager = sessionManager;
+        this.host = host;
+        this.port = port;
+        
+        this.handledUpdates = new LinkedHashMap<Integer, Boolean>() {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > HANDLED_UPDATES_MEMORY;
+            }
+        };
+        
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Opens the port on the given address. Requests aren't authenticated,
+     * so the address should be reachable by ingress only.
+     * @throws IOException if the port can't be opened
+     */
+    public void start() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        
+        server.createContext("/health", exchange -> ClusterTransport.respond(exchange, 200, "ok"));
+        server.createContext("/updates", exchange -> handle(exchange, this::handleUpdates));
+        server.createContext("/ring", exchange -> handle(exchange, this::handleRing));
+        server.createContext("/adopt", exchange -> handle(exchange, this::handleAdopt));
+        
+        server.setExecutor(executor);
+        server.start();
+        
+        Logger.info("Cluster worker is listening on {}:{}", host, port);
+    }
+    
+    public void stop() {
+        if(server != null) {
+            server.stop(0);
+        }
+        
+        executor.shutdownNow();
+    }
+    
+    private String handleUpdates(String body) {
+        Update[] received = BotUtils.fromJson(body, Update[].class);
+        List<Update> updates = new ArrayList<>(received.length);
+        
+        for (Update update : received) {
+            if(handledUpdates.put(update.updateId(), Boolean.TRUE) == null) {
+                updates.add(update);
+            }
+        }
+        
+        if(!updates.isEmpty()) {
+            updateProvider.process(updates);
+        }
+        
+        return "ok";
+    }
+    
+    // Body: own name, count of virtual nodes and then all members line by line
+    private String handleRing(String body) {
+        List<String> lines = Arrays.asList(body.split("\n"));
+        
+        String self = lines.get(0);
+        int virtualNodes = Integer.parseInt(lines.get(1));
+        HashRing ring = new HashRing(lines.subList(2, lines.size()), virtualNodes);
+        
+        // Chats taken over from other workers could get profiles there, so known chats are loaded again
+        userProvider.reloadKnownChats();
+        
+        // Progress of released players is saved, so their new owner continues from the same branch
+        Map<User, QuestBranch> released = sessionManager.stopSessions(user -> !self.equals(ring.getNode(user.getChatID())));
+        
+        if(!released.isEmpty()) {
+            sessionManager.saveSessions(released);
+            Logger.info("Released {} sessions after ring change", released.size());
+        }
+        
+        return released.keySet().stream()
+                .map(user -> String.valueOf(user.getChatID()))
+                .collect(Collectors.joining("\n"));
+    }
+    
+    private String handleAdopt(String body) {
+        int adopted = 0;
+        
+        for (String line : body.split("\n")) {
+            if(line.isEmpty()) {
+                continue;
+            }
+            
+            User user = userProvider.getUser(Long.parseLong(line));
+            
+            if(user == null || sessionManager.hasSession(user)) {
+                continue;
+            }
+            
+            // The player already has messages of the branch from the previous owner
+            if(sessionManager.restoreSession(user)) {
+                adopted++;
+            }
+        }
+        
+        return String.valueOf(adopted);
+    }
+    
+    private void handle(HttpExchange exchange, RequestHandler handler) throws IOException {
+        try {
+            String response = handler.handle(ClusterTransport.readBody(exchange));
+            ClusterTransport.respond(exchange, 200, response);
+        } catch (RuntimeException e) {
+            Logger.error("Failed to handle cluster request {}", exchange.getRequestURI(), e);
+            ClusterTransport.respond(exchange, 500, "");
+        }
+    }
+    
+    private interface RequestHandler {
+        String handle(String body);
+    }
+}
@@ -0,0 +1,227 @@
+package ru.mrflaxe.textadventure.cluster.stub;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ru.mrflaxe.textadventure.cluster.ClusterTransport;
+
+/**
+ * Local imitation of Telegram Bot API for load tests. <br>
+ * Generates messages of fake players, gives them by getUpdates and answers 'ok' to all other methods.
+ * Set 'bot-api-url' in config.yml to <code>http://127.0.0.1:&lt;port&gt;/bot</code> to use it.
+ * <br><br>
+ * Every player sends /start, then /play and then random answer numbers, sometimes leaving with /exit.
+ * Counts of called methods are available at <code>/stats</code> and printed every 10 seconds.
+ * <br><br>
+ * Usage: <code>StubBotApi [port] [players] [messages per second]</code>
+ */
+public class StubBotApi {
+    
+    private static final String[] ANSWERS = { "1", "2", "3" };
+    
+    private final int players;
+    private final int messagesPerSecond;
+    
+    private final Deque<String> updates;
+    private final int[] steps;
+    private final Random random;
+    
+    private final Map<String, LongAdder> calls;
+    private final AtomicInteger messageIDs;
+    
+    private int nextUpdateID;
+    
+    public StubBotApi(int players, int messagesPerSecond) {
+        this.players = players;
+        this.messagesPerSecond = messagesPerSecond;
+        
+        this.updates = new ArrayDeque<>();
+        this.steps = new int[players];
+        this.random = new Random();
+        
+        this.calls = new ConcurrentHashMap<>();
+        this.messageIDs = new AtomicInteger();
+        this.nextUpdateID = 1;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8090;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int messagesPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        
+        new StubBotApi(players, messagesPerSecond).start(port);
+    }
+    
+    public void start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        
+        server.createContext("/stats", exchange -> ClusterTransport.respond(exchange, 200, getStats()));
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.start();
+        
+        ScheduledExecutorService generator = Executors.newSingleThreadScheduledExecutor();
+        
+        // Spreads messages of one second over 10 ticks
+        generator.scheduleAtFixedRate(() -> generate(Math.max(1, messagesPerSecond / 10)), 100, 100, TimeUnit.MILLISECONDS);
+        generator.scheduleAtFixedRate(() -> System.out.println(getStats()), 10, 10, TimeUnit.SECONDS);
+        
+        System.out.println("Stub Bot API is listening on port " + port + " with " + players + " players");
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = path.substring(path.lastIndexOf('/') + 1);
+        
+        calls.computeIfAbsent(method, key -> new LongAdder()).increment();
+        
+        Map<String, String> parameters = parseForm(ClusterTransport.readBody(exchange));
+        String result;
+        
+        if(method.equals("getUpdates")) {
+            result = getUpdates(parameters);
+        } else if(method.startsWith("send") || method.startsWith("edit")) {
+            result = "{\"message_id\":" + messageIDs.incrementAndGet()
+                    + ",\"date\":" + System.currentTimeMillis() / 1000
+                    + ",\"chat\":{\"id\":" + parameters.getOrDefault("chat_id", "0") + ",\"type\":\"private\"}}";
+        } else {
+            result = "true";
+        }
+        
+        byte[] body = ("{\"ok\":true,\"result\":" + result + "}").getBytes("UTF-8");
+        
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+    
+    // Long polling: waits for updates up to the timeout like the real API
+    private synchronized String getUpdates(Map<String, String> parameters) {
+        int offset = Integer.parseInt(parameters.getOrDefault("offset", "0"));
+        int limit = Integer.parseInt(parameters.getOrDefault("limit", "100"));
+        long timeout = Long.parseLong(parameters.getOrDefault("timeout", "0")) * 1000;
+        
+        // Updates before offset are confirmed by the bot
+        while(!updates.isEmpty() && getUpdateID(updates.peekFirst()) < offset) {
+            updates.pollFirst();
+        }
+        
+        long deadline = System.currentTimeMillis() + timeout;
+        
+        while(updates.isEmpty() && System.currentTimeMillis() < deadline) {
+            try {
+                wait(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        
+        StringBuilder result = new StringBuilder("[");
+        int count = 0;
+        
+        for (String update : updates) {
+            if(count == limit) {
+                break;
+            }
+            
+            if(count > 0) {
+                result.append(',');
+            }
+            
+            result.append(update);
+            count++;
+        }
+        
+        return result.append(']').toString();
+    }
+    
+    private synchronized void generate(int count) {
+        for (int i = 0; i < count; i++) {
+            int player = random.nextInt(players);
+            long chatID = 100_000L + player;
+            
+            String text = nextText(player);
+            int updateID = nextUpdateID++;
+            
+            updates.addLast("{\"update_id\":" + updateID
+                    + ",\"message\":{\"message_id\":" + updateID
+                    + ",\"date\":" + System.currentTimeMillis() / 1000
+                    + ",\"from\":{\"id\":" + chatID + ",\"is_bot\":false,\"first_name\":\"Player" + player + "\"}"
+                    + ",\"chat\":{\"id\":" + chatID + ",\"type\":\"private\",\"first_name\":\"Player" + player + "\"}"
+                    + ",\"text\":\"" + text + "\"}}");
+        }
+        
+        notifyAll();
+    }
+    
+    private String nextText(int player) {
+        int step = steps[player]++;
+        
+        if(step == 0) {
+            return "/start";
+        }
+        
+        if(step == 1) {
+            return "/play";
+        }
+        
+        // Leaves the game sometimes and starts again
+        if(random.nextInt(20) == 0) {
+            steps[player] = 1;
+            return "/exit";
+        }
+        
+        return ANSWERS[random.nextInt(ANSWERS.length)];
+    }
+    
+    private int getUpdateID(String update) {
+        int start = "{\"update_id\":".length();
+        return Integer.parseInt(update.substring(start, update.indexOf(',', start)));
+    }
+    
+    private String getStats() {
+        Map<String, Long> sorted = new TreeMap<>();
+        calls.forEach((method, count) -> sorted.put(method, count.sum()));
+        
+        synchronized (this) {
+            return "Stub Bot API: generated " + (nextUpdateID - 1) + " updates, waiting " + updates.size() + ", calls " + sorted;
+        }
+    }
+    
+    private Map<String, String> parseForm(String body) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        
+        for (String pair : body.split("&")) {
+            int separator = pair.indexOf('=');
+            
+            if(separator <= 0) {
+                continue;
+            }
+            
+            parameters.put(
+                    URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                    URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+        }
+        
+        return parameters;
+    }
+}
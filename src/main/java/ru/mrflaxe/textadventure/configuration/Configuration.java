@@ -16,6 +16,7 @@ import org.yaml.snakeyaml.Yaml;
 
 import lombok.Setter;
 import ru.mrflaxe.textadventure.error.SectionNotFoundException;
+import ru.mrflaxe.textadventure.logging.Logger;
 
 public class Configuration {
 
@@ -89,9 +90,9 @@ public class Configuration {
         if(!Files.isDirectory(configFolder)) {
             try {
                 Files.createFile(configFolder);
-                System.out.println("Created a new data folder in: " + configFolder);
+                Logger.info("Created a new data folder in: {}", configFolder);
             } catch (IOException ex) {
-                System.err.println("Couldn't create a data folder in " + configFolder + "!");
+                Logger.error("Couldn't create a data folder in {}!", configFolder);
                 return;
             }
 
@@ -108,9 +109,9 @@ public class Configuration {
             try {
                 Files.createFile(config);
                 Files.copy(resource, config, StandardCopyOption.REPLACE_EXISTING);
-                System.out.println("Copied a configuration file data from internal resource to: " + config);
+                Logger.info("Copied a configuration file data from internal resource to: {}", config);
             } catch (IOException e) {
-                System.err.println("Failed to create " + fileName + " file.");
+                Logger.error("Failed to create {} file.", fileName);
                 return;
             }
         }
@@ -118,9 +119,9 @@ public class Configuration {
         // Now loads content of configuration data to this object.
         try {
             this.content = getContent();
-            System.out.println(fileName + " config reloaded.");
+            Logger.info("{} config reloaded.", fileName);
         } catch (FileNotFoundException e) {
-            System.err.println("Can't read " + config.toString() + " file");
+            Logger.error("Can't read {} file", config);
             return;
         }
         
@@ -153,6 +154,32 @@ public class Configuration {
         return currentSection.getSection(updatedSectionPath);
     }
     
+    /**
+     * Checks if this configuration contains given section
+     * @param sectionPath - path to section
+     * @return true if contains otherwise false
+     */
+    public boolean containsSection(String sectionPath) {
+        if(content == null || sectionPath == null || sectionPath.isEmpty()) {
+            return false;
+        }
+        
+        String[] sections = sectionPath.split("\\.");
+        ConfigurationSection currentSection = content.get(sections[0]);
+        
+        if(currentSection == null) {
+            return false;
+        }
+        
+        if(sections.length == 1) {
+            return true;
+        }
+        
+        String updatedSectionPath = sectionPath.replaceFirst(sections[0], "").replaceFirst(".", "");
+        
+        return currentSection.containsSection(updatedSectionPath);
+    }
+    
     /**
      * Gets all main sections from this configuration.
      * Those sections don't have parent section.
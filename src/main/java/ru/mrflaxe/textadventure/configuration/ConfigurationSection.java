@@ -12,6 +12,7 @@ import org.yaml.snakeyaml.Yaml;
 
 import lombok.Getter;
 import ru.mrflaxe.textadventure.error.SectionNotFoundException;
+import ru.mrflaxe.textadventure.logging.Logger;
 import ru.mrflaxe.textadventure.tool.HTMLSymbolFormatter;
 
 public class ConfigurationSection {
@@ -93,7 +94,7 @@ public class ConfigurationSection {
             
             parsedData = yaml.load(dumped);
         } catch (ClassCastException exception) {
-            System.out.println("class cast exception");
+            Logger.debug("Section '{}' of {} is not a section", sectionPath, fileName);
             return null; // In this case data is not another section so I just return null
         }
         
@@ -0,0 +1,74 @@
+package ru.mrflaxe.textadventure.console;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Accepts console commands on a port of the loopback interface,
+ * so the bot can be managed when it runs as a service without standard input. <br>
+ * Each connection is served by its own thread. Send 'exit' or close the connection to leave.
+ */
+public class AdminServer {
+    
+    private final ConsoleRequestHandler requestHandler;
+    private final int port;
+    
+    private ServerSocket serverSocket;
+    
+    public AdminServer(ConsoleRequestHandler requestHandler, int port) {
+        this.requestHandler = requestHandler;
+        this.port = port;
+    }
+    
+    /**
+     * Opens the port and starts accepting connections.
+     * @throws IOException if the port can't be opened
+     */
+    public void start() throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        
+        // Not a daemon, so the bot keeps working when standard input is closed
+        Thread thread = new Thread(this::acceptConnections, "admin-server");
+        thread.start();
+    }
+    
+    private void acceptConnections() {
+        while(!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                
+                Thread thread = new Thread(() -> serve(socket), "admin-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if(!serverSocket.isClosed()) {
+                    Logger.error("Failed to accept admin connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private void serve(Socket socket) {
+        try (
+                Socket connection = socket;
+                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                PrintStream out = new PrintStream(connection.getOutputStream(), true, "UTF-8")
+                ) {
+            String request;
+            
+            while((request = reader.readLine()) != null && !request.trim().equals("exit")) {
+                requestHandler.handleRequest(request, out);
+            }
+        } catch (IOException ignored) {
+            // Connection is closed by the other side
+        }
+    }
+}
@@ -1,29 +1,278 @@
 package ru.mrflaxe.textadventure.console;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import ru.mrflaxe.textadventure.MyBot;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.quest.QuestSessionManager;
+import ru.mrflaxe.textadventure.quest.analytics.PathAnalytics;
+import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+import ru.mrflaxe.textadventure.user.User;
 
+/**
+ * Handles admin commands from standard input and from {@link AdminServer} connections. <br>
+ * Commands only read counters and copies of collections, so updates are handled as usual meanwhile.
+ * The only exception is 'heap': counting objects stops all threads of the bot at a safepoint
+ * for a time which grows with the heap size.
+ */
 public class ConsoleRequestHandler {
-
+    
+    private static final String HELP = "Commands:\n"
+            + "stop - saves progress and stops the bot\n"
+            + "sessions - count of active sessions and pending message sendings\n"
+            + "caches - sizes and hit rates of caches\n"
+            + "threads - count of threads by name and state\n"
+            + "heap [count] - classes taking most of the heap. Pauses the whole bot while the heap is walked\n"
+            + "slow [count] - handlers which took most time for one update\n"
+            + "flush - saves progress of active players without stopping their sessions\n"
+            + "reload - reads messages.yml again\n"
+            + "polling - long polling statistics\n"
+            + "text - memory used by quest text\n"
+            + "render - API calls spent on branch lines\n"
+            + "typing - skipped 'typing' statuses\n"
+            + "log - written, suppressed and dropped log records\n"
+            + "paths [count] - popular paths of the default quest";
+    
     private final MyBot bot;
     
     public ConsoleRequestHandler(MyBot bot) {
         this.bot = bot;
     }
     
+    /**
+     * Reads commands from standard input until it is closed. <br>
+     * {@link System#console()} is not used because there is no console when the bot runs as a service.
+     */
     public void run() {
-        while(true) {
-            String request = System.console().readLine();
-            handelRequest(request);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        
+        try {
+            String request;
+            
+            while((request = reader.readLine()) != null) {
+                handleRequest(request, System.out);
+            }
+        } catch (IOException e) {
+            Logger.error("Failed to read standard input: {}", e.getMessage());
         }
+        
+        Logger.info("Standard input is closed, console commands are available only on admin port");
     }
     
-    private void handelRequest(String request) {
+    /**
+     * Handles one command.
+     * @param request - command with arguments
+     * @param out - where to print the response
+     */
+    public void handleRequest(String request, PrintStream out) {
+        request = request.trim();
+        
+        if(request.isEmpty()) {
+            return;
+        }
+        
+        if(request.equals("help")) {
+            out.println(HELP);
+            return;
+        }
+        
         if(request.equals("stop")) {
             bot.disable();
             return;
         }
         
-        System.out.println("[ERROR]: Unknown command");
+        if(request.equals("sessions")) {
+            QuestSessionManager sessionManager = bot.getSessionManager();
+            
+            out.println("Active sessions: " + sessionManager.getActivePlayers().size() + "\n"
+                    + "Pending sendings: " + sessionManager.getPendingSendings());
+            return;
+        }
+        
+        if(request.equals("caches")) {
+            out.println("Users: " + bot.getUserProvider().getCachedUsers() + " cached\n"
+                    + bot.getUpdateProvider().getAchievementHandler().report() + "\n"
+                    + "Leaderboard: " + bot.getAchievementManager().getLeaderboard().size() + " players\n"
+                    + bot.getSessionManager().getQuestRegistry().getTextReport());
+            return;
+        }
+        
+        if(request.equals("threads")) {
+            out.println(reportThreads());
+            return;
+        }
+        
+        if(request.equals("heap") || request.startsWith("heap ")) {
+            showHeap(request, out);
+            return;
+        }
+        
+        if(request.equals("slow") || request.startsWith("slow ")) {
+            int limit = getLimit(request, out);
+            
+            if(limit > 0) {
+                out.println(bot.getUpdateProvider().getHandlerMetrics().report(limit));
+            }
+            
+            return;
+        }
+        
+        if(request.equals("flush")) {
+            flush(out);
+            return;
+        }
+        
+        if(request.equals("reload")) {
+            bot.getUpdateProvider().reloadMessages();
+            out.println("Messages are reloaded. Buttons and quest headers change only after restart");
+            return;
+        }
+        
+        if(request.equals("polling")) {
+            out.println(bot.getPollingController().getMetrics().report());
+            return;
+        }
+        
+        if(request.equals("text")) {
+            out.println(bot.getSessionManager().getQuestRegistry().getTextReport());
+            return;
+        }
+        
+        if(request.equals("render")) {
+            out.println(bot.getSessionManager().getRenderMetrics().report(10));
+            return;
+        }
+        
+        if(request.equals("typing")) {
+            out.println(bot.getSessionManager().getTypingTracker().report());
+            return;
+        }
+        
+        if(request.equals("log")) {
+            out.println(Logger.report());
+            return;
+        }
+        
+        if(request.equals("paths") || request.startsWith("paths ")) {
+            showPaths(request, out);
+            return;
+        }
+        
+        out.println("[ERROR]: Unknown command. Type 'help' to see all commands");
         return;
     }
+    
+    // Usage: paths [count]
+    private void showPaths(String request, PrintStream out) {
+        PathAnalytics analytics = bot.getSessionManager().getAnalytics();
+        
+        if(analytics == null) {
+            out.println("[ERROR]: Analytics is disabled");
+            return;
+        }
+        
+        int limit = getLimit(request, out);
+        
+        if(limit > 0) {
+            out.println(analytics.report(limit));
+        }
+    }
+    
+    // Usage: heap [count]
+    // '-all' skips full GC before counting, so unreachable objects are counted too.
+    // Even without GC the histogram is built at a safepoint, so all threads are paused until the heap is walked
+    private void showHeap(String request, PrintStream out) {
+        int limit = getLimit(request, out);
+        
+        if(limit <= 0) {
+            return;
+        }
+        
+        String histogram;
+        
+        try {
+            histogram = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                    new ObjectName("com.sun.management:type=DiagnosticCommand"),
+                    "gcClassHistogram",
+                    new Object[] { new String[] { "-all" } },
+                    new String[] { String[].class.getName() });
+        } catch (JMException e) {
+            out.println("[ERROR]: Heap histogram is not available: " + e.getMessage());
+            return;
+        }
+        
+        // Header of two lines, the classes and the total line
+        String[] lines = histogram.split("\n");
+        
+        for (int i = 0; i < lines.length && i < limit + 2; i++) {
+            out.println(lines[i]);
+        }
+        
+        if(lines.length > limit + 2) {
+            out.println(lines[lines.length - 1]);
+        }
+    }
+    
+    private void flush(PrintStream out) {
+        Map<User, QuestBranch> sessions = bot.getSessionManager().getSessions();
+        
+        if(!bot.getSessionManager().saveSessions(sessions)) {
+            out.println("[ERROR]: Failed to save progress of active players");
+            return;
+        }
+        
+        out.println("Saved progress of " + sessions.size() + " active players");
+    }
+    
+    // Thread numbers are removed from names, so threads of one pool are counted together
+    private String reportThreads() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Map<String, Integer> names = new TreeMap<>();
+        Map<String, Integer> states = new TreeMap<>();
+        
+        // Stack traces are not requested, so threads are not stopped to read them
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds(), 0)) {
+            if(info == null) {
+                continue;
+            }
+            
+            names.merge(info.getThreadName().replaceAll("[-#\\s]*\\d+$", ""), 1, Integer::sum);
+            states.merge(info.getThreadState().name(), 1, Integer::sum);
+        }
+        
+        StringBuilder report = new StringBuilder("Threads: " + threads.getThreadCount()
+                + " (daemon: " + threads.getDaemonThreadCount() + ", peak: " + threads.getPeakThreadCount() + ")\n"
+                + "States: " + states);
+        
+        names.forEach((name, count) -> report.append("\n").append(name).append(": ").append(count));
+        return report.toString();
+    }
+    
+    // Returns count from the second argument, 10 by default, or -1 if it's not a number
+    private int getLimit(String request, PrintStream out) {
+        String[] args = request.split(" ");
+        
+        if(args.length < 2) {
+            return 10;
+        }
+        
+        try {
+            return Math.max(1, Integer.parseInt(args[1]));
+        } catch (NumberFormatException ignored) {
+            out.println("[ERROR]: '" + args[1] + "' is not a number");
+            return -1;
+        }
+    }
 }
@@ -1,39 +1,65 @@
 package ru.mrflaxe.textadventure.database;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.sql.SQLException;
 
+import org.jetbrains.annotations.Nullable;
+
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.TableUtils;
 
 import lombok.Getter;
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.database.driver.DatabaseDriver;
+import ru.mrflaxe.textadventure.logging.Logger;
 
 public class Database {
-
+    
     private final Configuration config;
     
     @Getter
     private ConnectionSource connection;
     
+    private DatabaseDriver driver;
+    
     public Database(Configuration config) {
         this.config = config;
     }
     
     public void establishConnection() {
-        System.out.println("");
-        System.out.println("Trying to establish database connection.");
+        Logger.info("Trying to establish database connection.");
         
-        this.connection = getDriver().getConnection();
+        this.driver = getDriver();
+        
+        if(driver == null) {
+            Logger.error("Unknown database type: {}", config.getString("database.type"));
+            return;
+        }
+        
+        if(!driver.usesConnection()) {
+            Logger.info("Database works without connection.");
+            return;
+        }
+        
+        this.connection = driver.getConnection();
         
         if(connection == null) {
             return;
         }
         
-        System.out.println("Connection established!");
-        System.out.println("");
+        Logger.info("Connection established!");
+    }
+    
+    /**
+     * Creates database manager for the established database.
+     * @return database manager or null if something will go wrong
+     */
+    @Nullable
+    public DatabaseManager createManager() {
+        if(driver == null) {
+            return null;
+        }
+        
+        return driver.createManager(connection);
     }
     
     private DatabaseDriver getDriver() {
@@ -47,24 +73,7 @@ public class Database {
                 continue;
             }
             
-            Class<?> driverClass = values[i].getDriverClass();
-            
-            try {
-                Constructor<?> driverConstructor = driverClass.getConstructor(Configuration.class);
-                return (DatabaseDriver) driverConstructor.newInstance(config);
-            } catch (NoSuchMethodException e) {
-                e.printStackTrace();
-            } catch (SecurityException e) {
-                e.printStackTrace();
-            } catch (InstantiationException e) {
-                e.printStackTrace();
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (IllegalArgumentException e) {
-                e.printStackTrace();
-            } catch (InvocationTargetException e) {
-                e.printStackTrace();
-            }
+            return values[i].createDriver(config);
         }
         
         return null;
@@ -75,7 +84,7 @@ public class Database {
             TableUtils.createTableIfNotExists(connection, daoClass);
             return this;
         } catch (SQLException e) {
-            System.err.println("Failed to create table: " + e.getMessage());
+            Logger.error("Failed to create table: {}", e.getMessage());
             return this;
         }
     }
@@ -1,85 +1,58 @@
 package ru.mrflaxe.textadventure.database;
 
-import java.io.IOException;
-import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import org.jetbrains.annotations.Nullable;
 
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.dao.DaoManager;
-import com.j256.ormlite.support.ConnectionSource;
-
 import ru.mrflaxe.textadventure.database.model.AchievementModel;
 import ru.mrflaxe.textadventure.database.model.ProfileModel;
 import ru.mrflaxe.textadventure.database.model.SaveModel;
 import ru.mrflaxe.textadventure.user.User;
 
-public class DatabaseManager {
-    
-    private final ConnectionSource connection;
-
-    private final Dao<ProfileModel, String> profileDao;
-    private final Dao<SaveModel, String> saveDao;
-    private final Dao<AchievementModel, String> achievementDao;
-    
-    public DatabaseManager(ConnectionSource connection) throws SQLException {
-        this.connection = connection;
-        
-        this.profileDao = DaoManager.createDao(connection, ProfileModel.class);
-        this.saveDao = DaoManager.createDao(connection, SaveModel.class);
-        this.achievementDao = DaoManager.createDao(connection, AchievementModel.class);
-    }
+/**
+ * Storage of profiles, saves and achievements. <br>
+ * Implementations differ by where the data is kept, see {@link DatabaseType}.
+ */
+public interface DatabaseManager {
     
     /**
      * Closes the database connection
      */
-    public void shutdown() {
-        try {
-            this.connection.close();
-        } catch (IOException e) {
-            System.err.println("Failed to close database connection:");
-            e.printStackTrace();
-        }
-    }
+    void shutdown();
     
     /**
      * Creates new profile model and save model for this profile.
      * @param chatID
      * @param userName
-     * @return new ProfileModel of this user
+     * @return new ProfileModel of this user or null if the save can't be created
      */
-    public ProfileModel createNewProfile(long chatID, String userName) {
-        SaveModel newSaveModel = new SaveModel();
-        saveQuestSave(newSaveModel);
-        
-        String saveID = "" + newSaveModel.getId();
-        
-        return new ProfileModel(chatID, userName, saveID);
-    }
+    @Nullable
+    ProfileModel createNewProfile(long chatID, String userName);
     
     /**
      * Saves changes in profile model or saves the model if it doesn't exist in database yet.
      * @param profile - profile to save
      */
-    public void saveProfile(ProfileModel profile) {
-        try {
-            profileDao.createOrUpdate(profile);
-        } catch (SQLException e) {
-            errorLog("save", ProfileModel.class, e);
-        }
-    }
+    void saveProfile(ProfileModel profile);
     
     /**
      * Lazy method. <br>
      * Creates ProfileModel object and saves it in database by self.
      * @param chatID
      * @param userName
-     * @return created profile model
+     * @return created profile model or null if the save can't be created
      */
-    public ProfileModel createAndSaveProfile(long chatID, String userName) {
+    @Nullable
+    default ProfileModel createAndSaveProfile(long chatID, String userName) {
         ProfileModel newProfile = createNewProfile(chatID, userName);
-        saveProfile(newProfile);
+        
+        if(newProfile != null) {
+            saveProfile(newProfile);
+        }
         
         return newProfile;
     }
@@ -90,27 +63,46 @@ public class DatabaseManager {
      * @return profile model if found or null
      */
     @Nullable
-    public ProfileModel getProfile(long chatID) {
-        try {
-            ProfileModel profile = profileDao.queryForId("" + chatID);
-            
-            if(profile != null) {
-                return profile;
-            }
-            
-            return null;
-        } catch (SQLException e) {
-            errorLog("get", ProfileModel.class, e);
-            return null;
-        }
-    }
+    ProfileModel getProfile(long chatID);
+    
+    /**
+     * Gets profiles with given chat ids. Profiles are loaded by chunks.
+     * @param chatIDs - chat ids of profiles
+     * @return found profiles or null if something will go wrong
+     */
+    @Nullable
+    List<ProfileModel> getProfiles(Collection<Long> chatIDs);
+    
+    /**
+     * Creates profiles with their save models in one transaction. <br>
+     * Unlike {@link #createAndSaveProfile(long, String)} doesn't check if the models exist,
+     * so given chat ids should be checked before.
+     * @param names - map where key is chat id and value is user name
+     * @return created profiles or null if transaction failed
+     */
+    @Nullable
+    List<ProfileModel> createProfiles(Map<Long, String> names);
+    
+    /**
+     * Counts profiles in database.
+     * @return count of profiles or -1 if something will go wrong
+     */
+    long countProfiles();
+    
+    /**
+     * Passes chat id of each profile to the consumer. <br>
+     * Profiles are read one by one, so the whole table is never loaded in memory.
+     * @param consumer - receives chat ids
+     * @return count of read chat ids or -1 if something will go wrong
+     */
+    long forEachChatID(LongConsumer consumer);
     
     /**
      * Checks if database contains profile with given chat id.
      * @param chatID - chat id to check
      * @return true if contains. Otherwise false
      */
-    public boolean hasProfile(long chatID) {
+    default boolean hasProfile(long chatID) {
         return getProfile(chatID) != null;
     }
     
@@ -118,51 +110,26 @@ public class DatabaseManager {
      * Gets all profiles contained in database.
      * @return all profile models in list
      */
-    public List<ProfileModel> getProfiles() {
-        try {
-            return profileDao.queryForAll();
-        } catch (SQLException e) {
-            errorLog("get", List.class, e);
-            return null;
-        }
-    }
+    List<ProfileModel> getProfiles();
     
     /**
      * Deletes profile model from databse.
      * @param profile - profile to delete
      */
-    public void deleteProfile(ProfileModel profile) {
-        SaveModel save = getQuestSave(profile);
-        
-        if(save != null) {
-            deleteQuestSave(save);
-        }
-        
-        try {
-            profileDao.delete(profile);
-        } catch (SQLException e) {
-            errorLog("delete", ProfileModel.class, e);
-        }
-    }
+    void deleteProfile(ProfileModel profile);
     
     /**
      * Saves changes in save model or saves the model if it doesn't exist in database yet.
      * @param save - save to save :D
      */
-    public void saveQuestSave(SaveModel save) {
-        try {
-            saveDao.createOrUpdate(save);
-        } catch (SQLException e) {
-            errorLog("save", SaveModel.class, e);
-        }
-    }
+    void saveQuestSave(SaveModel save);
     
     /**
      * Checks if profile has active quest save.
      * @param profile - profile to check for save
      * @return true if save exist or false
      */
-    public boolean hasQuestSave(ProfileModel profile) {
+    default boolean hasQuestSave(ProfileModel profile) {
         SaveModel save = getQuestSave(profile);
         if(save == null) {
             return false;
@@ -176,63 +143,71 @@ public class DatabaseManager {
      * @param profile - profile what provides save
      * @return save model or null if something will go wrong
      */
-    public SaveModel getQuestSave(ProfileModel profile) {
-        String saveId = profile.getSaveID();
+    SaveModel getQuestSave(ProfileModel profile);
+    
+    /**
+     * Gets save model of the profile with given chat id. <br>
+     * Unlike {@link #getQuestSave(ProfileModel)} needs only one query joining profile and save.
+     * @param chatID - chat id of the profile
+     * @return save model or null if profile doesn't exist or something will go wrong
+     */
+    @Nullable
+    SaveModel getQuestSave(long chatID);
+    
+    /**
+     * Checks if profile with given chat id has active quest save.
+     * @param chatID - chat id of the profile
+     * @return true if save exist or false
+     */
+    default boolean hasQuestSave(long chatID) {
+        SaveModel save = getQuestSave(chatID);
         
-        try {
-            return saveDao.queryForId(saveId);
-        } catch (SQLException e) {
-            errorLog("get", SaveModel.class, e);
-            return null;
+        if(save == null) {
+            return false;
         }
+        
+        return save.getLastBranchID() != null;
     }
     
     /**
-     * Saves new branch id in the save model of given user.
+     * Saves new quest id and branch id in the save model of given user.
      * @param user - user whose save
+     * @param questID - id of the quest the branch belongs to
      * @param newBrachID - new branch id to save
+     * @return true if the save was updated, otherwise false
      */
-    public void updateSave(User user, String newBrachID) {
-        ProfileModel profile = user.getUserProfile();
-        
-        SaveModel save = getQuestSave(profile);
-        save.setLastBranchID(newBrachID);
-        
-        saveQuestSave(save);
-    }
+    boolean updateSave(User user, String questID, String newBrachID);
+    
+    /**
+     * Saves new quest ids and branch ids for many users at once. <br>
+     * Profiles are loaded by chunks and all saves are updated in one transaction.
+     * @param saves - map where key is chat id and value holds new quest id and branch id. Ids of these models are ignored
+     * @return true if all saves were updated, otherwise false
+     */
+    boolean updateSaves(Map<Long, SaveModel> saves);
     
     /**
      * Deletes save model from database.
      * @param save
      */
-    public void deleteQuestSave(SaveModel save) {
-        try {
-            saveDao.delete(save);
-        } catch (SQLException e) {
-            errorLog("delete", SaveModel.class, e);
-        }
-    }
+    void deleteQuestSave(SaveModel save);
     
     /**
-     * Clears branch id from given save model and saves it in database.
+     * Clears branch id and quest id from given save model and saves it in database.
      * @param save
      */
-    public void clearQuestSave(SaveModel save) {
+    default void clearQuestSave(SaveModel save) {
         save.setLastBranchID(null);
+        save.setQuestID(null);
         saveQuestSave(save);
     }
     
     /**
      * Saves changes in achievement model or saves the model if it doesn't exist in database yet.
      * @param achievement - achievement to save
+     * @return true if the achievement was saved, otherwise false
      */
-    public void saveAchievment(AchievementModel achievement) {
-        try {
-            achievementDao.createOrUpdate(achievement);
-        } catch (SQLException e) {
-            errorLog("save", AchievementModel.class, e);
-        }
-    }
+    boolean saveAchievment(AchievementModel achievement);
     
     /**
      * Gets all achievements by given chat id from database.
@@ -240,47 +215,45 @@ public class DatabaseManager {
      * @return list of recieved achievements
      */
     @Nullable
-    public List<AchievementModel> getAchievements(long chatID) {
-        try {
-            return achievementDao.queryForEq("chat_id", chatID);
-        } catch (SQLException e) {
-            errorLog("get list of", AchievementModel.class, e);
-            return null;
-        }
-    }
+    List<AchievementModel> getAchievements(long chatID);
+    
+    /**
+     * Passes each obtained achievement to the consumer. <br>
+     * Achievements are read one by one, so the whole table is never loaded in memory.
+     * @param consumer - receives achievements
+     * @return count of read achievements or -1 if something will go wrong
+     */
+    long forEachAchievement(Consumer<AchievementModel> consumer);
     
     /**
      * Gets all obtained achievement with given achievement id.
      * @param achievementID - achievement id to filter achievements
      * @return list of currently obtained achievements with given id.
      */
-    public List<AchievementModel> getCertainAchievments(String achievementID) {
-        try {
-            return achievementDao.queryForEq("achievement_id", achievementID);
-        } catch (SQLException e) {
-            errorLog("get list of", AchievementModel.class, e);
-            return null;
-        }
-    }
+    List<AchievementModel> getCertainAchievments(String achievementID);
+    
+    /**
+     * Counts obtained achievements with given achievement id without loading them.
+     * @param achievementID - achievement id to filter achievements
+     * @return count of obtained achievements or -1 if something will go wrong
+     */
+    long countCertainAchievments(String achievementID);
     
     /**
      * Gets percent of users who obtained achievement with given id.
+     * Only counts are read from database.
      * @param achievmentID - achievemnt to calculate percent.
      * @return percent of users who obtained achievement with given id
      */
-    public float getAchievmentPercent(String achievmentID) {
-        float allProfiles = getProfiles().size();
-        
-        List<AchievementModel> certainAchievments = getCertainAchievments(achievmentID);
+    default float getAchievmentPercent(String achievmentID) {
+        long allProfiles = countProfiles();
+        long givenAchivments = countCertainAchievments(achievmentID);
         
-        if(certainAchievments == null || certainAchievments.isEmpty()) {
+        if(allProfiles <= 0 || givenAchivments <= 0) {
             return 0f;
         }
         
-        float givenAchivments = certainAchievments.size();
-        float percent = givenAchivments/allProfiles * 100;
-        
-        return percent;
+        return (float) givenAchivments / allProfiles * 100;
     }
     
     /**
@@ -288,13 +261,7 @@ public class DatabaseManager {
      * @param achievementID - achievement to check
      * @return true if does or false
      */
-    public boolean isOnlyOneOwner(String achievementID) {
+    default boolean isOnlyOneOwner(String achievementID) {
         return getCertainAchievments(achievementID).size() == 1;
     }
-    
-    private void errorLog(String action, Class<?> model, SQLException e) {
-        System.err.println("Failed to " + action + " " + model.getName() + " while working with database.");
-        System.err.println(e.getMessage());
-        System.err.println("SQLstate is: " + e.getSQLState());
-    }
 }
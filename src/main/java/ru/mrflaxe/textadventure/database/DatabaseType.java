@@ -1,22 +1,41 @@
 package ru.mrflaxe.textadventure.database;
 
+import java.util.function.Function;
+
 import lombok.Getter;
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.database.driver.DatabaseDriver;
+import ru.mrflaxe.textadventure.database.driver.InMemoryDriver;
+import ru.mrflaxe.textadventure.database.driver.LogStorageDriver;
 import ru.mrflaxe.textadventure.database.driver.MySQLDriver;
 import ru.mrflaxe.textadventure.database.driver.SQLiteDriver;
+import ru.mrflaxe.textadventure.database.driver.ShardedSQLiteDriver;
+import ru.mrflaxe.textadventure.logging.Logger;
 
 public enum DatabaseType {
     
-    MYSQL("my_sql", MySQLDriver.class),
-    SQLITE("sqlite", SQLiteDriver.class);
+    MYSQL("my_sql", MySQLDriver::new),
+    SQLITE("sqlite", SQLiteDriver::new),
+    LOG("log", LogStorageDriver::new),
+    MEMORY("memory", InMemoryDriver::new),
+    SQLITE_SHARDED("sqlite_sharded", ShardedSQLiteDriver::new);
     
     @Getter
     private final String type;
     
-    @Getter
-    private final Class<?> driverClass;
+    private final Function<Configuration, DatabaseDriver> driverFactory;
     
-    private DatabaseType(String type, Class<?> driverClass) {
+    private DatabaseType(String type, Function<Configuration, DatabaseDriver> driverFactory) {
         this.type = type;
-        this.driverClass = driverClass;
+        this.driverFactory = driverFactory;
+    }
+    
+    /**
+     * Creates driver of this database type.
+     * @param config - main configuration
+     * @return new driver
+     */
+    public DatabaseDriver createDriver(Configuration config) {
+        return driverFactory.apply(config);
     }
 }
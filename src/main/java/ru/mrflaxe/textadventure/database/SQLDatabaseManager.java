@@ -0,0 +1,544 @@
+package ru.mrflaxe.textadventure.database;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.j256.ormlite.dao.CloseableIterator;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import ru.mrflaxe.textadventure.database.model.AchievementModel;
+import ru.mrflaxe.textadventure.database.model.AchievementModelDao;
+import ru.mrflaxe.textadventure.database.model.ProfileModel;
+import ru.mrflaxe.textadventure.database.model.ProfileModelDao;
+import ru.mrflaxe.textadventure.database.model.SaveModel;
+import ru.mrflaxe.textadventure.database.model.SaveModelDao;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.user.User;
+
+/**
+ * Database manager working through SQL connection. <br>
+ * Operations called for every player action use DAOs generated from the models,
+ * which work with plain JDBC and reuse prepared statements.
+ * All writes are upserts: one statement in the syntax of the database inserts a row or updates the existing one.
+ * Rare reads use ORMLite DAOs. <br>
+ * All statements share one connection, so a transaction opened there would also take
+ * writes of other threads. Because of that every write holds {@link #writeLock}.
+ */
+public class SQLDatabaseManager implements DatabaseManager {
+    
+    // Count of ids in one 'IN' clause. Keeps queries below SQLite variables limit
+    private static final int BATCH_SIZE = 500;
+    
+    private static final String SELECT_SAVE_BY_CHAT = "SELECT " + SaveModelDao.COLUMNS
+            + " FROM `" + SaveModelDao.TABLE + "` INNER JOIN `" + ProfileModelDao.TABLE + "`"
+            + " ON `" + SaveModelDao.TABLE + "`.`id` = `" + ProfileModelDao.TABLE + "`.`saves_id`"
+            + " WHERE `" + ProfileModelDao.TABLE + "`.`chat_id` = ?";
+    
+    private static final String SELECT_ACHIEVEMENTS_BY_CHAT = AchievementModelDao.SELECT + " WHERE `chat_id` = ?";
+    
+    private static final String UPDATE_SAVE_BY_CHAT = "UPDATE `" + SaveModelDao.TABLE + "` SET `last_branch_id` = ?, `quest_id` = ?"
+            + " WHERE `id` = (SELECT `saves_id` FROM `" + ProfileModelDao.TABLE + "` WHERE `chat_id` = ?)";
+    
+    private final ConnectionSource connection;
+    
+    private final Dao<ProfileModel, Long> profileDao;
+    private final Dao<AchievementModel, Integer> achievementDao;
+    
+    // Generated DAOs keep this connection until shutdown
+    private final DatabaseConnection jdbcConnection;
+    
+    private final ProfileModelDao profiles;
+    private final SaveModelDao saves;
+    private final AchievementModelDao achievements;
+    
+    // Held by every write, so writes of other threads never get into an open transaction
+    private final Object writeLock = new Object();
+    
+    // Saves with greater ids are not created
+    private final int maxSaveID;
+    
+    public SQLDatabaseManager(ConnectionSource connection) throws SQLException {
+        this(connection, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Creates manager which gives saves ids up to the limit. Used when ids of each database have their own range.
+     * @param connection - database connection
+     * @param maxSaveID - max id of a new save
+     */
+    public SQLDatabaseManager(ConnectionSource connection, int maxSaveID) throws SQLException {
+        this.connection = connection;
+        this.maxSaveID = maxSaveID;
+        
+        this.profileDao = DaoManager.createDao(connection, ProfileModel.class);
+        this.achievementDao = DaoManager.createDao(connection, AchievementModel.class);
+        
+        this.jdbcConnection = connection.getReadWriteConnection(ProfileModelDao.TABLE);
+        SqlDialect dialect = SqlDialect.of(connection);
+        
+        this.profiles = new ProfileModelDao(jdbcConnection.getUnderlyingConnection(), dialect);
+        this.saves = new SaveModelDao(jdbcConnection.getUnderlyingConnection(), dialect);
+        this.achievements = new AchievementModelDao(jdbcConnection.getUnderlyingConnection(), dialect);
+    }
+    
+    /**
+     * Closes the database connection
+     */
+    @Override
+    public void shutdown() {
+        profiles.close();
+        saves.close();
+        achievements.close();
+        
+        try {
+            connection.releaseConnection(jdbcConnection);
+            this.connection.close();
+        } catch (IOException | SQLException e) {
+            Logger.error("Failed to close database connection", e);
+        }
+    }
+    
+    
+    /**
+     * Creates new profile model and save model for this profile.
+     * @param chatID
+     * @param userName
+     * @return new ProfileModel of this user or null if the save can't be created
+     */
+    @Override
+    @Nullable
+    public ProfileModel createNewProfile(long chatID, String userName) {
+        SaveModel newSaveModel = new SaveModel();
+        
+        synchronized (writeLock) {
+            try {
+                createSave(newSaveModel);
+            } catch (SQLException e) {
+                errorLog("create", SaveModel.class, e);
+                return null;
+            }
+        }
+        
+        return new ProfileModel(chatID, userName, newSaveModel.getId());
+    }
+    
+    
+    /**
+     * Saves changes in profile model or saves the model if it doesn't exist in database yet.
+     * @param profile - profile to save
+     */
+    @Override
+    public void saveProfile(ProfileModel profile) {
+        synchronized (writeLock) {
+            try {
+                profiles.upsert(profile);
+            } catch (SQLException e) {
+                errorLog("save", ProfileModel.class, e);
+            }
+        }
+    }
+    
+    
+    /**
+     * Gets profile model from database by given chat id.
+     * @param chatID - chat id to identify the profile
+     * @return profile model if found or null
+     */
+    @Override
+    @Nullable
+    public ProfileModel getProfile(long chatID) {
+        try {
+            return profiles.queryForId(chatID);
+        } catch (SQLException e) {
+            errorLog("get", ProfileModel.class, e);
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Gets profiles with given chat ids. Profiles are loaded by chunks.
+     * @param chatIDs - chat ids of profiles
+     * @return found profiles or null if something will go wrong
+     */
+    @Override
+    @Nullable
+    public List<ProfileModel> getProfiles(Collection<Long> chatIDs) {
+        List<Long> ids = new ArrayList<>(chatIDs);
+        List<ProfileModel> profiles = new ArrayList<>();
+        
+        try {
+            for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+                List<Long> chunk = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+                
+                profiles.addAll(profileDao.queryBuilder()
+                        .where().in("chat_id", chunk)
+                        .query());
+            }
+            
+            return profiles;
+        } catch (SQLException e) {
+            errorLog("get list of", ProfileModel.class, e);
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Creates profiles with their save models in one transaction. <br>
+     * Unlike {@link #createAndSaveProfile(long, String)} doesn't check if the models exist,
+     * so given chat ids should be checked before. Existing profile fails the whole transaction,
+     * so its save is never replaced by an empty one.
+     * @param names - map where key is chat id and value is user name
+     * @return created profiles or null if transaction failed
+     */
+    @Override
+    @Nullable
+    public List<ProfileModel> createProfiles(Map<Long, String> names) {
+        synchronized (writeLock) {
+            try {
+                return TransactionManager.callInTransaction(connection, () -> {
+                    List<ProfileModel> created = new ArrayList<>();
+                    
+                    // Saves are inserted one by one to get their ids, profiles are inserted by multi-row statements
+                    for (Map.Entry<Long, String> set : names.entrySet()) {
+                        SaveModel save = new SaveModel();
+                        createSave(save);
+                        
+                        created.add(new ProfileModel(set.getKey(), set.getValue(), save.getId()));
+                    }
+                    
+                    profiles.createAll(created);
+                    return created;
+                });
+            } catch (SQLException e) {
+                errorLog("create list of", ProfileModel.class, e);
+                return null;
+            }
+        }
+    }
+    
+    
+    /**
+     * Counts profiles in database.
+     * @return count of profiles or -1 if something will go wrong
+     */
+    @Override
+    public long countProfiles() {
+        try {
+            return profileDao.countOf();
+        } catch (SQLException e) {
+            errorLog("count", ProfileModel.class, e);
+            return -1;
+        }
+    }
+    
+    
+    /**
+     * Passes chat id of each profile to the consumer. <br>
+     * Profiles are read one by one, so the whole table is never loaded in memory.
+     * @param consumer - receives chat ids
+     * @return count of read chat ids or -1 if something will go wrong
+     */
+    @Override
+    public long forEachChatID(LongConsumer consumer) {
+        long count = 0;
+        
+        try (CloseableIterator<ProfileModel> iterator = profileDao.queryBuilder()
+                .selectColumns("chat_id")
+                .iterator()) {
+            
+            while(iterator.hasNext()) {
+                consumer.accept(iterator.next().getChatId());
+                count++;
+            }
+            
+            return count;
+        } catch (SQLException | IOException e) {
+            Logger.error("Failed to read chat ids from database: {}", e.getMessage());
+            return -1;
+        }
+    }
+    
+    
+    /**
+     * Gets all profiles contained in database.
+     * @return all profile models in list
+     */
+    @Override
+    public List<ProfileModel> getProfiles() {
+        try {
+            return profileDao.queryForAll();
+        } catch (SQLException e) {
+            errorLog("get", List.class, e);
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Deletes profile model from databse.
+     * @param profile - profile to delete
+     */
+    @Override
+    public void deleteProfile(ProfileModel profile) {
+        synchronized (writeLock) {
+            try {
+                saves.deleteById(profile.getSaveID());
+            } catch (SQLException e) {
+                errorLog("delete", SaveModel.class, e);
+            }
+            
+            try {
+                profiles.deleteById(profile.getChatId());
+            } catch (SQLException e) {
+                errorLog("delete", ProfileModel.class, e);
+            }
+        }
+    }
+    
+    
+    /**
+     * Saves changes in save model or saves the model if it doesn't exist in database yet.
+     * @param save - save to save :D
+     */
+    @Override
+    public void saveQuestSave(SaveModel save) {
+        synchronized (writeLock) {
+            try {
+                saves.upsert(save);
+            } catch (SQLException e) {
+                errorLog("save", SaveModel.class, e);
+            }
+        }
+    }
+    
+    
+    /**
+     * Gets save model for profile from database
+     * @param profile - profile what provides save
+     * @return save model or null if something will go wrong
+     */
+    @Override
+    public SaveModel getQuestSave(ProfileModel profile) {
+        int saveId = profile.getSaveID();
+        
+        try {
+            return saves.queryForId(saveId);
+        } catch (SQLException e) {
+            errorLog("get", SaveModel.class, e);
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Gets save model of the profile with given chat id. <br>
+     * Unlike {@link #getQuestSave(ProfileModel)} needs only one query joining profile and save.
+     * @param chatID - chat id of the profile
+     * @return save model or null if profile doesn't exist or something will go wrong
+     */
+    @Override
+    @Nullable
+    public SaveModel getQuestSave(long chatID) {
+        try {
+            return saves.queryForFirst(SELECT_SAVE_BY_CHAT, chatID);
+        } catch (SQLException e) {
+            errorLog("get", SaveModel.class, e);
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Saves new quest id and branch id in the save model of given user.
+     * @param user - user whose save
+     * @param questID - id of the quest the branch belongs to
+     * @param newBrachID - new branch id to save
+     * @return true if the save was updated, otherwise false
+     */
+    @Override
+    public boolean updateSave(User user, String questID, String newBrachID) {
+        // Save is found by chat id inside the statement, so progress is saved with one round trip
+        synchronized (writeLock) {
+            try {
+                saves.execute(UPDATE_SAVE_BY_CHAT, newBrachID, questID, user.getChatID());
+                return true;
+            } catch (SQLException e) {
+                errorLog("update", SaveModel.class, e);
+                return false;
+            }
+        }
+    }
+    
+    
+    /**
+     * Saves new quest ids and branch ids for many users at once. <br>
+     * Profiles are loaded by chunks and all saves are written by multi-row upserts in one transaction.
+     * @param saves - map where key is chat id and value holds new quest id and branch id. Ids of these models are ignored
+     * @return true if all saves were updated, otherwise false
+     */
+    @Override
+    public boolean updateSaves(Map<Long, SaveModel> saves) {
+        if(saves.isEmpty()) {
+            return true;
+        }
+        
+        List<ProfileModel> found = getProfiles(saves.keySet());
+        
+        if(found == null) {
+            return false;
+        }
+        
+        List<SaveModel> updated = new ArrayList<>(found.size());
+        
+        for (ProfileModel profile : found) {
+            SaveModel save = saves.get(profile.getChatId());
+            updated.add(new SaveModel(profile.getSaveID(), save.getLastBranchID(), save.getQuestID()));
+        }
+        
+        synchronized (writeLock) {
+            try {
+                TransactionManager.callInTransaction(connection, () -> {
+                    this.saves.upsertAll(updated);
+                    return null;
+                });
+                
+                return true;
+            } catch (SQLException e) {
+                errorLog("save list of", SaveModel.class, e);
+                return false;
+            }
+        }
+    }
+    
+    
+    /**
+     * Deletes save model from database.
+     * @param save
+     */
+    @Override
+    public void deleteQuestSave(SaveModel save) {
+        synchronized (writeLock) {
+            try {
+                saves.deleteById(save.getId());
+            } catch (SQLException e) {
+                errorLog("delete", SaveModel.class, e);
+            }
+        }
+    }
+    
+    
+    /**
+     * Saves changes in achievement model or saves the model if it doesn't exist in database yet.
+     * @param achievement - achievement to save
+     * @return true if the achievement was saved, otherwise false
+     */
+    @Override
+    public boolean saveAchievment(AchievementModel achievement) {
+        synchronized (writeLock) {
+            try {
+                achievements.upsert(achievement);
+                return true;
+            } catch (SQLException e) {
+                errorLog("save", AchievementModel.class, e);
+                return false;
+            }
+        }
+    }
+    
+    
+    /**
+     * Gets all achievements by given chat id from database.
+     * @param chatID - id to filter achievements
+     * @return list of recieved achievements
+     */
+    @Override
+    @Nullable
+    public List<AchievementModel> getAchievements(long chatID) {
+        try {
+            return achievements.query(SELECT_ACHIEVEMENTS_BY_CHAT, chatID);
+        } catch (SQLException e) {
+            errorLog("get list of", AchievementModel.class, e);
+            return null;
+        }
+    }
+    
+    /**
+     * Counts obtained achievements with given achievement id by one COUNT query.
+     * @param achievementID - achievement id to filter achievements
+     * @return count of obtained achievements or -1 if something will go wrong
+     */
+    @Override
+    public long countCertainAchievments(String achievementID) {
+        try {
+            return achievementDao.queryBuilder().where().eq("achievement_id", achievementID).countOf();
+        } catch (SQLException e) {
+            errorLog("count", AchievementModel.class, e);
+            return -1;
+        }
+    }
+    
+    @Override
+    public long forEachAchievement(Consumer<AchievementModel> consumer) {
+        long count = 0;
+        
+        try (CloseableIterator<AchievementModel> iterator = achievementDao.queryBuilder().iterator()) {
+            while(iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+            
+            return count;
+        } catch (SQLException | IOException e) {
+            Logger.error("Failed to read achievements from database: {}", e.getMessage());
+            return -1;
+        }
+    }
+    
+    
+    /**
+     * Gets all obtained achievement with given achievement id.
+     * @param achievementID - achievement id to filter achievements
+     * @return list of currently obtained achievements with given id.
+     */
+    @Override
+    public List<AchievementModel> getCertainAchievments(String achievementID) {
+        try {
+            return achievementDao.queryForEq("achievement_id", achievementID);
+        } catch (SQLException e) {
+            errorLog("get list of", AchievementModel.class, e);
+            return null;
+        }
+    }
+    
+    
+    // Inserts new save. A save above the id limit is removed and the creation fails,
+    // so ids never get into the range of another database
+    private void createSave(SaveModel save) throws SQLException {
+        saves.create(save);
+        
+        if(save.getId() > maxSaveID) {
+            saves.deleteById(save.getId());
+            throw new SQLException("Save id " + save.getId() + " is above the limit " + maxSaveID
+                    + " of this database, no more saves can be created here");
+        }
+    }
+    
+    private void errorLog(String action, Class<?> model, SQLException e) {
+        // Message of the same failure is the same for all players, so repeats are suppressed by the log
+        Logger.error("Failed to {} while working with database: {} (SQLState {})", action + " " + model.getName(), e.getMessage(), e.getSQLState());
+    }
+}
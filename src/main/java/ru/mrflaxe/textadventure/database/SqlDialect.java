@@ -0,0 +1,29 @@
+package ru.mrflaxe.textadventure.database;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.jdbc.db.MysqlDatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+
+/**
+ * SQL dialects the bot can work with. Used where plain SQL differs between databases.
+ */
+public enum SqlDialect {
+    
+    MYSQL,
+    SQLITE;
+    
+    /**
+     * Gets dialect of database behind given connection.
+     * @param connection - database connection
+     * @return dialect of the database
+     */
+    public static SqlDialect of(ConnectionSource connection) {
+        DatabaseType databaseType = connection.getDatabaseType();
+        
+        if(databaseType instanceof MysqlDatabaseType) {
+            return MYSQL;
+        }
+        
+        return SQLITE;
+    }
+}
@@ -0,0 +1,189 @@
+package ru.mrflaxe.textadventure.database.benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.jdbc.db.SqliteDatabaseType;
+import com.j256.ormlite.logger.Level;
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import ru.mrflaxe.textadventure.database.SqlDialect;
+import ru.mrflaxe.textadventure.database.driver.InMemoryDriver;
+import ru.mrflaxe.textadventure.database.migration.MigrationRunner;
+import ru.mrflaxe.textadventure.database.model.AchievementModel;
+import ru.mrflaxe.textadventure.database.model.AchievementModelDao;
+import ru.mrflaxe.textadventure.database.model.ProfileModel;
+import ru.mrflaxe.textadventure.database.model.ProfileModelDao;
+import ru.mrflaxe.textadventure.database.model.SaveModel;
+import ru.mrflaxe.textadventure.database.model.SaveModelDao;
+
+/**
+ * Compares ORMLite DAOs with DAOs generated by {@link ru.mrflaxe.textadventure.database.dao.DaoProcessor}
+ * on operations done for every player action and on bulk saves. <br>
+ * Both work with the same in-memory SQLite database, so the difference is the cost of the mapping layer.
+ * Each operation is warmed up first, then measured several times. Result is the best and the average round.
+ * <br><br>
+ * Usage: <code>DaoBenchmark [operations per round] [rounds]</code>.
+ */
+public class DaoBenchmark {
+    
+    private static final int PLAYERS = 1000;
+    private static final String[] BRANCHES = { "start", "first-1", "gratitude", "ending-good" };
+    
+    // Count of saves written at once by bulk operations
+    private static final int BULK_SIZE = 100;
+    
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        
+        // Debug output of ORMLite would be measured instead of its mapping
+        com.j256.ormlite.logger.Logger.setGlobalLogLevel(Level.INFO);
+        
+        SqliteDatabaseType databaseType = new SqliteDatabaseType();
+        databaseType.loadDriver();
+        
+        ConnectionSource connection = new JdbcConnectionSource(InMemoryDriver.getURL("dao-benchmark"), databaseType);
+        new MigrationRunner(connection).migrate();
+        
+        DatabaseConnection databaseConnection = connection.getReadWriteConnection(ProfileModelDao.TABLE);
+        Connection jdbc = databaseConnection.getUnderlyingConnection();
+        
+        Dao<ProfileModel, Long> profileDao = DaoManager.createDao(connection, ProfileModel.class);
+        Dao<SaveModel, Integer> saveDao = DaoManager.createDao(connection, SaveModel.class);
+        Dao<AchievementModel, Integer> achievementDao = DaoManager.createDao(connection, AchievementModel.class);
+        
+        SqlDialect dialect = SqlDialect.of(connection);
+        
+        ProfileModelDao profiles = new ProfileModelDao(jdbc, dialect);
+        SaveModelDao saves = new SaveModelDao(jdbc, dialect);
+        AchievementModelDao achievements = new AchievementModelDao(jdbc, dialect);
+        
+        for (int i = 1; i <= PLAYERS; i++) {
+            SaveModel save = new SaveModel();
+            saves.create(save);
+            profiles.create(new ProfileModel(i, "user" + i, save.getId()));
+            achievements.create(new AchievementModel(i, "first", "First", "First achievement"));
+        }
+        
+        Operation ormliteProfile = i -> profileDao.queryForId((long) player(i));
+        Operation generatedProfile = i -> profiles.queryForId(player(i));
+        compare("get profile", operations, rounds, ormliteProfile, generatedProfile);
+        
+        Operation ormliteSave = i -> saveDao.createOrUpdate(new SaveModel(player(i), BRANCHES[i % BRANCHES.length], null));
+        Operation generatedSave = i -> saves.upsert(new SaveModel(player(i), BRANCHES[i % BRANCHES.length], null));
+        compare("save progress", operations, rounds, ormliteSave, generatedSave);
+        
+        // Each operation writes a bulk of saves in one transaction
+        Operation ormliteBulk = i -> TransactionManager.callInTransaction(connection, () -> {
+            for (SaveModel save : bulk(i)) {
+                saveDao.createOrUpdate(save);
+            }
+            
+            return null;
+        });
+        
+        Operation generatedBulk = i -> TransactionManager.callInTransaction(connection, () -> {
+            saves.upsertAll(bulk(i));
+            return null;
+        });
+        
+        compare("save " + BULK_SIZE + " progresses", Math.max(1, operations / BULK_SIZE), rounds, ormliteBulk, generatedBulk);
+        
+        Operation ormliteAchievements = i -> achievementDao.queryForEq("chat_id", (long) player(i));
+        Operation generatedAchievements = i -> achievements.query(AchievementModelDao.SELECT + " WHERE `chat_id` = ?", (long) player(i));
+        compare("get achievements", operations, rounds, ormliteAchievements, generatedAchievements);
+        
+        profiles.close();
+        saves.close();
+        achievements.close();
+        
+        connection.releaseConnection(databaseConnection);
+        connection.close();
+    }
+    
+    private static void compare(String name, int operations, int rounds, Operation ormlite, Operation generated) throws SQLException {
+        // Warm up both, so JIT compiles them before measurement
+        measure(ormlite, operations);
+        measure(generated, operations);
+        
+        long[] ormliteRounds = new long[rounds];
+        long[] generatedRounds = new long[rounds];
+        
+        // Rounds alternate, so both get the same conditions
+        for (int round = 0; round < rounds; round++) {
+            ormliteRounds[round] = measure(ormlite, operations);
+            generatedRounds[round] = measure(generated, operations);
+        }
+        
+        print(name, "ormlite", operations, ormliteRounds);
+        print(name, "generated", operations, generatedRounds);
+        
+        System.out.println(name + " | speedup: " + String.format("%.2f", (double) average(ormliteRounds) / average(generatedRounds)) + "x");
+        System.out.println("");
+    }
+    
+    private static long measure(Operation operation, int operations) throws SQLException {
+        long start = System.nanoTime();
+        
+        for (int i = 0; i < operations; i++) {
+            operation.run(i);
+        }
+        
+        return System.nanoTime() - start;
+    }
+    
+    private static void print(String name, String dao, int operations, long[] rounds) {
+        long best = Long.MAX_VALUE;
+        
+        for (long round : rounds) {
+            best = Math.min(best, round);
+        }
+        
+        System.out.println(name + " | " + dao + ": " + perSecond(operations, average(rounds)) + " ops/sec average, "
+                + perSecond(operations, best) + " ops/sec best");
+    }
+    
+    private static long average(long[] rounds) {
+        long sum = 0;
+        
+        for (long round : rounds) {
+            sum += round;
+        }
+        
+        return sum / rounds.length;
+    }
+    
+    private static long perSecond(int operations, long nanos) {
+        return operations * 1_000_000_000L / Math.max(1, nanos);
+    }
+    
+    private static List<SaveModel> bulk(int operation) {
+        List<SaveModel> saves = new ArrayList<>(BULK_SIZE);
+        
+        for (int i = 0; i < BULK_SIZE; i++) {
+            int index = operation * BULK_SIZE + i;
+            saves.add(new SaveModel(player(index), BRANCHES[index % BRANCHES.length], null));
+        }
+        
+        return saves;
+    }
+    
+    // Saves of players have the same ids as their chats, so one number selects both
+    private static int player(int operation) {
+        return operation % PLAYERS + 1;
+    }
+    
+    @FunctionalInterface
+    private interface Operation {
+        
+        void run(int index) throws SQLException;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.mrflaxe.textadventure.database.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.jdbc.db.SqliteDatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.SQLDatabaseManager;
+import ru.mrflaxe.textadventure.database.driver.InMemoryDriver;
+import ru.mrflaxe.textadventure.database.log.LogDatabaseManager;
+import ru.mrflaxe.textadventure.database.migration.MigrationRunner;
+import ru.mrflaxe.textadventure.database.model.SaveModel;
+
+/**
+ * Compares profile and save operations per second of the log storage, SQLite and in-memory SQLite. <br>
+ * File storages work with temporary files which are deleted after the run.
+ * <br><br>
+ * Usage: <code>StorageBenchmark [log operations] [sqlite operations]</code>.
+ * SQLite commits every operation separately, so it gets less operations by default.
+ */
+public class StorageBenchmark {
+    
+    private static final String[] BRANCHES = { "start", "first-1", "gratitude", "ending-good" };
+    
+    public static void main(String[] args) throws Exception {
+        int logOperations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int sqliteOperations = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        
+        Path directory = Files.createTempDirectory("storage-benchmark");
+        
+        try {
+            Path logFile = directory.resolve("database.log");
+            DatabaseManager log = new LogDatabaseManager(logFile, 200, 600);
+            run("log", log, logOperations);
+            log.shutdown();
+            
+            System.out.println("log file size: " + Files.size(logFile) / 1024 + " KB");
+            
+            // Replays whole log as the bot does on start
+            long start = System.nanoTime();
+            DatabaseManager reopened = new LogDatabaseManager(logFile, 200, 600);
+            System.out.println("log replay of " + reopened.countProfiles() + " profiles: " + millis(start) + " ms");
+            reopened.shutdown();
+            
+            System.out.println("");
+            
+            DatabaseManager sqlite = createSQLite("jdbc:sqlite:" + directory.resolve("database.db").toAbsolutePath());
+            run("sqlite", sqlite, sqliteOperations);
+            sqlite.shutdown();
+            
+            System.out.println("");
+            
+            // Same SQL code without disk, shows the cost of SQLite commits
+            DatabaseManager memory = createSQLite(InMemoryDriver.getURL("storage-benchmark"));
+            run("memory", memory, logOperations / 4);
+            memory.shutdown();
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+    
+    private static void run(String name, DatabaseManager manager, int operations) {
+        measure(name, "create profile", operations, i -> manager.createAndSaveProfile(i, "user" + i));
+        measure(name, "get profile", operations, i -> manager.getProfile(i));
+        measure(name, "get save", operations, i -> manager.getQuestSave(i));
+        
+        measure(name, "update save", operations, i -> {
+            SaveModel save = manager.getQuestSave(i);
+            save.setLastBranchID(BRANCHES[i % BRANCHES.length]);
+            manager.saveQuestSave(save);
+        });
+    }
+    
+    private static void measure(String storage, String operation, int operations, IntConsumer action) {
+        long start = System.nanoTime();
+        
+        for (int i = 1; i <= operations; i++) {
+            action.accept(i);
+        }
+        
+        long elapsed = System.nanoTime() - start;
+        long perSecond = operations * 1_000_000_000L / Math.max(1, elapsed);
+        
+        System.out.println(storage + " | " + operation + ": " + perSecond + " ops/sec (" + operations + " in " + elapsed / 1_000_000 + " ms)");
+    }
+    
+    private static DatabaseManager createSQLite(String url) throws SQLException {
+        SqliteDatabaseType databaseType = new SqliteDatabaseType();
+        databaseType.loadDriver();
+        
+        ConnectionSource connection = new JdbcConnectionSource(url, databaseType);
+        new MigrationRunner(connection).migrate();
+        
+        return new SQLDatabaseManager(connection);
+    }
+    
+    private static long millis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+    
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        
+        Files.deleteIfExists(directory);
+    }
+}
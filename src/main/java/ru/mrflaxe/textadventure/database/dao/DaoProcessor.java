@@ -0,0 +1,531 @@
+package ru.mrflaxe.textadventure.database.dao;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * Generates {@link JdbcDao} for every model annotated with ORMLite {@link DatabaseTable}. <br>
+ * DAO of 'SomeModel' is 'SomeModelDao' in the same package. It has SQL of the table as constants
+ * and maps columns to constructor arguments and getters of the model, so no reflection is used at runtime.
+ * Models with id also get upserts: one statement inserting the row or updating the existing one,
+ * in the syntax of the database dialect.
+ * <br><br>
+ * Model should have a constructor taking all its {@link DatabaseField} fields in declaration order
+ * (Lombok AllArgsConstructor fits) and getters of these fields. Generated id needs a setter.
+ * Supported field types are int, long, boolean, double, String and java.sql.Date.
+ */
+@SupportedAnnotationTypes("com.j256.ormlite.table.DatabaseTable")
+public class DaoProcessor extends AbstractProcessor {
+    
+    // Processor is compiled before other classes, so it can't refer to them
+    private static final String JDBC_DAO = "ru.mrflaxe.textadventure.database.dao.JdbcDao";
+    
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+    
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment environment) {
+        for (Element element : environment.getElementsAnnotatedWith(DatabaseTable.class)) {
+            if(!(element instanceof TypeElement)) {
+                continue;
+            }
+            
+            TypeElement model = (TypeElement) element;
+            List<Column> columns = getColumns(model);
+            
+            if(columns == null) {
+                continue;
+            }
+            
+            try {
+                generate(model, columns);
+            } catch (IOException e) {
+                error(model, "Failed to write DAO of " + model.getSimpleName() + ": " + e.getMessage());
+            }
+        }
+        
+        return false;
+    }
+    
+    // Returns null if the model can't be mapped, errors are reported to the compiler
+    private List<Column> getColumns(TypeElement model) {
+        List<Column> columns = new ArrayList<>();
+        int fields = 0;
+        
+        for (VariableElement field : ElementFilter.fieldsIn(model.getEnclosedElements())) {
+            if(field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            
+            fields++;
+            DatabaseField annotation = field.getAnnotation(DatabaseField.class);
+            
+            if(annotation == null) {
+                continue;
+            }
+            
+            String type = getType(field.asType());
+            
+            if(type == null) {
+                error(field, "Type " + field.asType() + " is not supported by generated DAO");
+                return null;
+            }
+            
+            String column = annotation.columnName().isEmpty() ? field.getSimpleName().toString() : annotation.columnName();
+            Column mapped = new Column(field, column, type, annotation.id() || annotation.generatedId(), annotation.generatedId());
+            
+            if(!hasAccessor(model, field, mapped.getter(), "lombok.Getter")) {
+                error(field, "Generated DAO needs getter " + mapped.getter() + "()");
+                return null;
+            }
+            
+            if(mapped.generated && !hasAccessor(model, field, mapped.setter(), "lombok.Setter")) {
+                error(field, "Generated DAO needs setter " + mapped.setter() + "() of generated id");
+                return null;
+            }
+            
+            columns.add(mapped);
+        }
+        
+        if(columns.isEmpty()) {
+            error(model, "Model has no database fields");
+            return null;
+        }
+        
+        boolean allFields = fields == columns.size() && hasAnnotation(model, "lombok.AllArgsConstructor");
+        
+        if(!allFields && !hasConstructor(model, columns)) {
+            error(model, "Generated DAO needs constructor taking all database fields in declaration order");
+            return null;
+        }
+        
+        return columns;
+    }
+    
+    private void generate(TypeElement model, List<Column> columns) throws IOException {
+        PackageElement modelPackage = processingEnv.getElementUtils().getPackageOf(model);
+        String packageName = modelPackage.getQualifiedName().toString();
+        String modelName = model.getSimpleName().toString();
+        String daoName = modelName + "Dao";
+        String tableName = model.getAnnotation(DatabaseTable.class).tableName();
+        String table = tableName.isEmpty() ? modelName.toLowerCase() : tableName;
+        
+        Column id = null;
+        List<Column> values = new ArrayList<>();
+        
+        for (Column column : columns) {
+            if(column.id) {
+                id = column;
+            } else {
+                values.add(column);
+            }
+        }
+        
+        StringJoiner selected = new StringJoiner(", ");
+        columns.forEach(column -> selected.add("`" + table + "`.`" + column.name + "`"));
+        
+        StringBuilder code = new StringBuilder();
+        
+        code.append("package ").append(packageName).append(";\n\n")
+            .append("import java.sql.Connection;\n")
+            .append("import java.sql.PreparedStatement;\n")
+            .append("import java.sql.ResultSet;\n")
+            .append("import java.sql.SQLException;\n")
+            .append("import java.util.ArrayList;\n")
+            .append("import java.util.Collection;\n")
+            .append("import java.util.List;\n\n")
+            .append("import ru.mrflaxe.textadventure.database.SqlDialect;\n")
+            .append("import ").append(JDBC_DAO).append(";\n\n")
+            .append("// Generated by ").append(DaoProcessor.class.getSimpleName()).append(" from ").append(modelName).append(". Don't edit\n")
+            .append("public final class ").append(daoName).append(" extends JdbcDao<").append(modelName).append("> {\n\n")
+            .append("    public static final String TABLE = \"").append(table).append("\";\n")
+            .append("    public static final String COLUMNS = \"").append(selected).append("\";\n")
+            .append("    public static final String SELECT = \"SELECT \" + COLUMNS + \" FROM `").append(table).append("`\";\n\n");
+        
+        // Generated id is given by database unless the model already has it
+        List<Column> inserted = id != null && id.generated ? values : columns;
+        code.append("    private static final String INSERT = \"").append(insert(table, inserted)).append("\";\n");
+        
+        if(id != null) {
+            if(id.generated) {
+                code.append("    private static final String INSERT_WITH_ID = \"").append(insert(table, columns)).append("\";\n");
+            }
+            
+            code.append("    private static final String SELECT_BY_ID = SELECT + \" WHERE `").append(id.name).append("` = ?\";\n")
+                .append("    private static final String UPDATE = \"").append(update(table, values, id)).append("\";\n")
+                .append("    private static final String DELETE_BY_ID = \"DELETE FROM `").append(table)
+                .append("` WHERE `").append(id.name).append("` = ?\";\n\n");
+            
+            appendUpsertConstants(code, table, columns, values, id);
+        }
+        
+        code.append("\n    public ").append(daoName).append("(Connection connection, SqlDialect dialect) {\n")
+            .append("        super(connection);\n");
+        
+        if(id != null) {
+            code.append("        this.upsertConflict = dialect == SqlDialect.MYSQL ? MYSQL_CONFLICT : SQLITE_CONFLICT;\n")
+                .append("        this.singleUpsert = ROWS_HEAD + ROW + upsertConflict;\n");
+        }
+        
+        code.append("    }\n\n");
+        
+        // Mapping
+        StringJoiner arguments = new StringJoiner(",\n                ");
+        
+        for (int i = 0; i < columns.size(); i++) {
+            arguments.add(columns.get(i).read(i + 1));
+        }
+        
+        code.append("    @Override\n")
+            .append("    protected ").append(modelName).append(" map(ResultSet result) throws SQLException {\n")
+            .append("        return new ").append(modelName).append("(\n                ").append(arguments).append(");\n")
+            .append("    }\n\n");
+        
+        // Inserts
+        code.append("    public synchronized void create(").append(modelName).append(" model) throws SQLException {\n");
+        
+        if(id != null && id.generated) {
+            code.append("        if(model.").append(id.getter()).append("() != 0) {\n")
+                .append("            PreparedStatement statement = prepare(INSERT_WITH_ID);\n");
+            bind(code, "            ", columns, 1);
+            code.append("            statement.executeUpdate();\n")
+                .append("            return;\n")
+                .append("        }\n\n")
+                .append("        PreparedStatement statement = prepare(INSERT, true);\n");
+            bind(code, "        ", inserted, 1);
+            code.append("        statement.executeUpdate();\n")
+                .append("        model.").append(id.setter()).append("((").append(id.type).append(") generatedKey(statement));\n");
+        } else {
+            code.append("        PreparedStatement statement = prepare(INSERT);\n");
+            bind(code, "        ", inserted, 1);
+            code.append("        statement.executeUpdate();\n");
+        }
+        
+        code.append("    }\n");
+        
+        if(id != null) {
+            appendIdMethods(code, modelName, id, values);
+            appendUpsertMethods(code, modelName, columns, id);
+        }
+        
+        code.append("}\n");
+        
+        try (Writer writer = processingEnv.getFiler().createSourceFile(packageName + "." + daoName, model).openWriter()) {
+            writer.write(code.toString());
+        }
+    }
+    
+    private void appendIdMethods(StringBuilder code, String modelName, Column id, List<Column> values) {
+        code.append("\n    public synchronized ").append(modelName).append(" queryForId(").append(id.type).append(" id) throws SQLException {\n")
+            .append("        PreparedStatement statement = prepare(SELECT_BY_ID);\n")
+            .append("        statement.").append(id.jdbcSetter()).append("(1, id);\n\n")
+            .append("        return first(statement);\n")
+            .append("    }\n\n");
+        
+        code.append("    /**\n")
+            .append("     * @return count of updated rows, 0 if there is no row with id of the model\n")
+            .append("     */\n")
+            .append("    public synchronized int update(").append(modelName).append(" model) throws SQLException {\n")
+            .append("        PreparedStatement statement = prepare(UPDATE);\n");
+        bind(code, "        ", values, 1);
+        code.append("        statement.").append(id.jdbcSetter()).append("(").append(values.size() + 1)
+            .append(", model.").append(id.getter()).append("());\n\n")
+            .append("        return statement.executeUpdate();\n")
+            .append("    }\n\n");
+        
+        // Update goes first, so the common case of an existing row needs one statement
+        code.append("    public synchronized void createOrUpdate(").append(modelName).append(" model) throws SQLException {\n");
+        
+        if(id.generated) {
+            code.append("        if(model.").append(id.getter()).append("() == 0 || update(model) == 0) {\n");
+        } else {
+            code.append("        if(update(model) == 0) {\n");
+        }
+        
+        code.append("            create(model);\n")
+            .append("        }\n")
+            .append("    }\n\n");
+        
+        code.append("    public synchronized int deleteById(").append(id.type).append(" id) throws SQLException {\n")
+            .append("        PreparedStatement statement = prepare(DELETE_BY_ID);\n")
+            .append("        statement.").append(id.jdbcSetter()).append("(1, id);\n\n")
+            .append("        return statement.executeUpdate();\n")
+            .append("    }\n");
+    }
+    
+    private void appendUpsertConstants(StringBuilder code, String table, List<Column> columns, List<Column> values, Column id) {
+        StringJoiner names = new StringJoiner(", ");
+        StringJoiner marks = new StringJoiner(", ");
+        
+        for (Column column : columns) {
+            names.add("`" + column.name + "`");
+            marks.add("?");
+        }
+        
+        StringJoiner mysql = new StringJoiner(", ");
+        StringJoiner sqlite = new StringJoiner(", ");
+        
+        for (Column column : values) {
+            mysql.add("`" + column.name + "` = VALUES(`" + column.name + "`)");
+            sqlite.add("`" + column.name + "` = excluded.`" + column.name + "`");
+        }
+        
+        // Table of id only has nothing to update
+        String mysqlConflict = values.isEmpty()
+                ? " ON DUPLICATE KEY UPDATE `" + id.name + "` = `" + id.name + "`"
+                : " ON DUPLICATE KEY UPDATE " + mysql;
+        
+        String sqliteConflict = values.isEmpty()
+                ? " ON CONFLICT(`" + id.name + "`) DO NOTHING"
+                : " ON CONFLICT(`" + id.name + "`) DO UPDATE SET " + sqlite;
+        
+        code.append("    private static final String ROWS_HEAD = \"INSERT INTO `").append(table).append("` (").append(names).append(") VALUES \";\n")
+            .append("    private static final String ROW = \"(").append(marks).append(")\";\n")
+            .append("    private static final int ROW_COLUMNS = ").append(columns.size()).append(";\n")
+            .append("    private static final String MYSQL_CONFLICT = \"").append(mysqlConflict).append("\";\n")
+            .append("    private static final String SQLITE_CONFLICT = \"").append(sqliteConflict).append("\";\n\n")
+            .append("    private final String upsertConflict;\n")
+            .append("    private final String singleUpsert;\n");
+    }
+    
+    private void appendUpsertMethods(StringBuilder code, String modelName, List<Column> columns, Column id) {
+        // Database gives generated id only to a new row, so such models are inserted
+        String isNew = id.generated ? "model." + id.getter() + "() == 0" : null;
+        
+        code.append("\n    /**\n")
+            .append("     * Inserts the model or updates its existing row with one statement.\n")
+            .append("     */\n")
+            .append("    public synchronized void upsert(").append(modelName).append(" model) throws SQLException {\n");
+        
+        if(isNew != null) {
+            code.append("        if(").append(isNew).append(") {\n")
+                .append("            create(model);\n")
+                .append("            return;\n")
+                .append("        }\n\n");
+        }
+        
+        code.append("        PreparedStatement statement = prepare(singleUpsert);\n")
+            .append("        bindRow(statement, 1, model);\n\n")
+            .append("        statement.executeUpdate();\n")
+            .append("    }\n\n");
+        
+        appendRowsMethod(code, modelName, "upsertAll", "Upserts models with multi-row statements.", "upsertConflict", isNew);
+        appendRowsMethod(code, modelName, "createAll",
+                "Inserts models with multi-row statements. Fails if a row with the same id already exists.", "\"\"", isNew);
+        
+        code.append("    private void bindRow(PreparedStatement statement, int index, ").append(modelName).append(" model) throws SQLException {\n");
+        
+        for (int i = 0; i < columns.size(); i++) {
+            code.append("        ").append(columns.get(i).write(i == 0 ? "index" : "index + " + i)).append(";\n");
+        }
+        
+        code.append("    }\n");
+    }
+    
+    private void appendRowsMethod(StringBuilder code, String modelName, String method, String description, String tail, String isNew) {
+        code.append("    /**\n")
+            .append("     * ").append(description);
+        
+        if(isNew != null) {
+            code.append(" Models without id are inserted one by one to get their ids.");
+        }
+        
+        code.append("\n     */\n")
+            .append("    public synchronized void ").append(method).append("(Collection<").append(modelName).append("> models) throws SQLException {\n")
+            .append("        List<").append(modelName).append("> rows = new ArrayList<>(models.size());\n\n")
+            .append("        for (").append(modelName).append(" model : models) {\n");
+        
+        if(isNew != null) {
+            code.append("            if(").append(isNew).append(") {\n")
+                .append("                create(model);\n")
+                .append("                continue;\n")
+                .append("            }\n\n");
+        }
+        
+        code.append("            rows.add(model);\n")
+            .append("        }\n\n")
+            .append("        executeRows(rows, ROWS_HEAD, ROW, ").append(tail).append(", ROW_COLUMNS, this::bindRow);\n")
+            .append("    }\n\n");
+    }
+    
+    private void bind(StringBuilder code, String indent, List<Column> columns, int firstIndex) {
+        for (int i = 0; i < columns.size(); i++) {
+            code.append(indent).append(columns.get(i).write(String.valueOf(firstIndex + i))).append(";\n");
+        }
+    }
+    
+    private String insert(String table, List<Column> columns) {
+        StringJoiner names = new StringJoiner(", ");
+        StringJoiner marks = new StringJoiner(", ");
+        
+        for (Column column : columns) {
+            names.add("`" + column.name + "`");
+            marks.add("?");
+        }
+        
+        return "INSERT INTO `" + table + "` (" + names + ") VALUES (" + marks + ")";
+    }
+    
+    private String update(String table, List<Column> values, Column id) {
+        StringJoiner assignments = new StringJoiner(", ");
+        values.forEach(column -> assignments.add("`" + column.name + "` = ?"));
+        
+        return "UPDATE `" + table + "` SET " + assignments + " WHERE `" + id.name + "` = ?";
+    }
+    
+    private String getType(TypeMirror type) {
+        switch (type.getKind()) {
+        case INT:
+        case LONG:
+        case BOOLEAN:
+        case DOUBLE:
+            return type.toString();
+        default:
+            break;
+        }
+        
+        String name = type.toString();
+        
+        if(name.equals("java.lang.String") || name.equals("java.sql.Date")) {
+            return name;
+        }
+        
+        return null;
+    }
+    
+    private boolean hasConstructor(TypeElement model, List<Column> columns) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            
+            if(parameters.size() != columns.size()) {
+                continue;
+            }
+            
+            boolean matches = true;
+            
+            for (int i = 0; i < parameters.size() && matches; i++) {
+                matches = processingEnv.getTypeUtils().isSameType(parameters.get(i).asType(), columns.get(i).field.asType());
+            }
+            
+            if(matches) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    // Accessor is written by hand or generated by Lombok annotation on the field or the class
+    private boolean hasAccessor(TypeElement model, VariableElement field, String method, String lombokAnnotation) {
+        for (ExecutableElement existing : ElementFilter.methodsIn(model.getEnclosedElements())) {
+            if(existing.getSimpleName().contentEquals(method)) {
+                return true;
+            }
+        }
+        
+        return hasAnnotation(field, lombokAnnotation) || hasAnnotation(model, lombokAnnotation);
+    }
+    
+    // Lombok annotations are compared by name, Lombok isn't needed to run the processor
+    private boolean hasAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if(mirror.getAnnotationType().toString().equals(annotation)) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+    
+    private static class Column {
+        
+        private final VariableElement field;
+        private final String name;
+        private final String type;
+        private final boolean id;
+        private final boolean generated;
+        
+        private Column(VariableElement field, String name, String type, boolean id, boolean generated) {
+            this.field = field;
+            this.name = name;
+            this.type = type;
+            this.id = id;
+            this.generated = generated;
+        }
+        
+        // Lombok naming: 'is' prefix for primitive boolean, first letter in upper case
+        private String getter() {
+            return (type.equals("boolean") ? "is" : "get") + capitalized();
+        }
+        
+        private String setter() {
+            return "set" + capitalized();
+        }
+        
+        private String capitalized() {
+            String fieldName = field.getSimpleName().toString();
+            return Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        }
+        
+        private String jdbcSetter() {
+            switch (type) {
+            case "int":
+                return "setInt";
+            case "long":
+                return "setLong";
+            case "boolean":
+                return "setBoolean";
+            case "double":
+                return "setDouble";
+            default:
+                return "setString";
+            }
+        }
+        
+        private String write(String index) {
+            String value = "model." + getter() + "()";
+            
+            if(type.equals("java.sql.Date")) {
+                return "setDate(statement, " + index + ", " + value + ")";
+            }
+            
+            return "statement." + jdbcSetter() + "(" + index + ", " + value + ")";
+        }
+        
+        private String read(int index) {
+            if(type.equals("java.sql.Date")) {
+                return "getDate(result, " + index + ")";
+            }
+            
+            return "result.get" + jdbcSetter().substring(3) + "(" + index + ")";
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package ru.mrflaxe.textadventure.database.dao;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Base of DAOs generated by {@link DaoProcessor}. <br>
+ * Works with plain JDBC: each statement is prepared once and reused,
+ * rows are mapped to models by generated code without reflection.
+ * <br><br>
+ * All statements of the DAO share one connection, so its methods are synchronized.
+ * @param <T> - model of the table
+ */
+public abstract class JdbcDao<T> {
+    
+    // Max count of arguments in one statement. Old SQLite versions don't allow more
+    private static final int MAX_ARGUMENTS = 999;
+    
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+    
+    protected JdbcDao(Connection connection) {
+        this.connection = connection;
+        this.statements = new HashMap<>();
+    }
+    
+    /**
+     * Creates model from the current row. Columns are in the order of the generated 'COLUMNS' constant.
+     * @param result - result set on the row to map
+     * @return mapped model
+     */
+    protected abstract T map(ResultSet result) throws SQLException;
+    
+    /**
+     * Runs query selecting generated 'COLUMNS' of the table.
+     * @param sql - query, arguments are marked with '?'
+     * @param arguments - values of the arguments
+     * @return mapped rows
+     */
+    public synchronized List<T> query(String sql, Object... arguments) throws SQLException {
+        PreparedStatement statement = prepare(sql);
+        bind(statement, arguments);
+        
+        return list(statement);
+    }
+    
+    /**
+     * Runs query selecting generated 'COLUMNS' of the table.
+     * @param sql - query, arguments are marked with '?'
+     * @param arguments - values of the arguments
+     * @return model of the first row or null if there are no rows
+     */
+    @Nullable
+    public synchronized T queryForFirst(String sql, Object... arguments) throws SQLException {
+        PreparedStatement statement = prepare(sql);
+        bind(statement, arguments);
+        
+        return first(statement);
+    }
+    
+    /**
+     * Runs statement changing rows of the table.
+     * @param sql - statement, arguments are marked with '?'
+     * @param arguments - values of the arguments
+     * @return count of changed rows
+     */
+    public synchronized int execute(String sql, Object... arguments) throws SQLException {
+        PreparedStatement statement = prepare(sql);
+        bind(statement, arguments);
+        
+        return statement.executeUpdate();
+    }
+    
+    /**
+     * Closes prepared statements. The connection stays open.
+     */
+    public synchronized void close() {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        
+        statements.clear();
+    }
+    
+    protected PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, false);
+    }
+    
+    /**
+     * Gets statement prepared before or prepares new one.
+     * @param sql - statement
+     * @param generatedKeys - true if the statement returns generated ids
+     * @return prepared statement
+     */
+    protected PreparedStatement prepare(String sql, boolean generatedKeys) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        
+        if(statement == null) {
+            statement = generatedKeys
+                    ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : connection.prepareStatement(sql);
+            
+            statements.put(sql, statement);
+        }
+        
+        return statement;
+    }
+    
+    protected List<T> list(PreparedStatement statement) throws SQLException {
+        List<T> models = new ArrayList<>();
+        
+        try (ResultSet result = statement.executeQuery()) {
+            while(result.next()) {
+                models.add(map(result));
+            }
+        }
+        
+        return models;
+    }
+    
+    /**
+     * Writes models with statements of many rows. Rows are split by chunks, so a statement never has too many arguments.
+     * @param models - models to write
+     * @param head - beginning of the statement before rows
+     * @param row - arguments of one row like '(?, ?)'
+     * @param tail - end of the statement after rows
+     * @param columns - count of arguments in one row
+     * @param binder - binds arguments of one model
+     */
+    protected void executeRows(List<T> models, String head, String row, String tail, int columns, RowBinder<T> binder) throws SQLException {
+        int chunk = Math.max(1, MAX_ARGUMENTS / columns);
+        
+        for (int from = 0; from < models.size(); from += chunk) {
+            int count = Math.min(chunk, models.size() - from);
+            String sql = buildRows(head, row, tail, count);
+            
+            // Statement of a full chunk is reused, the last smaller chunk has its own size and isn't cached
+            if(count == chunk) {
+                executeRows(prepare(sql), models.subList(from, from + count), columns, binder);
+                continue;
+            }
+            
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                executeRows(statement, models.subList(from, from + count), columns, binder);
+            }
+        }
+    }
+    
+    @Nullable
+    protected T first(PreparedStatement statement) throws SQLException {
+        try (ResultSet result = statement.executeQuery()) {
+            return result.next() ? map(result) : null;
+        }
+    }
+    
+    // Gets id given to the row by the last insert of the statement
+    protected static long generatedKey(PreparedStatement statement) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            if(!keys.next()) {
+                throw new SQLException("Database didn't return generated id");
+            }
+            
+            return keys.getLong(1);
+        }
+    }
+    
+    // Dates are stored as timestamps, the same way ORMLite does it
+    protected static void setDate(PreparedStatement statement, int index, @Nullable Date date) throws SQLException {
+        if(date == null) {
+            statement.setNull(index, Types.TIMESTAMP);
+            return;
+        }
+        
+        statement.setTimestamp(index, new Timestamp(date.getTime()));
+    }
+    
+    @Nullable
+    protected static Date getDate(ResultSet result, int index) throws SQLException {
+        Timestamp timestamp = result.getTimestamp(index);
+        return timestamp == null ? null : new Date(timestamp.getTime());
+    }
+    
+    private void executeRows(PreparedStatement statement, List<T> models, int columns, RowBinder<T> binder) throws SQLException {
+        for (int i = 0; i < models.size(); i++) {
+            binder.bind(statement, i * columns + 1, models.get(i));
+        }
+        
+        statement.executeUpdate();
+    }
+    
+    private static String buildRows(String head, String row, String tail, int count) {
+        StringBuilder sql = new StringBuilder(head.length() + (row.length() + 2) * count + tail.length()).append(head);
+        
+        for (int i = 0; i < count; i++) {
+            if(i > 0) {
+                sql.append(", ");
+            }
+            
+            sql.append(row);
+        }
+        
+        return sql.append(tail).toString();
+    }
+    
+    private static void bind(PreparedStatement statement, Object[] arguments) throws SQLException {
+        for (int i = 0; i < arguments.length; i++) {
+            statement.setObject(i + 1, arguments[i]);
+        }
+    }
+    
+    /**
+     * Binds arguments of one model in a statement of many rows.
+     */
+    @FunctionalInterface
+    protected interface RowBinder<T> {
+        
+        /**
+         * @param statement - statement to bind
+         * @param index - index of the first argument of the model
+         * @param model - model to bind
+         */
+        void bind(PreparedStatement statement, int index, T model) throws SQLException;
+    }
+}
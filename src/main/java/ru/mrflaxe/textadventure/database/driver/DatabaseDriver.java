@@ -1,8 +1,48 @@
 package ru.mrflaxe.textadventure.database.driver;
 
+import java.sql.SQLException;
+
+import org.jetbrains.annotations.Nullable;
+
 import com.j256.ormlite.support.ConnectionSource;
 
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.SQLDatabaseManager;
+import ru.mrflaxe.textadventure.logging.Logger;
+
 public interface DatabaseDriver {
     
+    /**
+     * Opens connection to the database.
+     * @return connection or null if driver doesn't use SQL connection or something will go wrong
+     */
+    @Nullable
     ConnectionSource getConnection();
+    
+    /**
+     * Creates manager working with the data of this driver.
+     * @param connection - connection opened by {@link #getConnection()}
+     * @return database manager or null if something will go wrong
+     */
+    @Nullable
+    default DatabaseManager createManager(@Nullable ConnectionSource connection) {
+        if(connection == null) {
+            return null;
+        }
+        
+        try {
+            return new SQLDatabaseManager(connection);
+        } catch (SQLException e) {
+            Logger.error("Failed to create DatabaseManager: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Checks if this driver works through SQL connection.
+     * @return true by default
+     */
+    default boolean usesConnection() {
+        return true;
+    }
 }
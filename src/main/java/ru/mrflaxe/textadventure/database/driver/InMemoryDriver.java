@@ -0,0 +1,54 @@
+package ru.mrflaxe.textadventure.database.driver;
+
+import java.sql.SQLException;
+
+import com.j256.ormlite.db.DatabaseType;
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.jdbc.db.SqliteDatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Driver of SQLite database living only in memory. <br>
+ * Database is shared by all connections of the process with the same name
+ * and disappears when the last of them is closed. Meant for tests and benchmarks.
+ */
+public class InMemoryDriver implements DatabaseDriver {
+    
+    private final String URL;
+    
+    public InMemoryDriver(Configuration config) {
+        String name = config.containsSection("database.memory-name")
+                ? config.getString("database.memory-name")
+                : "textadventure";
+        
+        this.URL = getURL(name);
+    }
+    
+    @Override
+    public ConnectionSource getConnection() {
+        DatabaseType databaseType = new SqliteDatabaseType();
+        databaseType.loadDriver();
+        
+        try {
+            ConnectionSource connection = new JdbcConnectionSource(URL, databaseType);
+            
+            Logger.warn("Database works in memory. All data will be lost after shutdown!");
+            return connection;
+        } catch (SQLException e) {
+            Logger.error("Failed to create in-memory SQLite database");
+            return null;
+        }
+    }
+    
+    /**
+     * Builds URL of named in-memory SQLite database with shared cache.
+     * @param name - name of the database, connections with the same name see the same data
+     * @return jdbc URL
+     */
+    public static String getURL(String name) {
+        return "jdbc:sqlite:file:" + name + "?mode=memory&cache=shared";
+    }
+}
@@ -0,0 +1,58 @@
+package ru.mrflaxe.textadventure.database.driver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.log.LogDatabaseManager;
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Driver of the embedded log storage. It works without SQL, so there is no connection.
+ */
+public class LogStorageDriver implements DatabaseDriver {
+    
+    private final String fileName;
+    private final int syncInterval;
+    private final int compactInterval;
+    
+    public LogStorageDriver(Configuration config) {
+        this.fileName = config.containsSection("database.log.file-name")
+                ? config.getString("database.log.file-name")
+                : "database.log";
+        
+        this.syncInterval = config.containsSection("database.log.sync-interval")
+                ? config.getInt("database.log.sync-interval")
+                : 200;
+        
+        this.compactInterval = config.containsSection("database.log.compact-interval")
+                ? config.getInt("database.log.compact-interval")
+                : 600;
+    }
+    
+    @Override
+    public ConnectionSource getConnection() {
+        return null;
+    }
+    
+    @Override
+    public DatabaseManager createManager(ConnectionSource connection) {
+        Path file = Paths.get(fileName).toAbsolutePath();
+        
+        try {
+            return new LogDatabaseManager(file, syncInterval, compactInterval);
+        } catch (IOException e) {
+            Logger.error("Failed to open storage log {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+    
+    @Override
+    public boolean usesConnection() {
+        return false;
+    }
+}
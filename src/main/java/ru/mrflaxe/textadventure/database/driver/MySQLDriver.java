@@ -8,6 +8,7 @@ import com.j256.ormlite.jdbc.db.MysqlDatabaseType;
 import com.j256.ormlite.support.ConnectionSource;
 
 import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.logging.Logger;
 
 public class MySQLDriver implements DatabaseDriver {
     
@@ -29,15 +30,15 @@ public class MySQLDriver implements DatabaseDriver {
     @Override
     public ConnectionSource getConnection() {
         if(URL == null || URL.isEmpty()) {
-            System.err.println("URL is null or empty");
+            Logger.error("URL is null or empty");
         }
         
         if(USER == null || USER.isEmpty()) {
-            System.err.println("USER is null or empty");
+            Logger.error("USER is null or empty");
         }
         
         if(PASSWORD == null || PASSWORD.isEmpty()) {
-            System.err.println("PASSWORD is null or empty");
+            Logger.error("PASSWORD is null or empty");
         }
         
         DatabaseType databaseType = new MysqlDatabaseType();
@@ -48,7 +49,7 @@ public class MySQLDriver implements DatabaseDriver {
             
             return connection;
         } catch (SQLException e) {
-            System.err.println("Failed to establish connection to MySQL database");
+            Logger.error("Failed to establish connection to MySQL database");
             return null;
         }
     }
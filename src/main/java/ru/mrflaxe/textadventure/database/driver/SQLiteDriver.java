@@ -10,6 +10,7 @@ import com.j256.ormlite.jdbc.db.SqliteDatabaseType;
 import com.j256.ormlite.support.ConnectionSource;
 
 import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.logging.Logger;
 
 public class SQLiteDriver implements DatabaseDriver {
     
@@ -29,7 +30,7 @@ public class SQLiteDriver implements DatabaseDriver {
             
             return connection;
         } catch (SQLException e) {
-            System.err.println("Failed to establish connection to SQLite database");
+            Logger.error("Failed to establish connection to SQLite database");
             return null;
         }
     }
@@ -42,7 +43,7 @@ public class SQLiteDriver implements DatabaseDriver {
         String URL = "jdbc:sqlite:" + path + "/" + fileName;
         
         if(fileName == null || fileName.isEmpty()) {
-            System.err.println("Failed to load SQLite driver: 'file-name' missing");
+            Logger.error("Failed to load SQLite driver: 'file-name' missing");
             return null;
         }
         
@@ -0,0 +1,56 @@
+package ru.mrflaxe.textadventure.database.driver;
+
+import java.nio.file.Paths;
+import java.sql.SQLException;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.shard.ShardedDatabaseManager;
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Driver of SQLite database split into several files by chat id.
+ * Every shard has its own connection, so there is no single connection to return.
+ */
+public class ShardedSQLiteDriver implements DatabaseDriver {
+    
+    private final String fileName;
+    private final int shards;
+    
+    public ShardedSQLiteDriver(Configuration config) {
+        this.fileName = config.getString("database.file-name");
+        this.shards = config.containsSection("database.shards")
+                ? config.getInt("database.shards")
+                : 4;
+    }
+    
+    @Override
+    public ConnectionSource getConnection() {
+        return null;
+    }
+    
+    @Override
+    public DatabaseManager createManager(ConnectionSource connection) {
+        if(fileName == null || fileName.isEmpty()) {
+            Logger.error("Failed to load sharded SQLite driver: 'file-name' missing");
+            return null;
+        }
+        
+        try {
+            ShardedDatabaseManager manager = ShardedDatabaseManager.openSQLite(Paths.get(""), fileName, shards);
+            Logger.info("Opened {} SQLite shards of {}", shards, fileName);
+            
+            return manager;
+        } catch (SQLException | IllegalArgumentException e) {
+            Logger.error("Failed to open SQLite shards: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    @Override
+    public boolean usesConnection() {
+        return false;
+    }
+}
@@ -0,0 +1,547 @@
+package ru.mrflaxe.textadventure.database.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.model.AchievementModel;
+import ru.mrflaxe.textadventure.database.model.ProfileModel;
+import ru.mrflaxe.textadventure.database.model.SaveModel;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.user.User;
+
+/**
+ * Database manager keeping all data in memory and every change in an append-only {@link LogStore}. <br>
+ * On start the log is replayed to rebuild the indexes. Changes are forced to disk by a background thread
+ * once per sync interval, so a crash may lose changes of the last interval only.
+ * <br><br>
+ * When the log becomes more than twice bigger than the live data it's rewritten with live records only.
+ * <br><br>
+ * Returned models are copies, so changes in them get to the storage only through the save methods.
+ */
+public class LogDatabaseManager implements DatabaseManager {
+    
+    private static final byte PUT_PROFILE = 1;
+    private static final byte DELETE_PROFILE = 2;
+    private static final byte PUT_SAVE = 3;
+    private static final byte DELETE_SAVE = 4;
+    private static final byte PUT_ACHIEVEMENT = 5;
+    
+    // Small logs are not worth rewriting
+    private static final long MIN_COMPACT_RECORDS = 10_000;
+    
+    private final LogStore store;
+    private final ScheduledExecutorService flusher;
+    
+    private final LongIndex<ProfileModel> profiles;
+    private final LongIndex<SaveModel> saves;
+    private final LongIndex<AchievementModel> achievements;
+    private final LongIndex<List<AchievementModel>> achievementsByChat;
+    private final Map<String, List<AchievementModel>> achievementsByID;
+    
+    private ByteBuffer scratch;
+    
+    private int nextSaveID;
+    private int nextAchievementID;
+    private long logRecords;
+    
+    public LogDatabaseManager(Path file, int syncInterval, int compactInterval) throws IOException {
+        this.store = new LogStore(file);
+        
+        this.profiles = new LongIndex<>(1024);
+        this.saves = new LongIndex<>(1024);
+        this.achievements = new LongIndex<>(1024);
+        this.achievementsByChat = new LongIndex<>(1024);
+        this.achievementsByID = new HashMap<>();
+        
+        this.scratch = ByteBuffer.allocate(256);
+        this.nextSaveID = 1;
+        this.nextAchievementID = 1;
+        
+        this.logRecords = store.open(this::apply);
+        
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-storage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        flusher.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::compactIfNeeded, compactInterval, compactInterval, TimeUnit.SECONDS);
+    }
+    
+    @Override
+    public void shutdown() {
+        flusher.shutdownNow();
+        
+        synchronized (this) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                Logger.error("Failed to close storage log: {}", e.getMessage());
+            }
+        }
+    }
+    
+    @Override
+    public synchronized ProfileModel createNewProfile(long chatID, String userName) {
+        SaveModel newSaveModel = new SaveModel();
+        saveQuestSave(newSaveModel);
+        
+        return new ProfileModel(chatID, userName, newSaveModel.getId());
+    }
+    
+    @Override
+    public synchronized void saveProfile(ProfileModel profile) {
+        ProfileModel copy = copy(profile);
+        
+        profiles.put(copy.getChatId(), copy);
+        write(encodeProfile(copy));
+    }
+    
+    @Override
+    @Nullable
+    public synchronized ProfileModel getProfile(long chatID) {
+        ProfileModel profile = profiles.get(chatID);
+        return profile == null ? null : copy(profile);
+    }
+    
+    @Override
+    public synchronized List<ProfileModel> getProfiles(Collection<Long> chatIDs) {
+        List<ProfileModel> result = new ArrayList<>();
+        
+        for (Long chatID : chatIDs) {
+            ProfileModel profile = profiles.get(chatID);
+            
+            if(profile != null) {
+                result.add(copy(profile));
+            }
+        }
+        
+        return result;
+    }
+    
+    @Override
+    public synchronized List<ProfileModel> createProfiles(Map<Long, String> names) {
+        List<ProfileModel> created = new ArrayList<>(names.size());
+        
+        names.forEach((chatID, name) -> {
+            ProfileModel profile = createNewProfile(chatID, name);
+            saveProfile(profile);
+            created.add(profile);
+        });
+        
+        return created;
+    }
+    
+    @Override
+    public synchronized long countProfiles() {
+        return profiles.size();
+    }
+    
+    @Override
+    public synchronized long forEachChatID(LongConsumer consumer) {
+        profiles.forEachKey(consumer);
+        return profiles.size();
+    }
+    
+    @Override
+    public synchronized List<ProfileModel> getProfiles() {
+        List<ProfileModel> result = new ArrayList<>(profiles.size());
+        profiles.forEachValue(profile -> result.add(copy(profile)));
+        
+        return result;
+    }
+    
+    @Override
+    public synchronized void deleteProfile(ProfileModel profile) {
+        ProfileModel stored = profiles.remove(profile.getChatId());
+        
+        if(stored == null) {
+            return;
+        }
+        
+        SaveModel save = saves.get(stored.getSaveID());
+        if(save != null) {
+            deleteQuestSave(save);
+        }
+        
+        write(encodeDelete(DELETE_PROFILE, stored.getChatId()));
+    }
+    
+    @Override
+    public synchronized void saveQuestSave(SaveModel save) {
+        putSave(save);
+    }
+    
+    @Override
+    @Nullable
+    public synchronized SaveModel getQuestSave(ProfileModel profile) {
+        SaveModel save = saves.get(profile.getSaveID());
+        return save == null ? null : copy(save);
+    }
+    
+    @Override
+    @Nullable
+    public synchronized SaveModel getQuestSave(long chatID) {
+        ProfileModel profile = profiles.get(chatID);
+        
+        if(profile == null) {
+            return null;
+        }
+        
+        return getQuestSave(profile);
+    }
+    
+    @Override
+    public synchronized boolean updateSave(User user, String questID, String newBrachID) {
+        SaveModel save = getQuestSave(user.getChatID());
+        
+        if(save == null) {
+            return false;
+        }
+        
+        save.setLastBranchID(newBrachID);
+        save.setQuestID(questID);
+        
+        return putSave(save);
+    }
+    
+    // Saves of the batch are forced to disk before returning, so the caller may forget them
+    @Override
+    public synchronized boolean updateSaves(Map<Long, SaveModel> newSaves) {
+        boolean written = true;
+        
+        for (Map.Entry<Long, SaveModel> entry : newSaves.entrySet()) {
+            SaveModel save = getQuestSave(entry.getKey());
+            
+            if(save == null) {
+                continue;
+            }
+            
+            save.setLastBranchID(entry.getValue().getLastBranchID());
+            save.setQuestID(entry.getValue().getQuestID());
+            written &= putSave(save);
+        }
+        
+        try {
+            store.sync();
+        } catch (IOException e) {
+            Logger.error("Failed to sync storage log: {}", e.getMessage());
+            return false;
+        }
+        
+        return written;
+    }
+    
+    @Override
+    public synchronized void deleteQuestSave(SaveModel save) {
+        if(saves.remove(save.getId()) == null) {
+            return;
+        }
+        
+        write(encodeDelete(DELETE_SAVE, save.getId()));
+    }
+    
+    @Override
+    public synchronized boolean saveAchievment(AchievementModel achievement) {
+        if(achievement.getId() == 0) {
+            achievement.setId(nextAchievementID++);
+        }
+        
+        AchievementModel copy = copy(achievement);
+        
+        putAchievement(copy);
+        write(encodeAchievement(copy));
+        return true;
+    }
+    
+    @Override
+    public synchronized List<AchievementModel> getAchievements(long chatID) {
+        List<AchievementModel> owned = achievementsByChat.get(chatID);
+        
+        if(owned == null) {
+            return new ArrayList<>();
+        }
+        
+        List<AchievementModel> result = new ArrayList<>(owned.size());
+        owned.forEach(achievement -> result.add(copy(achievement)));
+        
+        return result;
+    }
+    
+    @Override
+    public synchronized long forEachAchievement(Consumer<AchievementModel> consumer) {
+        long[] count = new long[1];
+        
+        achievementsByChat.forEachValue(owned -> owned.forEach(achievement -> {
+            consumer.accept(copy(achievement));
+            count[0]++;
+        }));
+        
+        return count[0];
+    }
+    
+    @Override
+    public synchronized List<AchievementModel> getCertainAchievments(String achievementID) {
+        List<AchievementModel> obtained = achievementsByID.getOrDefault(achievementID, Collections.emptyList());
+        
+        List<AchievementModel> result = new ArrayList<>(obtained.size());
+        obtained.forEach(achievement -> result.add(copy(achievement)));
+        
+        return result;
+    }
+    
+    @Override
+    public synchronized long countCertainAchievments(String achievementID) {
+        return achievementsByID.getOrDefault(achievementID, Collections.emptyList()).size();
+    }
+    
+    /**
+     * Gets count of records in the log and count of them which are still actual.
+     * @return printable statistics
+     */
+    public synchronized String getStatistics() {
+        return "records: " + logRecords + ", live: " + liveRecords() + ", size: " + store.size() / 1024 + " KB";
+    }
+    
+    private void sync() {
+        try {
+            store.sync();
+        } catch (IOException e) {
+            Logger.error("Failed to sync storage log: {}", e.getMessage());
+        }
+    }
+    
+    private synchronized void compactIfNeeded() {
+        long live = liveRecords();
+        
+        if(logRecords < MIN_COMPACT_RECORDS || logRecords <= live * 2) {
+            return;
+        }
+        
+        try {
+            store.rewrite(this::snapshot);
+            this.logRecords = live;
+        } catch (IOException e) {
+            Logger.error("Failed to compact storage log: {}", e.getMessage());
+        }
+    }
+    
+    // Writes one record for each live model. Saves go before profiles so ids are restored first
+    private void snapshot(Consumer<ByteBuffer> output) {
+        saves.forEachValue(save -> output.accept(encodeSave(save)));
+        profiles.forEachValue(profile -> output.accept(encodeProfile(profile)));
+        achievements.forEachValue(achievement -> output.accept(encodeAchievement(achievement)));
+    }
+    
+    private long liveRecords() {
+        return profiles.size() + saves.size() + achievements.size();
+    }
+    
+    private boolean putSave(SaveModel save) {
+        if(save.getId() == 0) {
+            save.setId(nextSaveID++);
+        }
+        
+        SaveModel copy = copy(save);
+        
+        saves.put(copy.getId(), copy);
+        return write(encodeSave(copy));
+    }
+    
+    // Returns false if the record didn't get to the log. It stays in memory only till restart then
+    private boolean write(ByteBuffer record) {
+        try {
+            store.append(record);
+            logRecords++;
+            return true;
+        } catch (IOException e) {
+            Logger.error("Failed to write record to storage log: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    // Rebuilds indexes from one record of the log
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        
+        switch (type) {
+        case PUT_PROFILE:
+            long chatID = record.getLong();
+            int saveID = record.getInt();
+            profiles.put(chatID, new ProfileModel(chatID, getString(record), saveID));
+            break;
+        
+        case DELETE_PROFILE:
+            profiles.remove(record.getLong());
+            break;
+        
+        case PUT_SAVE:
+            SaveModel save = new SaveModel(record.getInt(), getString(record), getString(record));
+            saves.put(save.getId(), save);
+            nextSaveID = Math.max(nextSaveID, save.getId() + 1);
+            break;
+        
+        case DELETE_SAVE:
+            saves.remove(record.getLong());
+            break;
+        
+        case PUT_ACHIEVEMENT:
+            int id = record.getInt();
+            long owner = record.getLong();
+            Date date = new Date(record.getLong());
+            
+            AchievementModel achievement = new AchievementModel(id, date, owner, getString(record), getString(record), getString(record));
+            putAchievement(achievement);
+            nextAchievementID = Math.max(nextAchievementID, id + 1);
+            break;
+        
+        default:
+            Logger.error("Unknown record type in storage log: {}", type);
+        }
+    }
+    
+    private void putAchievement(AchievementModel achievement) {
+        AchievementModel previous = achievements.put(achievement.getId(), achievement);
+        
+        if(previous != null) {
+            removeFrom(achievementsByChat.get(previous.getChatID()), previous);
+            removeFrom(achievementsByID.get(previous.getAchievementID()), previous);
+        }
+        
+        List<AchievementModel> owned = achievementsByChat.get(achievement.getChatID());
+        if(owned == null) {
+            owned = new ArrayList<>(4);
+            achievementsByChat.put(achievement.getChatID(), owned);
+        }
+        
+        owned.add(achievement);
+        achievementsByID.computeIfAbsent(achievement.getAchievementID(), key -> new ArrayList<>()).add(achievement);
+    }
+    
+    private void removeFrom(@Nullable List<AchievementModel> list, AchievementModel achievement) {
+        if(list != null) {
+            list.remove(achievement);
+        }
+    }
+    
+    private ByteBuffer encodeProfile(ProfileModel profile) {
+        ByteBuffer buffer = prepare(1 + 8 + 4 + sizeOf(profile.getName()));
+        
+        buffer.put(PUT_PROFILE).putLong(profile.getChatId()).putInt(profile.getSaveID());
+        putString(buffer, profile.getName());
+        
+        return flip(buffer);
+    }
+    
+    private ByteBuffer encodeSave(SaveModel save) {
+        ByteBuffer buffer = prepare(1 + 4 + sizeOf(save.getLastBranchID()) + sizeOf(save.getQuestID()));
+        
+        buffer.put(PUT_SAVE).putInt(save.getId());
+        putString(buffer, save.getLastBranchID());
+        putString(buffer, save.getQuestID());
+        
+        return flip(buffer);
+    }
+    
+    private ByteBuffer encodeAchievement(AchievementModel achievement) {
+        long date = achievement.getDate() == null ? 0 : achievement.getDate().getTime();
+        
+        ByteBuffer buffer = prepare(1 + 4 + 8 + 8
+                + sizeOf(achievement.getAchievementID())
+                + sizeOf(achievement.getAchievementName())
+                + sizeOf(achievement.getDescription()));
+        
+        buffer.put(PUT_ACHIEVEMENT).putInt(achievement.getId()).putLong(achievement.getChatID()).putLong(date);
+        putString(buffer, achievement.getAchievementID());
+        putString(buffer, achievement.getAchievementName());
+        putString(buffer, achievement.getDescription());
+        
+        return flip(buffer);
+    }
+    
+    private ByteBuffer encodeDelete(byte type, long key) {
+        ByteBuffer buffer = prepare(1 + 8);
+        buffer.put(type).putLong(key);
+        
+        return flip(buffer);
+    }
+    
+    private ByteBuffer prepare(int size) {
+        if(scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2));
+        }
+        
+        scratch.clear();
+        return scratch;
+    }
+    
+    private ByteBuffer flip(ByteBuffer buffer) {
+        buffer.flip();
+        return buffer;
+    }
+    
+    private int sizeOf(@Nullable String value) {
+        // Length prefix and at most 3 bytes per UTF-16 char
+        return value == null ? 4 : 4 + value.length() * 3;
+    }
+    
+    private void putString(ByteBuffer buffer, @Nullable String value) {
+        if(value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+    
+    @Nullable
+    private String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        
+        if(length < 0) {
+            return null;
+        }
+        
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private ProfileModel copy(ProfileModel profile) {
+        return new ProfileModel(profile.getChatId(), profile.getName(), profile.getSaveID());
+    }
+    
+    private SaveModel copy(SaveModel save) {
+        return new SaveModel(save.getId(), save.getLastBranchID(), save.getQuestID());
+    }
+    
+    private AchievementModel copy(AchievementModel achievement) {
+        return new AchievementModel(
+                achievement.getId(),
+                achievement.getDate(),
+                achievement.getChatID(),
+                achievement.getAchievementID(),
+                achievement.getAchievementName(),
+                achievement.getDescription());
+    }
+}
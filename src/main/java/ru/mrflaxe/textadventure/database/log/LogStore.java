@@ -0,0 +1,295 @@
+package ru.mrflaxe.textadventure.database.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Append-only file of checksummed records. <br>
+ * Appended records are collected in a memory buffer and written to the file by {@link #flush()}.
+ * {@link #sync()} additionally forces them to disk, so one fsync covers all records written since the previous one.
+ * <br><br>
+ * Record format: payload length (4 bytes), CRC32 of payload (4 bytes), payload.
+ * Reading stops at the first incomplete or damaged record and the file is truncated there.
+ */
+public class LogStore {
+    
+    private static final int MAGIC = 0x49464C53; // IFLS
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FRAME_SIZE = 8;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final CRC32 crc;
+    
+    private FileChannel channel;
+    private long size;
+    private boolean dirty;
+    
+    public LogStore(Path file) {
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.crc = new CRC32();
+    }
+    
+    /**
+     * Opens the file and passes payload of each valid record to the consumer.
+     * @param consumer - receives payloads, buffer is valid only during the call
+     * @return count of read records
+     */
+    public synchronized long open(Consumer<ByteBuffer> consumer) throws IOException {
+        Path parent = file.getParent();
+        if(parent != null) {
+            Files.createDirectories(parent);
+        }
+        
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        
+        if(channel.size() < HEADER_SIZE) {
+            writeHeader(channel);
+            this.size = HEADER_SIZE;
+            return 0;
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        
+        if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException("File " + file + " is not a storage log");
+        }
+        
+        long count = read(consumer);
+        channel.truncate(size);
+        channel.position(size);
+        
+        return count;
+    }
+    
+    /**
+     * Adds record to the log. Record gets to the file with next flush.
+     * @param payload - record content from position to limit
+     */
+    public synchronized void append(ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        
+        crc.reset();
+        crc.update(payload.duplicate());
+        
+        if(buffer.remaining() < FRAME_SIZE + length) {
+            flush();
+        }
+        
+        if(buffer.remaining() < FRAME_SIZE + length) {
+            // Too big for the buffer, writes it as is
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE + length);
+            frame.putInt(length).putInt((int) crc.getValue()).put(payload).flip();
+            writeFully(channel, frame);
+        } else {
+            buffer.putInt(length).putInt((int) crc.getValue()).put(payload);
+        }
+        
+        size += FRAME_SIZE + length;
+        dirty = true;
+    }
+    
+    /**
+     * Writes buffered records to the file without forcing them to disk.
+     */
+    public synchronized void flush() throws IOException {
+        if(buffer.position() == 0) {
+            return;
+        }
+        
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+    
+    /**
+     * Writes buffered records and forces them to disk.
+     */
+    public void sync() throws IOException {
+        FileChannel current;
+        
+        synchronized (this) {
+            flush();
+            
+            if(!dirty) {
+                return;
+            }
+            
+            current = channel;
+            dirty = false;
+        }
+        
+        // Forcing out of lock so writers are not waiting for the disk
+        try {
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // Replaced by rewrite which forces the new file by self
+        }
+    }
+    
+    /**
+     * Replaces the log with a new one containing only given records.
+     * New file is fully written and forced before it replaces the old one.
+     * @param snapshot - writes live records to the passed consumer
+     */
+    public synchronized void rewrite(Consumer<Consumer<ByteBuffer>> snapshot) throws IOException {
+        flush();
+        
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        
+        try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(target);
+            
+            long[] written = { HEADER_SIZE };
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+            
+            IOException[] failure = new IOException[1];
+            snapshot.accept(payload -> {
+                if(failure[0] != null) {
+                    return;
+                }
+                
+                try {
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    
+                    frame.clear();
+                    frame.putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+                    
+                    written[0] += FRAME_SIZE + payload.remaining();
+                    writeFully(target, frame);
+                    writeFully(target, payload);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            
+            if(failure[0] != null) {
+                throw failure[0];
+            }
+            
+            target.force(true);
+            this.size = written[0];
+        }
+        
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        this.dirty = false;
+    }
+    
+    /**
+     * Gets size of the log including not flushed records.
+     * @return size in bytes
+     */
+    public synchronized long size() {
+        return size;
+    }
+    
+    /**
+     * Forces all records to disk and closes the file.
+     */
+    public synchronized void close() throws IOException {
+        if(channel == null || !channel.isOpen()) {
+            return;
+        }
+        
+        sync();
+        channel.close();
+    }
+    
+    private long read(Consumer<ByteBuffer> consumer) throws IOException {
+        long fileSize = channel.size();
+        long position = HEADER_SIZE;
+        long count = 0;
+        
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+        ByteBuffer payload = ByteBuffer.allocate(BUFFER_SIZE);
+        
+        while(position + FRAME_SIZE <= fileSize) {
+            frame.clear();
+            readFully(channel, frame, position);
+            
+            int length = frame.getInt();
+            int checksum = frame.getInt();
+            
+            if(length <= 0 || position + FRAME_SIZE + length > fileSize) {
+                break;
+            }
+            
+            if(payload.capacity() < length) {
+                payload = ByteBuffer.allocate(length);
+            }
+            
+            payload.clear();
+            payload.limit(length);
+            readFully(channel, payload, position + FRAME_SIZE);
+            
+            crc.reset();
+            crc.update(payload.duplicate());
+            
+            if((int) crc.getValue() != checksum) {
+                break;
+            }
+            
+            consumer.accept(payload);
+            
+            position += FRAME_SIZE + length;
+            count++;
+        }
+        
+        if(position < fileSize) {
+            Logger.warn("Storage log {} has a damaged tail of {} bytes. It was cut off", file, fileSize - position);
+        }
+        
+        this.size = position;
+        return count;
+    }
+    
+    private void writeHeader(FileChannel target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        
+        target.position(0);
+        writeFully(target, header);
+    }
+    
+    // Fills the buffer up to its limit and flips it
+    private void readFully(FileChannel source, ByteBuffer target, long position) throws IOException {
+        while(target.hasRemaining()) {
+            int read = source.read(target, position);
+            
+            if(read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+            
+            position += read;
+        }
+        
+        target.flip();
+    }
+    
+    private void writeFully(FileChannel target, ByteBuffer source) throws IOException {
+        while(source.hasRemaining()) {
+            target.write(source);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ru.mrflaxe.textadventure.database.log;
+
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Open addressing hash map with primitive long keys. <br>
+ * Keys are kept in a plain long array, so lookups don't box chat ids. Not thread safe.
+ * @param <V> type of values, null values are not allowed
+ */
+public class LongIndex<V> {
+    
+    private static final float LOAD_FACTOR = 0.5f;
+    
+    private long[] keys;
+    private Object[] values;
+    
+    private int size;
+    private int mask;
+    private int resizeAt;
+    
+    public LongIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = slot(key);
+        
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                return (V) values[slot];
+            }
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Puts value by the key.
+     * @return previous value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        int slot = slot(key);
+        
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        keys[slot] = key;
+        values[slot] = value;
+        
+        if(++size >= resizeAt) {
+            allocate(keys.length << 1);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Removes value by the key.
+     * @return removed value or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = slot(key);
+        
+        while(values[slot] != null) {
+            if(keys[slot] == key) {
+                V previous = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        return null;
+    }
+    
+    public void forEachKey(LongConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if(values[i] != null) {
+                consumer.accept(keys[i]);
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if(values[i] != null) {
+                consumer.accept((V) values[i]);
+            }
+        }
+    }
+    
+    // Moves following entries of the probe chain to the freed slot,
+    // so lookups never stop on a hole
+    private void shiftBack(int freed) {
+        int slot = freed;
+        
+        while(true) {
+            slot = (slot + 1) & mask;
+            
+            if(values[slot] == null) {
+                break;
+            }
+            
+            int home = slot(keys[slot]);
+            
+            // The entry may move only if its home slot isn't between the freed slot and itself
+            boolean between = freed <= slot
+                    ? freed < home && home <= slot
+                    : freed < home || home <= slot;
+            
+            if(between) {
+                continue;
+            }
+            
+            keys[freed] = keys[slot];
+            values[freed] = values[slot];
+            freed = slot;
+        }
+        
+        values[freed] = null;
+    }
+    
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeAt = (int) (capacity * LOAD_FACTOR);
+        
+        if(oldKeys == null) {
+            return;
+        }
+        
+        for (int i = 0; i < oldKeys.length; i++) {
+            if(oldValues[i] == null) {
+                continue;
+            }
+            
+            int slot = slot(oldKeys[i]);
+            while(values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+    
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,40 @@
+package ru.mrflaxe.textadventure.database.migration;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ru.mrflaxe.textadventure.database.SqlDialect;
+
+/**
+ * Adds indexes for achievement lookups by chat id and by achievement id.
+ */
+public class AchievementIndexesMigration implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 2;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Index achievements by chat id and achievement id";
+    }
+
+    @Override
+    public List<String> getStatements(SqlDialect dialect) {
+        if(dialect == SqlDialect.MYSQL) {
+            // In-place index building doesn't lock the table for writes
+            return Arrays.asList(
+                    "CREATE INDEX `idx_achievements_chat_id` ON `telegrambot_profile_achievements` (`chat_id`) "
+                            + "ALGORITHM=INPLACE LOCK=NONE",
+                    "CREATE INDEX `idx_achievements_achievement_id` ON `telegrambot_profile_achievements` (`achievement_id`) "
+                            + "ALGORITHM=INPLACE LOCK=NONE"
+                    );
+        }
+        
+        return Arrays.asList(
+                "CREATE INDEX IF NOT EXISTS `idx_achievements_chat_id` ON `telegrambot_profile_achievements` (`chat_id`)",
+                "CREATE INDEX IF NOT EXISTS `idx_achievements_achievement_id` ON `telegrambot_profile_achievements` (`achievement_id`)"
+                );
+    }
+}
@@ -0,0 +1,52 @@
+package ru.mrflaxe.textadventure.database.migration;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ru.mrflaxe.textadventure.database.SqlDialect;
+
+/**
+ * Creates tables as they were created before migrations appeared.
+ * Does nothing with databases which already have them.
+ */
+public class CreateTablesMigration implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Create profile, save and achievement tables";
+    }
+
+    @Override
+    public List<String> getStatements(SqlDialect dialect) {
+        if(dialect == SqlDialect.MYSQL) {
+            return Arrays.asList(
+                    "CREATE TABLE IF NOT EXISTS `telegrambot_profiles` ("
+                            + "`chat_id` BIGINT, `user_name` VARCHAR(255), `saves_id` VARCHAR(255), "
+                            + "PRIMARY KEY (`chat_id`)) ENGINE=InnoDB",
+                    "CREATE TABLE IF NOT EXISTS `telegrambot_profiles_saves` ("
+                            + "`id` INTEGER AUTO_INCREMENT, `last_branch_id` VARCHAR(255), "
+                            + "PRIMARY KEY (`id`)) ENGINE=InnoDB",
+                    "CREATE TABLE IF NOT EXISTS `telegrambot_profile_achievements` ("
+                            + "`id` INTEGER AUTO_INCREMENT, `date` DATE, `chat_id` BIGINT, "
+                            + "`achievement_id` VARCHAR(255), `achievement_name` VARCHAR(255), `achievement_description` VARCHAR(255), "
+                            + "PRIMARY KEY (`id`)) ENGINE=InnoDB"
+                    );
+        }
+        
+        return Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS `telegrambot_profiles` ("
+                        + "`chat_id` BIGINT, `user_name` VARCHAR, `saves_id` VARCHAR, "
+                        + "PRIMARY KEY (`chat_id`))",
+                "CREATE TABLE IF NOT EXISTS `telegrambot_profiles_saves` ("
+                        + "`id` INTEGER PRIMARY KEY AUTOINCREMENT, `last_branch_id` VARCHAR)",
+                "CREATE TABLE IF NOT EXISTS `telegrambot_profile_achievements` ("
+                        + "`id` INTEGER PRIMARY KEY AUTOINCREMENT, `date` DATE, `chat_id` BIGINT, "
+                        + "`achievement_id` VARCHAR, `achievement_name` VARCHAR, `achievement_description` VARCHAR)"
+                );
+    }
+}
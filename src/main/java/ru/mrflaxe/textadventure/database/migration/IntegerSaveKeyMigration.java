@@ -0,0 +1,43 @@
+package ru.mrflaxe.textadventure.database.migration;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ru.mrflaxe.textadventure.database.SqlDialect;
+
+/**
+ * Changes type of profile 'saves_id' column from string to integer,
+ * so it has the same type as id of the save it refers to.
+ */
+public class IntegerSaveKeyMigration implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Store profile save id as integer";
+    }
+
+    @Override
+    public List<String> getStatements(SqlDialect dialect) {
+        if(dialect == SqlDialect.MYSQL) {
+            return Arrays.asList(
+                    "ALTER TABLE `telegrambot_profiles` MODIFY `saves_id` INTEGER"
+                    );
+        }
+        
+        // SQLite can't change column type, so the table is rebuilt
+        return Arrays.asList(
+                "CREATE TABLE `telegrambot_profiles_migration` ("
+                        + "`chat_id` BIGINT, `user_name` VARCHAR, `saves_id` INTEGER, "
+                        + "PRIMARY KEY (`chat_id`))",
+                "INSERT INTO `telegrambot_profiles_migration` (`chat_id`, `user_name`, `saves_id`) "
+                        + "SELECT `chat_id`, `user_name`, CAST(`saves_id` AS INTEGER) FROM `telegrambot_profiles`",
+                "DROP TABLE `telegrambot_profiles`",
+                "ALTER TABLE `telegrambot_profiles_migration` RENAME TO `telegrambot_profiles`"
+                );
+    }
+}
@@ -0,0 +1,23 @@
+package ru.mrflaxe.textadventure.database.migration;
+
+import java.util.List;
+
+import ru.mrflaxe.textadventure.database.SqlDialect;
+
+/**
+ * One step of database schema changes. <br>
+ * Each migration is applied once and in order of versions.
+ */
+public interface Migration {
+    
+    int getVersion();
+    
+    String getDescription();
+    
+    /**
+     * Gets SQL statements of this migration. They are executed in one transaction.
+     * @param dialect - dialect of the database to migrate
+     * @return statements to execute in given order
+     */
+    List<String> getStatements(SqlDialect dialect);
+}
@@ -0,0 +1,112 @@
+package ru.mrflaxe.textadventure.database.migration;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.j256.ormlite.misc.TransactionManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import ru.mrflaxe.textadventure.database.SqlDialect;
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Brings database schema to the latest version. <br>
+ * Applied versions are stored in the schema table, so each migration runs once.
+ * Every migration runs in its own transaction together with the record of its version.
+ * Note that MySQL commits schema changes right away, so there a failed migration may be applied partially.
+ */
+public class MigrationRunner {
+    
+    private static final String SCHEMA_TABLE = "telegrambot_schema_version";
+    
+    private final ConnectionSource connection;
+    private final SqlDialect dialect;
+    private final List<Migration> migrations;
+    
+    public MigrationRunner(ConnectionSource connection) {
+        this.connection = connection;
+        this.dialect = SqlDialect.of(connection);
+        
+        this.migrations = new ArrayList<>(Arrays.asList(
+                new CreateTablesMigration(),
+                new AchievementIndexesMigration(),
+                new IntegerSaveKeyMigration(),
+                new QuestSaveMigration()
+                ));
+        
+        migrations.sort(Comparator.comparingInt(Migration::getVersion));
+    }
+    
+    /**
+     * Applies all migrations which were not applied yet.
+     * @return true if schema is up to date, otherwise false
+     */
+    public boolean migrate() {
+        try {
+            execute("CREATE TABLE IF NOT EXISTS `" + SCHEMA_TABLE + "` ("
+                    + "`version` INTEGER NOT NULL, `description` VARCHAR(255), `applied_at` BIGINT, "
+                    + "PRIMARY KEY (`version`))");
+            
+            long current = getCurrentVersion();
+            
+            for (Migration migration : migrations) {
+                if(migration.getVersion() <= current) {
+                    continue;
+                }
+                
+                apply(migration);
+            }
+            
+            return true;
+        } catch (SQLException e) {
+            Logger.error("Failed to migrate database schema: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Gets version of the latest applied migration.
+     * @return version or 0 if nothing was applied
+     * @throws SQLException if schema table can't be read
+     */
+    public long getCurrentVersion() throws SQLException {
+        DatabaseConnection databaseConnection = connection.getReadOnlyConnection(SCHEMA_TABLE);
+        
+        try {
+            return databaseConnection.queryForLong("SELECT COALESCE(MAX(`version`), 0) FROM `" + SCHEMA_TABLE + "`");
+        } finally {
+            connection.releaseConnection(databaseConnection);
+        }
+    }
+    
+    private void apply(Migration migration) throws SQLException {
+        Logger.info("Applying database migration {}: {}", migration.getVersion(), migration.getDescription());
+        
+        TransactionManager.callInTransaction(connection, () -> {
+            for (String statement : migration.getStatements(dialect)) {
+                execute(statement);
+            }
+            
+            String description = migration.getDescription().replace("'", "''");
+            
+            execute("INSERT INTO `" + SCHEMA_TABLE + "` (`version`, `description`, `applied_at`) VALUES ("
+                    + migration.getVersion() + ", '" + description + "', " + System.currentTimeMillis() + ")");
+            
+            return null;
+        });
+    }
+    
+    private void execute(String statement) throws SQLException {
+        DatabaseConnection databaseConnection = connection.getReadWriteConnection(SCHEMA_TABLE);
+        
+        try {
+            databaseConnection.executeStatement(statement, DatabaseConnection.DEFAULT_RESULT_FLAGS);
+        } finally {
+            connection.releaseConnection(databaseConnection);
+        }
+    }
+}
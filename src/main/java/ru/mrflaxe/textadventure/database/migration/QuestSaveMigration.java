@@ -0,0 +1,36 @@
+package ru.mrflaxe.textadventure.database.migration;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ru.mrflaxe.textadventure.database.SqlDialect;
+
+/**
+ * Adds quest id to saves, so players can play different quests.
+ * Existing saves get null which means the default quest.
+ */
+public class QuestSaveMigration implements Migration {
+
+    @Override
+    public int getVersion() {
+        return 4;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Add quest id to saves";
+    }
+
+    @Override
+    public List<String> getStatements(SqlDialect dialect) {
+        if(dialect == SqlDialect.MYSQL) {
+            return Arrays.asList(
+                    "ALTER TABLE `telegrambot_profiles_saves` ADD COLUMN `quest_id` VARCHAR(255)"
+                    );
+        }
+        
+        return Arrays.asList(
+                "ALTER TABLE `telegrambot_profiles_saves` ADD COLUMN `quest_id` VARCHAR"
+                );
+    }
+}
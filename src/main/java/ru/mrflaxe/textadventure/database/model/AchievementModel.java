@@ -7,15 +7,19 @@ import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import ru.mrflaxe.textadventure.achievement.Achievement;
 
 @Getter
 @NoArgsConstructor
+@AllArgsConstructor
 @DatabaseTable(tableName = "telegrambot_profile_achievements")
 public class AchievementModel {
 
+    @Setter
     @DatabaseField(generatedId = true)
     private int id;
     
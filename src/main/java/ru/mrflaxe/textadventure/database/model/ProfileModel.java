@@ -20,9 +20,9 @@ public class ProfileModel {
     private String name;
     
     @DatabaseField(columnName = "saves_id")
-    private String saveID;
+    private int saveID;
     
-    public ProfileModel(long chatID, String userName, String saveID) {
+    public ProfileModel(long chatID, String userName, int saveID) {
         this.chatId = chatID;
         this.name = userName;
         this.saveID = saveID;
@@ -3,19 +3,27 @@ package ru.mrflaxe.textadventure.database.model;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Getter
 @NoArgsConstructor
+@AllArgsConstructor
 @DatabaseTable(tableName = "telegrambot_profiles_saves")
 public class SaveModel {
 
+    @Setter
     @DatabaseField(generatedId = true, columnName = "id")
     private int id;
     
     @Setter
     @DatabaseField(columnName = "last_branch_id")
     private String lastBranchID;
+    
+    // Null means the default quest. Saves made before quests were added don't have it
+    @Setter
+    @DatabaseField(columnName = "quest_id")
+    private String questID;
 }
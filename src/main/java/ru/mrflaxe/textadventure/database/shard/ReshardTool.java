@@ -0,0 +1,133 @@
+package ru.mrflaxe.textadventure.database.shard;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ru.mrflaxe.textadventure.database.model.AchievementModel;
+import ru.mrflaxe.textadventure.database.model.ProfileModel;
+import ru.mrflaxe.textadventure.database.model.SaveModel;
+
+/**
+ * Copies sharded SQLite database to another count of shards. <br>
+ * Source files are only read, so the bot should be stopped while the tool works
+ * and 'file-name' with 'shards' in config.yml should be changed to the target after it.
+ * Any failed read or write stops the tool. Target shards are left partly filled then
+ * and should be deleted before the next run.
+ * <br><br>
+ * Usage: <code>ReshardTool &lt;source file name&gt; &lt;source shards&gt; &lt;target file name&gt; &lt;target shards&gt;</code>
+ */
+public class ReshardTool {
+    
+    // Count of profiles created in target in one transaction
+    private static final int CHUNK_SIZE = 500;
+    
+    public static void main(String[] args) throws Exception {
+        if(args.length < 4) {
+            System.out.println("Usage: ReshardTool <source file name> <source shards> <target file name> <target shards>");
+            return;
+        }
+        
+        String sourceName = args[0];
+        int sourceShards = Integer.parseInt(args[1]);
+        String targetName = args[2];
+        int targetShards = Integer.parseInt(args[3]);
+        
+        if(sourceName.equals(targetName)) {
+            System.err.println("Target file name should differ from the source one");
+            return;
+        }
+        
+        Path directory = Paths.get("");
+        
+        ShardedDatabaseManager source = ShardedDatabaseManager.openSQLite(directory, sourceName, sourceShards);
+        ShardedDatabaseManager target = ShardedDatabaseManager.openSQLite(directory, targetName, targetShards);
+        boolean failed = false;
+        
+        try {
+            if(target.countProfiles() != 0) {
+                System.err.println("Target shards already contain profiles, stopped. If they are left by a failed run, delete "
+                        + describeFiles(targetName, targetShards) + " and run again");
+                return;
+            }
+            
+            long start = System.currentTimeMillis();
+            long moved = 0;
+            
+            for (int shard = 0; shard < sourceShards; shard++) {
+                List<ProfileModel> profiles = source.getShardProfiles(shard);
+                
+                if(profiles == null) {
+                    throw new IllegalStateException("Failed to read source shard " + shard);
+                }
+                
+                for (int from = 0; from < profiles.size(); from += CHUNK_SIZE) {
+                    copy(source, target, profiles.subList(from, Math.min(profiles.size(), from + CHUNK_SIZE)));
+                }
+                
+                moved += profiles.size();
+                System.out.println("Shard " + shard + " is copied: " + profiles.size() + " profiles");
+            }
+            
+            System.out.println("Copied " + moved + " profiles to " + targetShards + " shards in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage() + ", stopped. Target shards are partly filled, delete "
+                    + describeFiles(targetName, targetShards) + " before the next run");
+            failed = true;
+        } finally {
+            source.shutdown();
+            target.shutdown();
+        }
+        
+        if(failed) {
+            System.exit(1);
+        }
+    }
+    
+    private static String describeFiles(String fileName, int shards) {
+        return ShardedDatabaseManager.getShardFileName(fileName, 0) + " .. " + ShardedDatabaseManager.getShardFileName(fileName, shards - 1);
+    }
+    
+    // Save ids depend on the shard, so target creates new saves and achievements get new ids too
+    private static void copy(ShardedDatabaseManager source, ShardedDatabaseManager target, List<ProfileModel> profiles) {
+        Map<Long, String> names = new HashMap<>();
+        Map<Long, SaveModel> saves = new HashMap<>();
+        
+        for (ProfileModel profile : profiles) {
+            names.put(profile.getChatId(), profile.getName());
+            
+            SaveModel save = source.getQuestSave(profile);
+            if(save != null && save.getLastBranchID() != null) {
+                saves.put(profile.getChatId(), save);
+            }
+        }
+        
+        if(target.createProfiles(names) == null || !target.updateSaves(saves)) {
+            throw new IllegalStateException("Failed to write profiles to target shards");
+        }
+        
+        for (ProfileModel profile : profiles) {
+            List<AchievementModel> achievements = source.getAchievements(profile.getChatId());
+            
+            if(achievements == null) {
+                throw new IllegalStateException("Failed to read achievements of chat " + profile.getChatId());
+            }
+            
+            for (AchievementModel achievement : achievements) {
+                boolean saved = target.saveAchievment(new AchievementModel(
+                        0,
+                        achievement.getDate(),
+                        achievement.getChatID(),
+                        achievement.getAchievementID(),
+                        achievement.getAchievementName(),
+                        achievement.getDescription()));
+                
+                if(!saved) {
+                    throw new IllegalStateException("Failed to write achievements of chat " + profile.getChatId() + " to target shards");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.mrflaxe.textadventure.database.shard;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import lombok.Getter;
+import ru.mrflaxe.textadventure.database.SQLDatabaseManager;
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * One database file of the sharded storage. <br>
+ * All operations of the shard run on its own thread, so the single connection is never used concurrently
+ * and writes of different shards don't wait for each other.
+ */
+public class Shard {
+    
+    @Getter
+    private final int index;
+    
+    private final SQLDatabaseManager manager;
+    private final ExecutorService executor;
+    
+    public Shard(int index, ConnectionSource connection) throws SQLException {
+        this.index = index;
+        // Ids of saves of this shard are in its own range
+        this.manager = new SQLDatabaseManager(connection, (index + 1) * ShardedDatabaseManager.SAVE_ID_RANGE - 1);
+        
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-shard-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Runs the action on the shard thread.
+     * @param action - action with manager of this shard
+     * @return future of the action result
+     */
+    public <T> CompletableFuture<T> submit(Function<SQLDatabaseManager, T> action) {
+        return CompletableFuture.supplyAsync(() -> action.apply(manager), executor);
+    }
+    
+    /**
+     * Closes connection after all submitted actions are done.
+     */
+    public void shutdown() {
+        executor.execute(manager::shutdown);
+        executor.shutdown();
+        
+        try {
+            if(!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                Logger.warn("Database shard {} didn't finish its work in time", index);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package ru.mrflaxe.textadventure.database.shard;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.j256.ormlite.jdbc.JdbcConnectionSource;
+import com.j256.ormlite.jdbc.db.SqliteDatabaseType;
+import com.j256.ormlite.support.ConnectionSource;
+import com.j256.ormlite.support.DatabaseConnection;
+
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.SQLDatabaseManager;
+import ru.mrflaxe.textadventure.database.migration.MigrationRunner;
+import ru.mrflaxe.textadventure.database.model.AchievementModel;
+import ru.mrflaxe.textadventure.database.model.ProfileModel;
+import ru.mrflaxe.textadventure.database.model.SaveModel;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.user.User;
+
+/**
+ * Database manager spreading data across several SQLite files by chat id hash. <br>
+ * Profile, its save and its achievements always live in the same shard.
+ * Operations with many chats are split by shards and run in parallel,
+ * aggregates are calculated by every shard and summed up.
+ * <br><br>
+ * Each shard gives ids to its saves from its own range, so a save can be found by id only.
+ * New saves have to be created by {@link #createNewProfile(long, String)} to get into the shard of their profile.
+ * A shard which used up its range fails to create saves and logs an error instead of taking ids of the next shard.
+ */
+public class ShardedDatabaseManager implements DatabaseManager {
+    
+    // Saves of shard N have ids from N * SAVE_ID_RANGE. Limits count of shards to 127
+    public static final int SAVE_ID_RANGE = 1 << 24;
+    public static final int MAX_SHARDS = Integer.MAX_VALUE / SAVE_ID_RANGE;
+    
+    private final List<Shard> shards;
+    
+    public ShardedDatabaseManager(List<ConnectionSource> connections) throws SQLException {
+        if(connections.isEmpty() || connections.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Count of shards should be from 1 to " + MAX_SHARDS);
+        }
+        
+        this.shards = new ArrayList<>(connections.size());
+        
+        for (int i = 0; i < connections.size(); i++) {
+            ConnectionSource connection = connections.get(i);
+            
+            if(!new MigrationRunner(connection).migrate()) {
+                throw new SQLException("Failed to migrate database shard " + i);
+            }
+            
+            reserveSaveIDs(connection, i);
+            shards.add(new Shard(i, connection));
+        }
+    }
+    
+    /**
+     * Opens SQLite files of all shards.
+     * @param directory - directory of the files
+     * @param fileName - file name of the database, shard number is added before extension
+     * @param count - count of shards
+     * @return manager of opened shards
+     */
+    public static ShardedDatabaseManager openSQLite(Path directory, String fileName, int count) throws SQLException {
+        SqliteDatabaseType databaseType = new SqliteDatabaseType();
+        databaseType.loadDriver();
+        
+        List<ConnectionSource> connections = new ArrayList<>(count);
+        
+        try {
+            for (int i = 0; i < count; i++) {
+                Path file = directory.resolve(getShardFileName(fileName, i)).toAbsolutePath();
+                connections.add(new JdbcConnectionSource("jdbc:sqlite:" + file, databaseType));
+            }
+            
+            return new ShardedDatabaseManager(connections);
+        } catch (SQLException | RuntimeException e) {
+            for (ConnectionSource connection : connections) {
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                }
+            }
+            
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets file name of the shard. 'database.db' becomes 'database-0.db' for the first shard.
+     * @param fileName - file name of the database
+     * @param shard - number of the shard
+     * @return file name of the shard
+     */
+    public static String getShardFileName(String fileName, int shard) {
+        int dot = fileName.lastIndexOf('.');
+        
+        if(dot <= 0) {
+            return fileName + "-" + shard;
+        }
+        
+        return fileName.substring(0, dot) + "-" + shard + fileName.substring(dot);
+    }
+    
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    /**
+     * Gets number of the shard keeping data of the chat.
+     * @param chatID - chat id
+     * @param count - count of shards
+     * @return shard number from 0 to count - 1
+     */
+    public static int getShardIndex(long chatID, int count) {
+        long hash = chatID * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        
+        return Math.floorMod((int) hash, count);
+    }
+    
+    /**
+     * Gets all profiles of one shard.
+     * @param shard - number of the shard
+     * @return profiles of the shard or null if something will go wrong
+     */
+    @Nullable
+    public List<ProfileModel> getShardProfiles(int shard) {
+        return join(shards.get(shard).submit(SQLDatabaseManager::getProfiles));
+    }
+    
+    @Override
+    public void shutdown() {
+        shards.forEach(Shard::shutdown);
+    }
+    
+    @Override
+    @Nullable
+    public ProfileModel createNewProfile(long chatID, String userName) {
+        return call(chatID, manager -> manager.createNewProfile(chatID, userName));
+    }
+    
+    @Override
+    public void saveProfile(ProfileModel profile) {
+        call(profile.getChatId(), manager -> {
+            manager.saveProfile(profile);
+            return null;
+        });
+    }
+    
+    @Override
+    @Nullable
+    public ProfileModel getProfile(long chatID) {
+        return call(chatID, manager -> manager.getProfile(chatID));
+    }
+    
+    @Override
+    @Nullable
+    public List<ProfileModel> getProfiles(Collection<Long> chatIDs) {
+        Map<Integer, List<Long>> split = splitByShards(chatIDs);
+        
+        return gatherLists(split, (manager, ids) -> manager.getProfiles(ids));
+    }
+    
+    @Override
+    @Nullable
+    public List<ProfileModel> createProfiles(Map<Long, String> names) {
+        Map<Integer, Map<Long, String>> split = splitByShards(names);
+        
+        return gatherLists(split, (manager, part) -> manager.createProfiles(part));
+    }
+    
+    @Override
+    public long countProfiles() {
+        long total = 0;
+        
+        for (Long count : gather(SQLDatabaseManager::countProfiles)) {
+            if(count == null || count < 0) {
+                return -1;
+            }
+            
+            total += count;
+        }
+        
+        return total;
+    }
+    
+    @Override
+    public long forEachChatID(LongConsumer consumer) {
+        long total = 0;
+        
+        // One shard after another, so the consumer is never called concurrently
+        for (Shard shard : shards) {
+            Long count = join(shard.submit(manager -> manager.forEachChatID(consumer)));
+            
+            if(count == null || count < 0) {
+                return -1;
+            }
+            
+            total += count;
+        }
+        
+        return total;
+    }
+    
+    @Override
+    public List<ProfileModel> getProfiles() {
+        List<ProfileModel> profiles = new ArrayList<>();
+        
+        for (List<ProfileModel> part : gather(SQLDatabaseManager::getProfiles)) {
+            if(part != null) {
+                profiles.addAll(part);
+            }
+        }
+        
+        return profiles;
+    }
+    
+    @Override
+    public void deleteProfile(ProfileModel profile) {
+        call(profile.getChatId(), manager -> {
+            manager.deleteProfile(profile);
+            return null;
+        });
+    }
+    
+    @Override
+    public void saveQuestSave(SaveModel save) {
+        Shard shard = getSaveShard(save.getId());
+        
+        if(shard == null) {
+            Logger.error("Save {} doesn't belong to any database shard", save.getId());
+            return;
+        }
+        
+        join(shard.submit(manager -> {
+            manager.saveQuestSave(save);
+            return null;
+        }));
+    }
+    
+    @Override
+    @Nullable
+    public SaveModel getQuestSave(ProfileModel profile) {
+        return call(profile.getChatId(), manager -> manager.getQuestSave(profile));
+    }
+    
+    @Override
+    @Nullable
+    public SaveModel getQuestSave(long chatID) {
+        return call(chatID, manager -> manager.getQuestSave(chatID));
+    }
+    
+    @Override
+    public boolean updateSave(User user, String questID, String newBrachID) {
+        return Boolean.TRUE.equals(call(user.getChatID(), manager -> manager.updateSave(user, questID, newBrachID)));
+    }
+    
+    @Override
+    public boolean updateSaves(Map<Long, SaveModel> saves) {
+        Map<Integer, Map<Long, SaveModel>> split = splitByShards(saves);
+        
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        split.forEach((index, part) -> futures.add(shards.get(index).submit(manager -> manager.updateSaves(part))));
+        
+        boolean updated = true;
+        for (CompletableFuture<Boolean> future : futures) {
+            updated &= Boolean.TRUE.equals(join(future));
+        }
+        
+        return updated;
+    }
+    
+    @Override
+    public void deleteQuestSave(SaveModel save) {
+        Shard shard = getSaveShard(save.getId());
+        
+        if(shard == null) {
+            return;
+        }
+        
+        join(shard.submit(manager -> {
+            manager.deleteQuestSave(save);
+            return null;
+        }));
+    }
+    
+    @Override
+    public boolean saveAchievment(AchievementModel achievement) {
+        return Boolean.TRUE.equals(call(achievement.getChatID(), manager -> manager.saveAchievment(achievement)));
+    }
+    
+    @Override
+    @Nullable
+    public List<AchievementModel> getAchievements(long chatID) {
+        return call(chatID, manager -> manager.getAchievements(chatID));
+    }
+    
+    @Override
+    public long forEachAchievement(Consumer<AchievementModel> consumer) {
+        long total = 0;
+        
+        // One shard after another, so the consumer is never called concurrently
+        for (Shard shard : shards) {
+            Long count = join(shard.submit(manager -> manager.forEachAchievement(consumer)));
+            
+            if(count == null || count < 0) {
+                return -1;
+            }
+            
+            total += count;
+        }
+        
+        return total;
+    }
+    
+    @Override
+    public List<AchievementModel> getCertainAchievments(String achievementID) {
+        List<AchievementModel> achievements = new ArrayList<>();
+        
+        for (List<AchievementModel> part : gather(manager -> manager.getCertainAchievments(achievementID))) {
+            if(part != null) {
+                achievements.addAll(part);
+            }
+        }
+        
+        return achievements;
+    }
+    
+    @Override
+    public long countCertainAchievments(String achievementID) {
+        long total = 0;
+        
+        for (Long count : gather(manager -> manager.countCertainAchievments(achievementID))) {
+            if(count == null || count < 0) {
+                return -1;
+            }
+            
+            total += count;
+        }
+        
+        return total;
+    }
+    
+    @Override
+    public float getAchievmentPercent(String achievmentID) {
+        long profiles = 0;
+        long owners = 0;
+        
+        // Every shard counts by two COUNT queries, only two numbers come back from each
+        List<long[]> counts = gather(manager -> new long[] { manager.countProfiles(), manager.countCertainAchievments(achievmentID) });
+        
+        for (long[] count : counts) {
+            if(count == null || count[0] < 0 || count[1] < 0) {
+                continue;
+            }
+            
+            profiles += count[0];
+            owners += count[1];
+        }
+        
+        if(profiles <= 0 || owners == 0) {
+            return 0f;
+        }
+        
+        return (float) owners / profiles * 100;
+    }
+    
+    private <T> T call(long chatID, Function<SQLDatabaseManager, T> action) {
+        return join(shards.get(getShardIndex(chatID, shards.size())).submit(action));
+    }
+    
+    // Runs the action on all shards at once and waits for all results
+    private <T> List<T> gather(Function<SQLDatabaseManager, T> action) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        shards.forEach(shard -> futures.add(shard.submit(action)));
+        
+        List<T> results = new ArrayList<>(futures.size());
+        futures.forEach(future -> results.add(join(future)));
+        
+        return results;
+    }
+    
+    // Runs the action on each shard with its part of the input and joins the result lists
+    @Nullable
+    private <P, T> List<T> gatherLists(Map<Integer, P> parts, BiFunction<SQLDatabaseManager, P, List<T>> action) {
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>(parts.size());
+        parts.forEach((index, part) -> futures.add(shards.get(index).submit(manager -> action.apply(manager, part))));
+        
+        List<T> results = new ArrayList<>();
+        boolean failed = false;
+        
+        for (CompletableFuture<List<T>> future : futures) {
+            List<T> part = join(future);
+            
+            if(part == null) {
+                failed = true;
+                continue;
+            }
+            
+            results.addAll(part);
+        }
+        
+        return failed ? null : results;
+    }
+    
+    private Map<Integer, List<Long>> splitByShards(Collection<Long> chatIDs) {
+        Map<Integer, List<Long>> split = new HashMap<>();
+        chatIDs.forEach(chatID -> split.computeIfAbsent(getShardIndex(chatID, shards.size()), key -> new ArrayList<>()).add(chatID));
+        
+        return split;
+    }
+    
+    private <V> Map<Integer, Map<Long, V>> splitByShards(Map<Long, V> values) {
+        Map<Integer, Map<Long, V>> split = new HashMap<>();
+        values.forEach((chatID, value) -> split.computeIfAbsent(getShardIndex(chatID, shards.size()), key -> new HashMap<>()).put(chatID, value));
+        
+        return split;
+    }
+    
+    @Nullable
+    private Shard getSaveShard(int saveID) {
+        int index = saveID / SAVE_ID_RANGE;
+        
+        if(saveID <= 0 || index >= shards.size()) {
+            return null;
+        }
+        
+        return shards.get(index);
+    }
+    
+    @Nullable
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Logger.error("Database shard failed to complete operation: {}", e.getCause());
+            return null;
+        }
+    }
+    
+    // Moves autoincrement of an empty saves table to the range of the shard
+    private void reserveSaveIDs(ConnectionSource connection, int shard) throws SQLException {
+        if(shard == 0) {
+            return;
+        }
+        
+        DatabaseConnection database = connection.getReadWriteConnection(null);
+        
+        try {
+            database.executeStatement("INSERT INTO sqlite_sequence (name, seq) "
+                    + "SELECT 'telegrambot_profiles_saves', " + (long) shard * SAVE_ID_RANGE + " "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = 'telegrambot_profiles_saves')",
+                    DatabaseConnection.DEFAULT_RESULT_FLAGS);
+        } finally {
+            connection.releaseConnection(database);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ru.mrflaxe.textadventure.error;
+
+import java.io.IOException;
+
+/**
+ * Request was sent to another node, but the node didn't confirm it. The node may have handled it anyway.
+ */
+public class NotConfirmedException extends IOException {
+
+    private static final long serialVersionUID = 2093476150327441850L;
+
+    public NotConfirmedException(String address, IOException cause) {
+        super("Node " + address + " didn't confirm the request: " + cause.getMessage(), cause);
+    }
+
+}
@@ -0,0 +1,45 @@
+package ru.mrflaxe.textadventure.logging;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.Getter;
+
+/**
+ * Importance of a log record. Records below the configured level are not written.
+ */
+public enum LogLevel {
+    
+    DEBUG("debug"),
+    INFO("info"),
+    WARN("warn"),
+    ERROR("error");
+    
+    @Getter
+    private final String key;
+    
+    private LogLevel(String key) {
+        this.key = key;
+    }
+    
+    /**
+     * Gets log level by its config key.
+     * @param key - key from configuration
+     * @return log level or null if there is no level with such key
+     */
+    @Nullable
+    public static LogLevel getByKey(String key) {
+        if(key == null) {
+            return null;
+        }
+        
+        LogLevel[] values = values();
+        
+        for (int i = 0; i < values.length; i++) {
+            if(values[i].getKey().equalsIgnoreCase(key)) {
+                return values[i];
+            }
+        }
+        
+        return null;
+    }
+}
@@ -0,0 +1,341 @@
+package ru.mrflaxe.textadventure.logging;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring buffer of log records and the thread which prints them. <br>
+ * Any thread adds a record without locks: it takes the next sequence with CAS,
+ * fills the slot of this sequence and publishes it by writing the sequence to the slot.
+ * If the buffer is full the record is dropped and counted, so logging thread never waits for output.
+ * <br><br>
+ * Records are formatted only by the writer thread. The same message is printed at most
+ * {@link #REPEAT_LIMIT} times per {@link #REPEAT_WINDOW} millis, others are counted
+ * and reported with one line when the window ends.
+ */
+class LogWriter {
+    
+    private static final int REPEAT_LIMIT = 5;
+    private static final long REPEAT_WINDOW = TimeUnit.SECONDS.toMillis(10);
+    // Windows are forgotten all at once if there are too many different messages
+    private static final int MAX_REPEATS = 10_000;
+    
+    // Writer checks ended repeat windows at least this often while there are no records
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+    
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+    
+    private final Slot[] slots;
+    private final int mask;
+    
+    // Next sequence to take by a logging thread
+    private final AtomicLong tail;
+    // Next sequence to print
+    private volatile long head;
+    
+    private final Thread thread;
+    private volatile boolean sleeping;
+    
+    private final LongAdder dropped;
+    // Count of dropped records already reported. Used by the writer thread only
+    private long reportedDrops;
+    private volatile long written;
+    private volatile long suppressed;
+    
+    // Message and its current repeat window. Used by the writer thread only
+    private final Map<String, Repeat> repeats;
+    private final StringBuilder line;
+    
+    /**
+     * Creates the buffer and starts the writer thread.
+     * @param capacity - count of slots, rounded up to a power of two
+     */
+    LogWriter(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.repeats = new HashMap<>();
+        this.line = new StringBuilder(256);
+        
+        this.thread = new Thread(this::run, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Adds record to the buffer.
+     * @return false if the buffer is full and the record is dropped
+     */
+    boolean publish(LogLevel level, long chatID, String branchID, String template, Object first, Object second, Object third, Object[] more) {
+        long sequence;
+        
+        do {
+            sequence = tail.get();
+            
+            if(sequence - head >= slots.length) {
+                dropped.increment();
+                return false;
+            }
+        } while(!tail.compareAndSet(sequence, sequence + 1));
+        
+        Slot slot = slots[(int) sequence & mask];
+        
+        slot.time = System.currentTimeMillis();
+        slot.level = level;
+        slot.thread = Thread.currentThread().getName();
+        slot.chatID = chatID;
+        slot.branchID = branchID;
+        slot.template = template;
+        slot.first = first;
+        slot.second = second;
+        slot.third = third;
+        slot.more = more;
+        
+        // Writer sees the record only after this
+        slot.sequence = sequence;
+        
+        if(sleeping) {
+            LockSupport.unpark(thread);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Waits until records added before this call are printed.
+     * @param timeout - max time to wait in millis
+     */
+    void flush(long timeout) {
+        long target = tail.get();
+        long deadline = System.currentTimeMillis() + timeout;
+        
+        while(head < target && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+    
+    String report() {
+        return "Log: " + written + " records written, " + suppressed + " suppressed as repeated, "
+                + dropped.sum() + " dropped as buffer was full, " + (tail.get() - head) + " waiting";
+    }
+    
+    private void run() {
+        while(true) {
+            long next = head;
+            Slot slot = slots[(int) next & mask];
+            
+            if(slot.sequence != next) {
+                closeRepeats(System.currentTimeMillis(), false);
+                reportDrops();
+                
+                // Loggers wake the writer up only while this flag is set
+                sleeping = true;
+                
+                if(slot.sequence != next) {
+                    LockSupport.parkNanos(IDLE_PARK);
+                }
+                
+                sleeping = false;
+                continue;
+            }
+            
+            try {
+                write(slot);
+            } catch (RuntimeException exception) {
+                // toString() of an argument may fail, it must not stop the writer
+                exception.printStackTrace();
+            }
+            
+            slot.clear();
+            head = next + 1;
+        }
+    }
+    
+    private void write(Slot slot) {
+        Throwable error = format(slot.template, slot.first, slot.second, slot.third, slot.more);
+        String message = line.toString();
+        String key = slot.level.ordinal() + message;
+        
+        Repeat repeat = repeats.get(key);
+        
+        if(repeat != null && slot.time - repeat.start < REPEAT_WINDOW) {
+            if(++repeat.count > REPEAT_LIMIT) {
+                suppressed++;
+                return;
+            }
+        } else {
+            if(repeat != null) {
+                printRepeats(repeat, message);
+            }
+            
+            if(repeats.size() >= MAX_REPEATS) {
+                closeRepeats(slot.time, true);
+            }
+            
+            repeats.put(key, new Repeat(slot.level, slot.time));
+        }
+        
+        PrintStream out = getStream(slot.level);
+        out.println(buildLine(slot.time, slot.level, slot.thread, slot.chatID, slot.branchID, message));
+        
+        if(error != null) {
+            error.printStackTrace(out);
+        }
+        
+        written++;
+    }
+    
+    // Reports ended windows where messages were suppressed
+    private void closeRepeats(long now, boolean all) {
+        Iterator<Map.Entry<String, Repeat>> iterator = repeats.entrySet().iterator();
+        
+        while(iterator.hasNext()) {
+            Map.Entry<String, Repeat> entry = iterator.next();
+            Repeat repeat = entry.getValue();
+            
+            if(!all && now - repeat.start < REPEAT_WINDOW) {
+                continue;
+            }
+            
+            // Key starts with one digit of the level
+            printRepeats(repeat, entry.getKey().substring(1));
+            iterator.remove();
+        }
+    }
+    
+    private void printRepeats(Repeat repeat, String message) {
+        int skipped = repeat.count - REPEAT_LIMIT;
+        
+        if(skipped <= 0) {
+            return;
+        }
+        
+        getStream(repeat.level).println(buildLine(System.currentTimeMillis(), repeat.level, "log-writer", Logger.NO_CHAT, null,
+                "Suppressed " + skipped + " more repeats in " + REPEAT_WINDOW / 1000 + " s of: " + message));
+    }
+    
+    private void reportDrops() {
+        long dropped = this.dropped.sum();
+        
+        if(dropped == reportedDrops) {
+            return;
+        }
+        
+        System.err.println(buildLine(System.currentTimeMillis(), LogLevel.WARN, "log-writer", Logger.NO_CHAT, null,
+                "Dropped " + (dropped - reportedDrops) + " records because log buffer was full"));
+        
+        this.reportedDrops = dropped;
+    }
+    
+    // Puts the message into the line builder. Returns the last argument if it is an error without placeholder
+    private Throwable format(String template, Object first, Object second, Object third, Object[] more) {
+        line.setLength(0);
+        
+        Object[] arguments = new Object[3 + (more == null ? 0 : more.length)];
+        arguments[0] = first;
+        arguments[1] = second;
+        arguments[2] = third;
+        
+        if(more != null) {
+            System.arraycopy(more, 0, arguments, 3, more.length);
+        }
+        int used = 0;
+        int start = 0;
+        int placeholder;
+        
+        while(used < arguments.length && (placeholder = template.indexOf("{}", start)) >= 0) {
+            line.append(template, start, placeholder).append(arguments[used++]);
+            start = placeholder + 2;
+        }
+        
+        line.append(template, start, template.length());
+        
+        for (int i = arguments.length - 1; i >= used; i--) {
+            if(arguments[i] != null) {
+                return arguments[i] instanceof Throwable ? (Throwable) arguments[i] : null;
+            }
+        }
+        
+        return null;
+    }
+    
+    private String buildLine(long time, LogLevel level, String thread, long chatID, String branchID, String message) {
+        StringBuilder builder = new StringBuilder(message.length() + 64)
+                .append(TIME_FORMAT.format(Instant.ofEpochMilli(time)))
+                .append(' ').append(level.name())
+                .append(" [").append(thread).append(']');
+        
+        if(chatID != Logger.NO_CHAT) {
+            builder.append(" chat=").append(chatID);
+        }
+        
+        if(branchID != null) {
+            builder.append(" branch=").append(branchID);
+        }
+        
+        return builder.append(": ").append(message).toString();
+    }
+    
+    private PrintStream getStream(LogLevel level) {
+        return level.compareTo(LogLevel.WARN) >= 0 ? System.err : System.out;
+    }
+    
+    private static class Slot {
+        
+        private volatile long sequence = -1;
+        
+        private long time;
+        private LogLevel level;
+        private String thread;
+        private long chatID;
+        private String branchID;
+        private String template;
+        private Object first;
+        private Object second;
+        private Object third;
+        // Arguments after the third one, usually null
+        private Object[] more;
+        
+        // Arguments are not kept alive until the slot is reused
+        private void clear() {
+            branchID = null;
+            template = null;
+            first = null;
+            second = null;
+            third = null;
+            more = null;
+        }
+    }
+    
+    private static class Repeat {
+        
+        private final LogLevel level;
+        private final long start;
+        private int count;
+        
+        private Repeat(LogLevel level, long start) {
+            this.level = level;
+            this.start = start;
+            this.count = 1;
+        }
+    }
+}
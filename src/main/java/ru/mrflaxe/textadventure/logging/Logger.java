@@ -0,0 +1,183 @@
+package ru.mrflaxe.textadventure.logging;
+
+import java.util.Arrays;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+
+/**
+ * Log of the bot. Records are printed by a separate thread, so a thread which logs never waits for output. <br>
+ * Messages are templates where each '{}' is replaced by the next argument. Formatting is done by the writer thread,
+ * so a disabled level costs only the level check. Primitive arguments are boxed before the call,
+ * wrap such calls with {@link #isEnabled(LogLevel)} on hot paths.
+ * An error passed as the argument after all placeholders is printed with its stack trace.
+ * <br><br>
+ * Records can have chat id and branch id of the player they are about.
+ */
+public final class Logger {
+    
+    // Chat id of records which are not about a player
+    public static final long NO_CHAT = Long.MIN_VALUE;
+    
+    private static final int BUFFER_SIZE = 8192;
+    
+    private static final LogWriter WRITER = new LogWriter(BUFFER_SIZE);
+    private static volatile LogLevel level = LogLevel.INFO;
+    
+    static {
+        // Records added right before exit are printed too
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> WRITER.flush(1000), "log-flush"));
+    }
+    
+    private Logger() {}
+    
+    /**
+     * Sets level from 'logging.level' section of the config.
+     * @param config - main configuration
+     */
+    public static void configure(Configuration config) {
+        if(!config.containsSection("logging.level")) {
+            return;
+        }
+        
+        String key = config.getString("logging.level");
+        LogLevel level = LogLevel.getByKey(key);
+        
+        if(level == null) {
+            warn("Unknown log level '{}' in config.yml. Using '{}'.", key, Logger.level.getKey());
+            return;
+        }
+        
+        Logger.level = level;
+    }
+    
+    public static void setLevel(LogLevel level) {
+        Logger.level = level;
+    }
+    
+    public static boolean isEnabled(LogLevel level) {
+        return level.compareTo(Logger.level) >= 0;
+    }
+    
+    /**
+     * Adds record to the log.
+     * @param level - level of the record
+     * @param chatID - chat of the player or {@link #NO_CHAT}
+     * @param branchID - branch of the player or null
+     * @param template - message with '{}' placeholders
+     * @param first - first argument or null
+     * @param second - second argument or null
+     * @param third - third argument or null
+     */
+    public static void log(LogLevel level, long chatID, String branchID, String template, Object first, Object second, Object third) {
+        if(isEnabled(level)) {
+            WRITER.publish(level, chatID, branchID, template, first, second, third, null);
+        }
+    }
+    
+    /**
+     * Waits until all records added before are printed.
+     */
+    public static void flush() {
+        WRITER.flush(1000);
+    }
+    
+    /**
+     * Builds human readable report for console output
+     * @return report text
+     */
+    public static String report() {
+        return WRITER.report() + ", level " + level.getKey();
+    }
+    
+    public static void debug(String template) {
+        log(LogLevel.DEBUG, NO_CHAT, null, template, null, null, null);
+    }
+    
+    public static void debug(String template, Object first) {
+        log(LogLevel.DEBUG, NO_CHAT, null, template, first, null, null);
+    }
+    
+    public static void debug(String template, Object first, Object second) {
+        log(LogLevel.DEBUG, NO_CHAT, null, template, first, second, null);
+    }
+    
+    public static void info(String template) {
+        log(LogLevel.INFO, NO_CHAT, null, template, null, null, null);
+    }
+    
+    public static void info(String template, Object first) {
+        log(LogLevel.INFO, NO_CHAT, null, template, first, null, null);
+    }
+    
+    public static void info(String template, Object first, Object second) {
+        log(LogLevel.INFO, NO_CHAT, null, template, first, second, null);
+    }
+    
+    public static void info(String template, Object first, Object second, Object third) {
+        log(LogLevel.INFO, NO_CHAT, null, template, first, second, third);
+    }
+    
+    public static void warn(String template) {
+        log(LogLevel.WARN, NO_CHAT, null, template, null, null, null);
+    }
+    
+    public static void warn(String template, Object first) {
+        log(LogLevel.WARN, NO_CHAT, null, template, first, null, null);
+    }
+    
+    public static void warn(String template, Object first, Object second) {
+        log(LogLevel.WARN, NO_CHAT, null, template, first, second, null);
+    }
+    
+    public static void warn(String template, Object first, Object second, Object third) {
+        log(LogLevel.WARN, NO_CHAT, null, template, first, second, third);
+    }
+    
+    public static void error(String template) {
+        log(LogLevel.ERROR, NO_CHAT, null, template, null, null, null);
+    }
+    
+    public static void error(String template, Object first) {
+        log(LogLevel.ERROR, NO_CHAT, null, template, first, null, null);
+    }
+    
+    public static void error(String template, Object first, Object second) {
+        log(LogLevel.ERROR, NO_CHAT, null, template, first, second, null);
+    }
+    
+    public static void error(String template, Object first, Object second, Object third) {
+        log(LogLevel.ERROR, NO_CHAT, null, template, first, second, third);
+    }
+    
+    /**
+     * Adds error about a player.
+     * @param chatID - chat of the player
+     * @param branchID - branch of the player or null
+     * @param template - message with '{}' placeholders
+     * @param arguments - values of placeholders. An exception after them is printed with its stack trace
+     */
+    public static void error(long chatID, String branchID, String template, Object... arguments) {
+        if(!isEnabled(LogLevel.ERROR)) {
+            return;
+        }
+        
+        int length = arguments.length;
+        
+        WRITER.publish(LogLevel.ERROR, chatID, branchID, template,
+                length > 0 ? arguments[0] : null,
+                length > 1 ? arguments[1] : null,
+                length > 2 ? arguments[2] : null,
+                length > 3 ? Arrays.copyOfRange(arguments, 3, length) : null);
+    }
+    
+    /**
+     * Adds error about a player with stack trace of the exception.
+     * @param chatID - chat of the player
+     * @param branchID - branch of the player or null
+     * @param message - message without placeholders
+     * @param error - exception to print
+     */
+    public static void error(long chatID, String branchID, String message, Throwable error) {
+        log(LogLevel.ERROR, chatID, branchID, message, error, null, null);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.mrflaxe.textadventure.quest;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.Getter;
+
+/**
+ * Describes how players choose answer options.
+ */
+public enum AnswerMode {
+    
+    // Reply keyboard with numbers. Player sends the number as a message
+    KEYBOARD("keyboard"),
+    // Buttons under the options message. Each button knows its branch,
+    // so taps on old messages are ignored
+    INLINE("inline");
+    
+    @Getter
+    private final String key;
+    
+    private AnswerMode(String key) {
+        this.key = key;
+    }
+    
+    /**
+     * Gets answer mode by its config key.
+     * @param key - key from configuration
+     * @return answer mode or null if there is no mode with such key
+     */
+    @Nullable
+    public static AnswerMode getByKey(String key) {
+        if(key == null) {
+            return null;
+        }
+        
+        AnswerMode[] values = values();
+        
+        for (int i = 0; i < values.length; i++) {
+            if(values[i].getKey().equalsIgnoreCase(key)) {
+                return values[i];
+            }
+        }
+        
+        return null;
+    }
+}
@@ -1,55 +1,106 @@
 package ru.mrflaxe.textadventure.quest;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.model.CallbackQuery;
 import com.pengrad.telegrambot.model.Message;
 import com.pengrad.telegrambot.model.request.ChatAction;
+import com.pengrad.telegrambot.model.request.InlineKeyboardButton;
+import com.pengrad.telegrambot.model.request.InlineKeyboardMarkup;
 import com.pengrad.telegrambot.model.request.Keyboard;
 import com.pengrad.telegrambot.model.request.KeyboardButton;
 import com.pengrad.telegrambot.model.request.ParseMode;
 import com.pengrad.telegrambot.model.request.ReplyKeyboardMarkup;
 import com.pengrad.telegrambot.model.request.ReplyKeyboardRemove;
+import com.pengrad.telegrambot.request.AnswerCallbackQuery;
+import com.pengrad.telegrambot.request.EditMessageText;
 import com.pengrad.telegrambot.request.SendChatAction;
 import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.BaseResponse;
+import com.pengrad.telegrambot.response.SendResponse;
 
+import lombok.Getter;
 import ru.mrflaxe.textadventure.achievement.Achievement;
 import ru.mrflaxe.textadventure.achievement.AchievmentManager;
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.database.DatabaseManager;
-import ru.mrflaxe.textadventure.database.model.ProfileModel;
 import ru.mrflaxe.textadventure.database.model.SaveModel;
-import ru.mrflaxe.textadventure.quest.message.AnswerOption;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.quest.analytics.PathAnalytics;
+import ru.mrflaxe.textadventure.quest.journal.SessionJournal;
 import ru.mrflaxe.textadventure.quest.message.BranchContainer;
+import ru.mrflaxe.textadventure.quest.message.AnswerOption;
 import ru.mrflaxe.textadventure.quest.message.branch.Ending;
 import ru.mrflaxe.textadventure.quest.message.branch.ProvideAchievement;
 import ru.mrflaxe.textadventure.quest.message.branch.ProvideAnswers;
 import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+import ru.mrflaxe.textadventure.quest.message.branch.RenderMode;
+import ru.mrflaxe.textadventure.quest.message.branch.ResumeMode;
+import ru.mrflaxe.textadventure.quest.registry.QuestRegistry;
 import ru.mrflaxe.textadventure.update.UpdateProvider;
 import ru.mrflaxe.textadventure.user.User;
 
 public class QuestSessionManager {
-
+    
+    // Telegram doesn't accept longer messages
+    private static final int MAX_MESSAGE_LENGTH = 4096;
+    // Placed between lines joined into one message
+    private static final String LINE_SEPARATOR = "\n\n";
+    
     private final UpdateProvider updateProvider;
     private final DatabaseManager databaseManager;
     private final AchievmentManager achievementManager;
-    private final BranchContainer branchContainer;
+    
+    @Getter
+    private final QuestRegistry questRegistry;
+    
     private final Configuration config;
     private final Configuration messages;
     private final TelegramBot bot;
     
     private final String ANSWER_OPTION_HEADER;
+    private final ResumeMode DEFAULT_RESUME_MODE;
+    private final AnswerMode ANSWER_MODE;
+    private final RenderMode DEFAULT_RENDER_MODE;
+    private final int MERGE_LENGTH;
     
     private final Map<User, QuestBranch> activePlayerData;
+    // Id of the message with inline answer buttons which player can tap now
+    private final Map<User, Integer> optionMessages;
+    // Pending message sendings of each active player
+    private final Map<User, List<ScheduledFuture<?>>> scheduledTasks;
+    private final ScheduledThreadPoolExecutor scheduler;
+    
+    // Null if journal is disabled or failed to open
+    private final SessionJournal journal;
+    
+    // Null if analytics is disabled or failed to start
+    @Getter
+    private final PathAnalytics analytics;
+    
+    @Getter
+    private final RenderMetrics renderMetrics;
+    
+    @Getter
+    private final TypingTracker typingTracker;
     
     public QuestSessionManager(
             UpdateProvider updateProvider,
             DatabaseManager databaseManager,
             AchievmentManager achievmentManager,
+            QuestRegistry questRegistry,
             Configuration config,
             Configuration messages,
             TelegramBot bot
@@ -57,14 +108,30 @@ public class QuestSessionManager {
         this.updateProvider = updateProvider;
         this.databaseManager = databaseManager;
         this.achievementManager = achievmentManager;
-        this.branchContainer = new BranchContainer(achievmentManager);
+        this.questRegistry = questRegistry;
         this.config = config;
         this.messages = messages;
         this.bot = bot;
         
         this.ANSWER_OPTION_HEADER = messages.getString("quest.answer-options.header");
+        this.DEFAULT_RESUME_MODE = getDefaultResumeMode(config);
+        this.ANSWER_MODE = getAnswerMode(config);
+        this.DEFAULT_RENDER_MODE = getDefaultRenderMode(config);
+        this.MERGE_LENGTH = config.containsSection("render-merge-length")
+                ? Math.min(MAX_MESSAGE_LENGTH, config.getInt("render-merge-length"))
+                : 300;
+        this.renderMetrics = new RenderMetrics();
+        this.typingTracker = new TypingTracker();
         
-        this.activePlayerData = new HashMap<>();
+        this.activePlayerData = new ConcurrentHashMap<>();
+        this.optionMessages = new ConcurrentHashMap<>();
+        this.scheduledTasks = new ConcurrentHashMap<>();
+        this.scheduler = createScheduler(config);
+        
+        this.journal = createJournal(config);
+        replayJournal();
+        
+        this.analytics = createAnalytics(config);
     }
     
     /**
@@ -78,44 +145,163 @@ public class QuestSessionManager {
     }
     
     /**
-     * Starts or continues user game from the last branch.
+     * Starts or continues user game from the last branch of the saved quest.
+     * If user has no save starts the default quest.
      * @param user - who gonna play
      */
     public void openSession(User user) {
-        ProfileModel profile = databaseManager.getProfile(user.getChatID());
-        SaveModel save = databaseManager.getQuestSave(profile);
+        openSession(user, null);
+    }
+    
+    /**
+     * Starts or continues user game in the given quest. <br>
+     * If the save belongs to another quest the given quest starts from the beginning
+     * and the old progress is replaced when the session is saved.
+     * @param user - who gonna play
+     * @param questID - quest to play or null to continue the saved quest
+     */
+    public void openSession(User user, String questID) {
+        SaveModel save = databaseManager.getQuestSave(user.getChatID());
         
         // This is error because all users have save model by default.
         // Last branch id in this models can be null, but save object should be.
         if(save == null) {
-            System.err.println(profile.getChatId() + " profile save is null!");
+            Logger.error(user.getChatID(), null, "Profile save is null!");
             return;
         }
         
         // Now getting lastbranch id
         String lastBranchID = save.getLastBranchID();
+        String savedQuestID = save.getQuestID() == null ? questRegistry.getDefaultQuestID() : save.getQuestID();
+        
+        if(questID == null) {
+            questID = savedQuestID;
+        }
+        
+        // Quest is held until the session holds it itself, so it can't be unloaded in between
+        BranchContainer quest = questRegistry.acquire(questID);
+        
+        if(quest == null) {
+            Logger.error(user.getChatID(), null, "Failed to start quest '{}'.", questID);
+            return;
+        }
+        
+        try {
+            openSession(user, quest, savedQuestID, lastBranchID);
+        } finally {
+            questRegistry.release(questID);
+        }
+    }
+    
+    /**
+     * Continues saved session without sending anything to the user. <br>
+     * Used when the session is moved from another node, so the user already has the messages of the branch.
+     * @param user - who plays
+     * @return true if the session is restored, false if there is no saved branch or it's damaged
+     */
+    public boolean restoreSession(User user) {
+        SaveModel save = databaseManager.getQuestSave(user.getChatID());
+        
+        if(save == null || save.getLastBranchID() == null) {
+            return false;
+        }
+        
+        String questID = save.getQuestID() == null ? questRegistry.getDefaultQuestID() : save.getQuestID();
+        BranchContainer quest = questRegistry.acquire(questID);
+        
+        if(quest == null) {
+            Logger.error(user.getChatID(), save.getLastBranchID(), "Failed to restore session of quest '{}'.", questID);
+            return false;
+        }
+        
+        try {
+            QuestBranch branch = quest.getBranch(save.getLastBranchID());
+            
+            if(branch == null) {
+                Logger.error(user.getChatID(), save.getLastBranchID(), "Failed to get branch of quest '{}'.", questID);
+                return false;
+            }
+            
+            setActiveBranch(user, branch);
+            return true;
+        } finally {
+            questRegistry.release(questID);
+        }
+    }
+    
+    private void openSession(User user, BranchContainer quest, String savedQuestID, String lastBranchID) {
+        String questID = quest.getQuestID();
         
         // If it's equals null means that the user just don't have any save yet.
-        // Starts new game
-        if(lastBranchID == null) {
+        // Save of another quest means the user starts new quest too
+        if(lastBranchID == null || !questID.equals(savedQuestID)) {
             // All quests should starts with 'start' branch.
-            QuestBranch startBranch = branchContainer.getBranch("start");
+            QuestBranch startBranch = quest.getBranch(QuestRegistry.START_BRANCH);
+            
+            if(startBranch == null) {
+                Logger.error(user.getChatID(), null, "Failed to start quest '{}'.", questID);
+                return;
+            }
+            
             sendBranch(user, startBranch);
             return;
         }
         
         // In this case user have save so will start from it.
-        QuestBranch lastBranch = branchContainer.getBranch(lastBranchID);
+        QuestBranch lastBranch = quest.getBranch(lastBranchID);
         
         // But in some cases this save may be damaged.
         // Anything happens.
         if(lastBranch == null) {
-            System.err.println("Failed to get brnach by id '" + lastBranchID + "'.");
+            Logger.error(user.getChatID(), lastBranchID, "Failed to get branch of quest '{}'.", questID);
             return;
         }
         
-        sendBranch(user, lastBranch);
-        return;
+        resumeBranch(user, lastBranch);
+    }
+    
+    /**
+     * Shows saved branch to the user who continues the game. <br>
+     * Depending on resume mode of the branch sends either the whole branch again
+     * or only its answer options right away.
+     * @param user - who continues the game
+     * @param branch - branch from the save
+     */
+    public void resumeBranch(User user, QuestBranch branch) {
+        ResumeMode mode = branch.getResumeMode();
+        
+        if(mode == null) {
+            mode = DEFAULT_RESUME_MODE;
+        }
+        
+        // Endings have to be played fully because the game finishes after the last line.
+        // Branches without answer options have nothing to show in short form.
+        if(mode == ResumeMode.FULL || branch instanceof Ending || !(branch instanceof ProvideAnswers)) {
+            sendBranch(user, branch);
+            return;
+        }
+        
+        // If player left before achievement of this branch was given will replay the branch
+        // so the achievement won't be lost
+        if(branch instanceof ProvideAchievement) {
+            Achievement achievement = ((ProvideAchievement) branch).getAchievement();
+            
+            if(!user.hasAchievement(achievement)) {
+                sendBranch(user, branch);
+                return;
+            }
+        }
+        
+        setActiveBranch(user, branch);
+        
+        String prefix = null;
+        List<String> lines = branch.getLines();
+        
+        if(mode == ResumeMode.LAST_LINE && !lines.isEmpty()) {
+            prefix = lines.get(lines.size() - 1);
+        }
+        
+        sendAnswerOptions(user, (ProvideAnswers) branch, prefix);
     }
     
     /**
@@ -128,116 +314,197 @@ public class QuestSessionManager {
             return;
         }
         
+        // Stops all message sendings
+        cancelTasks(user);
+        
         // Saving progress
         QuestBranch branch = activePlayerData.get(user);
         String branchID = branch.getId();
         
-        databaseManager.updateSave(user, branchID);
+        // Journal keeps the progress until it is written to database
+        boolean saved = databaseManager.updateSave(user, branch.getQuestID(), branchID);
+        
+        if(saved && journal != null) {
+            journal.recordCheckpoint(user.getChatID());
+        }
         
         // Finally removing from active players
-        activePlayerData.remove(user);
+        removeActiveBranch(user);
+        typingTracker.reset(user.getChatID());
     }
     
     /**
-     * Closes all active sessions for all users who plays now
+     * Closes all active sessions for all users who plays now. <br>
+     * All saves are updated in one transaction.
      */
     public void closeAllSessions() {
-        List<User> activePlayers = activePlayerData.keySet().stream()
-                .collect(Collectors.toList());
+        saveSessions(stopAllSessions());
+    }
+    
+    /**
+     * Saves progress of given sessions in one transaction.
+     * @param sessions - map of users and branches they are on
+     * @return true if all saves were updated, otherwise false
+     */
+    public boolean saveSessions(Map<User, QuestBranch> sessions) {
+        Map<Long, SaveModel> saves = new HashMap<>();
+        
+        sessions.forEach((user, branch) -> saves.put(user.getChatID(), new SaveModel(0, branch.getId(), branch.getQuestID())));
+        
+        if(!databaseManager.updateSaves(saves)) {
+            return false;
+        }
+        
+        if(journal != null) {
+            saves.keySet().forEach(journal::recordCheckpoint);
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Removes all users from active players and cancels their pending message sendings. <br>
+     * Progress is NOT saved by this method.
+     * @return map of removed users and branches they were on
+     */
+    public Map<User, QuestBranch> stopAllSessions() {
+        return stopSessions(user -> true);
+    }
+    
+    /**
+     * Removes matching users from active players and cancels their pending message sendings. <br>
+     * Progress is NOT saved by this method.
+     * @param filter - tells which users should be removed
+     * @return map of removed users and branches they were on
+     */
+    public Map<User, QuestBranch> stopSessions(Predicate<User> filter) {
+        Map<User, QuestBranch> sessions = new HashMap<>();
+        
+        activePlayerData.forEach((user, branch) -> {
+            if(filter.test(user)) {
+                sessions.put(user, branch);
+            }
+        });
+        
+        sessions.keySet().forEach(user -> {
+            cancelTasks(user);
+            removeActiveBranch(user);
+            typingTracker.reset(user.getChatID());
+        });
+        
+        return sessions;
+    }
+    
+    /**
+     * Stops scheduler of message sendings, closes session journal and choice log.
+     * Nothing can be sent after this.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        questRegistry.shutdown();
+        
+        if(journal != null) {
+            journal.close();
+        }
         
-        activePlayers.forEach(this::closeSession);
+        if(analytics != null) {
+            analytics.close();
+        }
     }
     
     public Set<User> getActivePlayers() {
         return activePlayerData.keySet();
     }
     
+    /**
+     * Gets copy of active sessions. Sessions are not stopped.
+     * @return map of active users and branches they are on
+     */
+    public Map<User, QuestBranch> getSessions() {
+        return new HashMap<>(activePlayerData);
+    }
+    
+    /**
+     * @return count of scheduled message sendings which were not done yet
+     */
+    public int getPendingSendings() {
+        return scheduler.getQueue().size();
+    }
+    
     
     public void sendBranch(User user, QuestBranch branch) {
+        // Sendings of previous branch are not actual anymore
+        cancelTasks(user);
+        
         // saves or updates current branch
-        activePlayerData.put(user, branch);
-        // Gets branch lines
-        List<String> lines = branch.getLines();
+        setActiveBranch(user, branch);
+        
+        // Keeps progress in case the bot crashes before the session is closed
+        if(journal != null) {
+            journal.recordTransition(user.getChatID(), branch.getQuestID(), branch.getId());
+        }
         int cooldownSec = config.getInt("message-cooldown");
         long chatID = user.getChatID();
         
-        ChatAction action = ChatAction.typing;
-        // Removes keyboard if it was sended by previous command
-        Keyboard replKeyboardMarkup = new ReplyKeyboardRemove();
+        // Sending branch lines
+        int steps = sendLines(user, branch, cooldownSec);
         
-        // Sending typing status
-        SendChatAction requestTyping = new SendChatAction(chatID, action);
-        bot.execute(requestTyping);
+        // This delay sets timer for the time when last line will be sended
+        int lastLineTiming = cooldownSec * (steps + 1) * 1000;
         
-        // Now sending each line with cooldown delay
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i);
-            
-            // Sending line goes first
+        // If this branch provides achievement will give it after sending all lines
+        if(branch instanceof ProvideAchievement) {
             runTaskTimer(() -> {
-                SendMessage requestMessage = new SendMessage(chatID, line);
+                ProvideAchievement achievementBranch = (ProvideAchievement) branch;
+                Achievement achievement = achievementBranch.getAchievement();
                 
-                requestMessage.parseMode(ParseMode.HTML);
-                requestMessage.replyMarkup(replKeyboardMarkup);
-                bot.execute(requestMessage);
-            }, cooldownSec * (i + 1) * 1000, user);
-            
-            // If it was not last line sending "typing" status again
-            if(i + 1 != lines.size()) {
-                runTaskTimer(() -> {
-                    bot.execute(requestTyping);
-                }, cooldownSec * (i + 1) * 1000 + 50, user);
+                // If user already has this achievement no reason to give another one
+                if(user.hasAchievement(achievement)) {
+                    return;
+                }
                 
-                continue;
-            }
+                // Notice is not sent if the achievement is lost, the branch gives it again next time
+                if(achievementManager.addAchievement(user, achievement)) {
+                    sendAchievementNotice(chatID, achievement);
+                }
+            }, lastLineTiming, user);
             
-            // This delay sets timer for the time when last line will be sended
-            int lastLineTiming = cooldownSec * (lines.size() + 1) * 1000;
+            ProvideAchievement achievementBranch = (ProvideAchievement) branch;
+            Achievement achievement = achievementBranch.getAchievement();
             
-            // If this branch provides achievement will give it after sending all lines
-            if(branch instanceof ProvideAchievement) {
-                runTaskTimer(() -> {
-                    ProvideAchievement achievementBranch = (ProvideAchievement) branch;
-                    Achievement achievement = achievementBranch.getAchievement();
-                    
-                    // If user already has this achievement no reason to give another one
-                    if(user.hasAchievement(achievement)) {
-                        return;
-                    }
-                    
-                    achievementManager.addAchievement(user, achievement);
-                    sendAchievementNotice(chatID, achievement);
-                }, lastLineTiming, user);
+            // For showing achievement notify necessery extra time
+            if(!user.hasAchievement(achievement)) {
+                lastLineTiming = cooldownSec * (steps + 2) * 1000; //Increase multiplyer by 1 for extra time
+            }
+        }
+        
+        // If ending returns user to main menu. Game is over.
+        if(branch instanceof Ending) {
+            runTaskTimer(() -> {
+                // Typing status which was not sent yet is not needed anymore
+                cancelTasks(user);
+                removeActiveBranch(user);
+                typingTracker.reset(chatID);
                 
-                ProvideAchievement achievementBranch = (ProvideAchievement) branch;
-                Achievement achievement = achievementBranch.getAchievement();
+                // User complete the quest. He don't need saves anymore
+                databaseManager.clearQuestSave(user.getUserSave());
                 
-             // For showing achievement notify necessery extra time
-                if(!user.hasAchievement(achievement)) {
-                    lastLineTiming = cooldownSec * (lines.size() + 2) * 1000; //Increase multiplyer by 1 for extra time
+                if(journal != null) {
+                    journal.recordCheckpoint(chatID);
                 }
-            }
-            
-            // If ending returns user to main menu. Game is over.
-            if(branch instanceof Ending) {
-                runTaskTimer(() -> {
-                    activePlayerData.remove(user);
-                    
-                    // User complete the quest. He don't need saves anymore
-                    databaseManager.clearQuestSave(user.getUserSave());
-                    updateProvider.returnToMainMenu(user);
-                }, lastLineTiming, user);
                 
-                return;
-            }
+                updateProvider.returnToMainMenu(user);
+            }, lastLineTiming, user);
             
-            // If branch provides answer options (it always does except ending branches),
-            // send asnwer options
-            if(branch instanceof ProvideAnswers) {
-                runTaskTimer(() -> {
-                    sendAnswerOptions(chatID, (ProvideAnswers) branch);
-                }, lastLineTiming, user);
-            }
+            return;
+        }
+        
+        // If branch provides answer options (it always does except ending branches),
+        // send asnwer options
+        if(branch instanceof ProvideAnswers) {
+            runTaskTimer(() -> {
+                sendAnswerOptions(user, (ProvideAnswers) branch, null);
+            }, lastLineTiming, user);
         }
     }
     
@@ -257,42 +524,129 @@ public class QuestSessionManager {
             return;
         }
         
-        // Can cast to ProvideAnswers because it's handling method so I sure that this message is answer option.
-        // In other cases I just return.
-        ProvideAnswers currentBrunch;
+        QuestBranch branch = activePlayerData.get(user);
         
-        try {
-            currentBrunch = (ProvideAnswers) activePlayerData.get(user);
-        } catch (ClassCastException ignored) {
+        // Only branches with answer options wait for answers
+        if(!(branch instanceof ProvideAnswers)) {
             return;
         }
         
-        if(currentBrunch == null) {
+        chooseAnswer(user, branch, answerNumber - 1);
+    }
+    
+    /**
+     * Handles tap on inline answer button. <br>
+     * The tap is accepted only if the button belongs to the current branch of the player
+     * and to the last options message, so double taps and taps on old messages are ignored.
+     * @param query - callback query of the button
+     * @param user - who tapped the button
+     */
+    public void handleCallback(CallbackQuery query, User user) {
+        QuestBranch branch = activePlayerData.get(user);
+        int[] answer = parseCallbackData(query.data());
+        Message message = query.message();
+        
+        boolean actual = branch instanceof ProvideAnswers
+                && answer != null
+                && answer[0] == branch.getIntId()
+                && message != null
+                && optionMessages.remove(user, message.messageId());
+        
+        if(!actual) {
+            bot.execute(new AnswerCallbackQuery(query.id()).text(messages.getString("quest.answer-options.outdated")));
             return;
         }
         
-        AnswerOption answerOption;
+        AnswerOption answerOption = getAnswerOption((ProvideAnswers) branch, answer[1]);
         
-        try {
-            answerOption = currentBrunch.getAnswerOption(answerNumber - 1);
-        } catch (IndexOutOfBoundsException exception) {
+        // Stops the loading animation on the button
+        bot.execute(new AnswerCallbackQuery(query.id()));
+        
+        if(answerOption == null) {
             return;
         }
         
+        // Options message shows only the choice now and loses its buttons
+        String choice = ANSWER_OPTION_HEADER + "\n" + (answer[1] + 1) + ". " + answerOption.getText();
+        EditMessageText request = new EditMessageText(message.chat().id(), message.messageId(), choice);
+        request.parseMode(ParseMode.HTML);
+        
+        bot.execute(request);
+        
+        chooseAnswer(user, branch, answer[1]);
+    }
+    
+    // Sends the player to the branch of the answer
+    private void chooseAnswer(User user, QuestBranch branch, int answerIndex) {
+        AnswerOption answerOption = getAnswerOption((ProvideAnswers) branch, answerIndex);
+        
+        if(answerOption == null) {
+            return;
+        }
+        
+        // Paths are collected for the default quest only
+        if(analytics != null && branch.getQuestID().equals(questRegistry.getDefaultQuestID())) {
+            analytics.record(user.getChatID(), branch.getIntId(), answerIndex);
+        }
+        
         // Now I can send user to next branch according to his choice.
         String link = answerOption.getNextBranchID();
-        QuestBranch nextBranch = branchContainer.getBranch(link);
+        QuestBranch nextBranch = questRegistry.getBranch(branch.getQuestID(), link);
+        
+        if(nextBranch == null) {
+            Logger.error(user.getChatID(), branch.getId(), "Failed to get branch by id '{}' in quest '{}'.", link, branch.getQuestID());
+            return;
+        }
         
         sendBranch(user, nextBranch);
     }
     
+    // Puts the user on the branch. Quest of the branch is held while somebody plays it
+    private void setActiveBranch(User user, QuestBranch branch) {
+        QuestBranch previous = activePlayerData.put(user, branch);
+        
+        if(previous != null && previous.getQuestID().equals(branch.getQuestID())) {
+            return;
+        }
+        
+        questRegistry.acquire(branch.getQuestID());
+        
+        if(previous != null) {
+            questRegistry.release(previous.getQuestID());
+        }
+    }
+    
+    // Removes the user from active players and stops holding the quest
+    private void removeActiveBranch(User user) {
+        QuestBranch removed = activePlayerData.remove(user);
+        
+        if(removed != null) {
+            questRegistry.release(removed.getQuestID());
+        }
+    }
+    
+    private AnswerOption getAnswerOption(ProvideAnswers branch, int index) {
+        try {
+            return branch.getAnswerOption(index);
+        } catch (IndexOutOfBoundsException exception) {
+            return null;
+        }
+    }
+    
     // I'm too lazy to comment this algorithm.
     // It's pretty simple to understand
-    private void sendAnswerOptions(long chatID, ProvideAnswers branch) {
+    // Prefix is an optional text placed before the answer options in the same message
+    private void sendAnswerOptions(User user, ProvideAnswers branch, String prefix) {
         String message = ANSWER_OPTION_HEADER + "\n";
+        
+        if(prefix != null) {
+            message = prefix + "\n\n" + message;
+        }
         List<AnswerOption> answerOptions = branch.getAnswerOptions();
         
         KeyboardButton[] keyboard = new KeyboardButton[answerOptions.size()];
+        InlineKeyboardButton[] inlineKeyboard = new InlineKeyboardButton[answerOptions.size()];
+        int branchIntId = ((QuestBranch) branch).getIntId();
         
         // For each answer option
         for (int i = 0; i < answerOptions.size(); i++) {
@@ -302,15 +656,133 @@ public class QuestSessionManager {
             
             message = message + answerOptionNumber + "\n";
             keyboard[i] = new KeyboardButton("" + number);
+            inlineKeyboard[i] = new InlineKeyboardButton("" + number).callbackData(createCallbackData(branchIntId, i));
         }
         
-        Keyboard replyKeyboardMarkup = new ReplyKeyboardMarkup(keyboard).resizeKeyboard(true);
-        SendMessage request = new SendMessage(chatID, message);
+        Keyboard replyKeyboardMarkup = ANSWER_MODE == AnswerMode.INLINE
+                ? new InlineKeyboardMarkup(inlineKeyboard)
+                : new ReplyKeyboardMarkup(keyboard).resizeKeyboard(true);
+        
+        SendMessage request = new SendMessage(user.getChatID(), message);
         
         request.parseMode(ParseMode.HTML);
         request.replyMarkup(replyKeyboardMarkup);
         
-        bot.execute(request);
+        SendResponse response = bot.execute(request);
+        typingTracker.reset(user.getChatID());
+        
+        if(ANSWER_MODE == AnswerMode.INLINE && response != null && response.isOk()) {
+            optionMessages.put(user, response.message().messageId());
+        }
+    }
+    
+    // Branch int id and index of the answer in base 36, for example 'k2x9ab:1'.
+    // Telegram allows up to 64 bytes of callback data
+    private String createCallbackData(int branchIntId, int answerIndex) {
+        return Integer.toString(branchIntId, 36) + ":" + Integer.toString(answerIndex, 36);
+    }
+    
+    // Returns branch int id and answer index or null if data is not an answer
+    private int[] parseCallbackData(String data) {
+        if(data == null) {
+            return null;
+        }
+        
+        int separator = data.indexOf(':');
+        
+        if(separator < 0) {
+            return null;
+        }
+        
+        try {
+            return new int[] {
+                    Integer.parseInt(data.substring(0, separator), 36),
+                    Integer.parseInt(data.substring(separator + 1), 36)
+            };
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+    
+    // Schedules sending of branch lines with cooldown delays depending on render mode.
+    // Returns count of delays taken by the lines
+    private int sendLines(User user, QuestBranch branch, int cooldownSec) {
+        RenderMode mode = branch.getRenderMode() == null ? DEFAULT_RENDER_MODE : branch.getRenderMode();
+        List<String> lines = mode == RenderMode.MERGE ? mergeLines(branch.getLines()) : branch.getLines();
+        long chatID = user.getChatID();
+        
+        // Removes keyboard if it was sended by previous command
+        Keyboard replKeyboardMarkup = new ReplyKeyboardRemove();
+        
+        // Sending typing status
+        showTyping(chatID);
+        
+        int calls = 1;
+        
+        // In 'edit' mode all lines go to one message
+        EditedMessage editedMessage = new EditedMessage(chatID, replKeyboardMarkup);
+        
+        // Now sending each line with cooldown delay
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int delay = cooldownSec * (i + 1) * 1000;
+            calls++;
+            
+            if(mode == RenderMode.EDIT) {
+                runTaskTimer(() -> editedMessage.append(line), delay, user);
+                continue;
+            }
+            
+            boolean lastLine = i + 1 == lines.size();
+            
+            // Line and the next "typing" status go in one task,
+            // so the status is always sent after the message has hidden the previous one
+            runTaskTimer(() -> {
+                SendMessage requestMessage = new SendMessage(chatID, line);
+                
+                requestMessage.parseMode(ParseMode.HTML);
+                requestMessage.replyMarkup(replKeyboardMarkup);
+                bot.execute(requestMessage);
+                typingTracker.reset(chatID);
+                
+                // If it was not last line sending "typing" status again
+                if(!lastLine) {
+                    showTyping(chatID);
+                }
+            }, delay, user);
+            
+            if(!lastLine) {
+                calls++;
+            }
+        }
+        
+        renderMetrics.record(branch, mode, calls);
+        return lines.size();
+    }
+    
+    // Joins consecutive lines while they fit the merge length. Longer lines stay as they are
+    private List<String> mergeLines(List<String> lines) {
+        List<String> merged = new ArrayList<>();
+        String current = null;
+        
+        for (String line : lines) {
+            if(current != null && current.length() + LINE_SEPARATOR.length() + line.length() <= MERGE_LENGTH) {
+                current = current + LINE_SEPARATOR + line;
+                continue;
+            }
+            
+            if(current != null) {
+                merged.add(current);
+            }
+            
+            current = line;
+        }
+        
+        if(current != null) {
+            merged.add(current);
+        }
+        
+        return merged;
     }
     
     private void sendAchievementNotice(long chatID, Achievement achievement) {
@@ -325,25 +797,232 @@ public class QuestSessionManager {
         request.parseMode(ParseMode.HTML);
         
         bot.execute(request);
+        typingTracker.reset(chatID);
+    }
+    
+    // Sends 'typing' status unless the previous one is still visible
+    private void showTyping(long chatID) {
+        if(typingTracker.tryShow(chatID)) {
+            bot.execute(new SendChatAction(chatID, ChatAction.typing));
+        }
+    }
+    
+    private SessionJournal createJournal(Configuration config) {
+        if(!config.containsSection("journal") || !config.getBoolean("journal.enabled")) {
+            return null;
+        }
+        
+        String fileName = config.getString("journal.file-name");
+        int size = config.getInt("journal.size") * 1024;
+        int syncInterval = Math.max(1, config.getInt("journal.sync-interval"));
+        int compactInterval = Math.max(1, config.getInt("journal.compact-interval"));
+        
+        try {
+            return new SessionJournal(fileName, size, syncInterval, compactInterval);
+        } catch (IOException e) {
+            Logger.error("Failed to open session journal. Progress will be saved only on session close: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private PathAnalytics createAnalytics(Configuration config) {
+        if(!config.containsSection("analytics") || !config.getBoolean("analytics.enabled")) {
+            return null;
+        }
+        
+        String fileName = config.getString("analytics.file-name");
+        int flushInterval = Math.max(1, config.getInt("analytics.flush-interval"));
+        int compactInterval = config.containsSection("analytics.compact-interval")
+                ? Math.max(1, config.getInt("analytics.compact-interval"))
+                : 600;
+        
+        if(!questRegistry.hasQuest(questRegistry.getDefaultQuestID())) {
+            Logger.warn("Path analytics is disabled because there is no default quest.");
+            return null;
+        }
+        
+        try {
+            return new PathAnalytics(fileName, questRegistry, questRegistry.getDefaultQuestID(), flushInterval, compactInterval);
+        } catch (IOException e) {
+            Logger.error("Failed to start path analytics: {}", e.getMessage());
+            return null;
+        }
     }
     
-    private Thread runTaskTimer(Runnable task, int delay, User user) {
-        Thread thread =  new Thread(() -> {
-           try {
-               Thread.sleep(delay);
-               
-               if(!activePlayerData.containsKey(user)) {
-                   return;
-               }
-               
-               task.run();
-           } catch (InterruptedException e) {
-               e.printStackTrace();
-           }
+    // Saves progress left in the journal after crash to the database
+    private void replayJournal() {
+        if(journal == null) {
+            return;
+        }
+        
+        Map<Long, SessionJournal.Entry> pending = journal.getPending();
+        
+        if(pending.isEmpty()) {
+            return;
+        }
+        
+        Map<Long, SaveModel> saves = new HashMap<>();
+        
+        pending.forEach((chatID, entry) -> {
+            QuestBranch branch = questRegistry.getBranch(entry.getQuest(), entry.getBranch());
+            
+            if(branch == null) {
+                Logger.error(chatID, entry.getBranch(), "Failed to restore progress: no such branch in quest '{}'", entry.getQuest());
+                return;
+            }
+            
+            saves.put(chatID, new SaveModel(0, branch.getId(), entry.getQuest()));
         });
         
-        thread.start();
+        // If database is not available records stay in journal till the next start
+        if(!databaseManager.updateSaves(saves)) {
+            return;
+        }
+        
+        journal.checkpointAll();
+        Logger.info("Restored progress of {} players from session journal.", saves.size());
+    }
+    
+    private ResumeMode getDefaultResumeMode(Configuration config) {
+        if(!config.containsSection("resume-mode")) {
+            return ResumeMode.OPTIONS;
+        }
+        
+        String key = config.getString("resume-mode");
+        ResumeMode mode = ResumeMode.getByKey(key);
+        
+        if(mode == null) {
+            Logger.warn("Unknown resume mode '{}' in config.yml. Using '{}'.", key, ResumeMode.OPTIONS.getKey());
+            return ResumeMode.OPTIONS;
+        }
+        
+        return mode;
+    }
+    
+    private RenderMode getDefaultRenderMode(Configuration config) {
+        if(!config.containsSection("render-mode")) {
+            return RenderMode.SEPARATE;
+        }
+        
+        String key = config.getString("render-mode");
+        RenderMode mode = RenderMode.getByKey(key);
         
-        return thread;
+        if(mode == null) {
+            Logger.warn("Unknown render mode '{}' in config.yml. Using '{}'.", key, RenderMode.SEPARATE.getKey());
+            return RenderMode.SEPARATE;
+        }
+        
+        return mode;
+    }
+    
+    private AnswerMode getAnswerMode(Configuration config) {
+        if(!config.containsSection("answer-mode")) {
+            return AnswerMode.KEYBOARD;
+        }
+        
+        String key = config.getString("answer-mode");
+        AnswerMode mode = AnswerMode.getByKey(key);
+        
+        if(mode == null) {
+            Logger.warn("Unknown answer mode '{}' in config.yml. Using '{}'.", key, AnswerMode.KEYBOARD.getKey());
+            return AnswerMode.KEYBOARD;
+        }
+        
+        return mode;
+    }
+    
+    private void runTaskTimer(Runnable task, int delay, User user) {
+        ScheduledFuture<?> future = scheduler.schedule(() -> {
+            if(!activePlayerData.containsKey(user)) {
+                return;
+            }
+            
+            try {
+                task.run();
+            } catch (RuntimeException exception) {
+                QuestBranch branch = activePlayerData.get(user);
+                Logger.error(user.getChatID(), branch == null ? null : branch.getId(), "Failed to send quest message", exception);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        
+        scheduledTasks.computeIfAbsent(user, key -> Collections.synchronizedList(new ArrayList<>()))
+                .add(future);
+    }
+    
+    // Cancels all sendings which were not done yet.
+    // Answer buttons already sent can't be used after this
+    private void cancelTasks(User user) {
+        optionMessages.remove(user);
+        
+        List<ScheduledFuture<?>> tasks = scheduledTasks.remove(user);
+        
+        if(tasks == null) {
+            return;
+        }
+        
+        synchronized (tasks) {
+            tasks.forEach(task -> task.cancel(false));
+        }
+    }
+    
+    private ScheduledThreadPoolExecutor createScheduler(Configuration config) {
+        int threads = 4;
+        
+        if(config.containsSection("quest-threads")) {
+            threads = Math.max(1, config.getInt("quest-threads"));
+        }
+        
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, "quest-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        // Cancelled sendings should not stay in the queue until their time comes
+        scheduler.setRemoveOnCancelPolicy(true);
+        
+        return scheduler;
+    }
+    
+    // Message of 'edit' mode. Each next line is added to its text by editing
+    private class EditedMessage {
+        
+        private final long chatID;
+        private final Keyboard replyMarkup;
+        
+        private Integer messageID;
+        private String text;
+        
+        private EditedMessage(long chatID, Keyboard replyMarkup) {
+            this.chatID = chatID;
+            this.replyMarkup = replyMarkup;
+        }
+        
+        private synchronized void append(String line) {
+            // Too long text continues in a new message
+            if(messageID != null && text.length() + LINE_SEPARATOR.length() + line.length() <= MAX_MESSAGE_LENGTH) {
+                String newText = text + LINE_SEPARATOR + line;
+                
+                EditMessageText request = new EditMessageText(chatID, messageID, newText);
+                request.parseMode(ParseMode.HTML);
+                
+                BaseResponse response = bot.execute(request);
+                
+                if(response != null && response.isOk()) {
+                    this.text = newText;
+                    return;
+                }
+            }
+            
+            SendMessage request = new SendMessage(chatID, line);
+            request.parseMode(ParseMode.HTML);
+            request.replyMarkup(replyMarkup);
+            
+            SendResponse response = bot.execute(request);
+            typingTracker.reset(chatID);
+            
+            this.text = line;
+            this.messageID = response != null && response.isOk() ? response.message().messageId() : null;
+        }
     }
 }
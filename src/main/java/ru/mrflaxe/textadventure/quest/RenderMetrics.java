@@ -0,0 +1,108 @@
+package ru.mrflaxe.textadventure.quest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+import ru.mrflaxe.textadventure.quest.message.branch.RenderMode;
+
+/**
+ * Counts Bot API calls made to show branches. <br>
+ * Each rendering is compared with 'separate' mode, where every line costs a message and a 'typing' status,
+ * so the report shows how many calls other render modes saved.
+ * Calls are counted when the branch is scheduled, sendings cancelled because the player left are counted too.
+ */
+public class RenderMetrics {
+    
+    // 'quest:branch' and its counters
+    private final Map<String, BranchCounters> branches;
+    
+    public RenderMetrics() {
+        this.branches = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Records one rendering of the branch.
+     * @param branch - rendered branch
+     * @param mode - used render mode
+     * @param calls - count of API calls for the lines
+     */
+    public void record(QuestBranch branch, RenderMode mode, int calls) {
+        String key = branch.getQuestID() + ":" + branch.getId();
+        BranchCounters counters = branches.computeIfAbsent(key, id -> new BranchCounters(mode));
+        
+        counters.mode = mode;
+        counters.renders.increment();
+        counters.calls.add(calls);
+        counters.separateCalls.add(getSeparateCalls(branch.getLines().size()));
+    }
+    
+    /**
+     * Builds human readable report for console output
+     * @param limit - max count of branches, the ones which saved more calls go first
+     * @return report text
+     */
+    public String report(int limit) {
+        List<Map.Entry<String, BranchCounters>> sorted = new ArrayList<>(branches.entrySet());
+        sorted.sort((first, second) -> Long.compare(second.getValue().getSaved(), first.getValue().getSaved()));
+        
+        long calls = 0;
+        long separateCalls = 0;
+        
+        for (Map.Entry<String, BranchCounters> entry : sorted) {
+            calls += entry.getValue().calls.sum();
+            separateCalls += entry.getValue().separateCalls.sum();
+        }
+        
+        StringBuilder report = new StringBuilder("Branch rendering: " + calls + " API calls, "
+                + separateCalls + " in separate mode, saved " + (separateCalls - calls)
+                + " (" + (separateCalls == 0 ? 0 : (separateCalls - calls) * 100 / separateCalls) + "%)");
+        
+        for (int i = 0; i < sorted.size() && i < limit; i++) {
+            BranchCounters counters = sorted.get(i).getValue();
+            long renders = counters.renders.sum();
+            
+            report.append("\n").append(sorted.get(i).getKey())
+                    .append(" [").append(counters.mode.getKey()).append("]: ")
+                    .append(renders).append(" renders, ")
+                    .append(String.format("%.1f", (double) counters.calls.sum() / renders)).append(" calls per render, saved ")
+                    .append(counters.getSaved());
+        }
+        
+        return report.toString();
+    }
+    
+    /**
+     * Count of calls needed to show lines in separate mode:
+     * 'typing' status before each line and the line itself.
+     * @param lines - count of lines
+     * @return count of calls
+     */
+    public static int getSeparateCalls(int lines) {
+        return lines * 2;
+    }
+    
+    private static class BranchCounters {
+        
+        private final LongAdder renders;
+        private final LongAdder calls;
+        private final LongAdder separateCalls;
+        
+        // Mode of the last rendering
+        private volatile RenderMode mode;
+        
+        private BranchCounters(RenderMode mode) {
+            this.renders = new LongAdder();
+            this.calls = new LongAdder();
+            this.separateCalls = new LongAdder();
+            this.mode = mode;
+        }
+        
+        private long getSaved() {
+            return separateCalls.sum() - calls.sum();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.mrflaxe.textadventure.quest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers when 'typing' status was shown in each chat. <br>
+ * Telegram shows the status for 5 seconds or until the bot sends a message to the chat,
+ * so a new status is not needed while the previous one is still visible.
+ */
+public class TypingTracker {
+    
+    // A bit less than 5 seconds, so the status doesn't blink before it is refreshed
+    private static final long VISIBLE_TIME = TimeUnit.MILLISECONDS.toNanos(4500);
+    
+    // Chat id and time when the status was sent
+    private final Map<Long, Long> shownAt;
+    
+    private final LongAdder sent;
+    private final LongAdder skipped;
+    
+    public TypingTracker() {
+        this.shownAt = new ConcurrentHashMap<>();
+        this.sent = new LongAdder();
+        this.skipped = new LongAdder();
+    }
+    
+    /**
+     * Checks if the status should be sent to the chat and remembers the sending.
+     * @param chatID - chat to show the status in
+     * @return true if the status should be sent, false if it is still visible
+     */
+    public boolean tryShow(long chatID) {
+        long now = System.nanoTime();
+        boolean[] show = new boolean[1];
+        
+        shownAt.compute(chatID, (id, last) -> {
+            if(last != null && now - last < VISIBLE_TIME) {
+                return last;
+            }
+            
+            show[0] = true;
+            return now;
+        });
+        
+        if(show[0]) {
+            sent.increment();
+        } else {
+            skipped.increment();
+        }
+        
+        return show[0];
+    }
+    
+    /**
+     * Forgets the status of the chat. Should be called when a message is sent there,
+     * because clients hide the status when a message arrives, and when the session ends.
+     * @param chatID - chat id
+     */
+    public void reset(long chatID) {
+        shownAt.remove(chatID);
+    }
+    
+    /**
+     * Builds human readable report for console output
+     * @return report text
+     */
+    public String report() {
+        long sent = this.sent.sum();
+        long skipped = this.skipped.sum();
+        long total = sent + skipped;
+        
+        return "Typing status: " + sent + " sent, " + skipped + " skipped as still visible ("
+                + (total == 0 ? 0 : skipped * 100 / total) + "% of " + total + " requests), "
+                + shownAt.size() + " chats tracked";
+    }
+}
@@ -0,0 +1,308 @@
+package ru.mrflaxe.textadventure.quest.analytics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Append-only columnar log of answer choices. <br>
+ * Choices are written by blocks. Each block starts with magic number and count of choices,
+ * then goes the column of chat ids, the column of branch int ids, the column of option indexes
+ * and the column of timestamps.
+ * A block which was not written completely is ignored on reading.
+ * <br><br>
+ * After compaction the log starts with a snapshot of statistics instead of old choices:
+ * magic number, length of the snapshot and its data. Blocks of new choices follow the snapshot.
+ */
+public class ChoiceLog {
+    
+    public static final int BLOCK_SIZE = 1024;
+    
+    private static final int BLOCK_MAGIC = 0x49464342; // IFCB
+    private static final int SNAPSHOT_MAGIC = 0x49464353; // IFCS
+    private static final int HEADER_SIZE = 8;
+    private static final int SNAPSHOT_HEADER_SIZE = 12;
+    private static final int CHOICE_SIZE = 8 + 4 + 2 + 8;
+    
+    private final Path file;
+    
+    // Columns of the block which is not written yet
+    private final long[] chatIDs;
+    private final int[] branches;
+    private final short[] options;
+    private final long[] timestamps;
+    private int count;
+    
+    private final ByteBuffer buffer;
+    private FileChannel channel;
+    
+    // Length of the file without damaged tail. Negative until the file is read
+    private long validLength;
+    
+    public ChoiceLog(String fileName) {
+        this.file = Paths.get(fileName).toAbsolutePath();
+        
+        this.chatIDs = new long[BLOCK_SIZE];
+        this.branches = new int[BLOCK_SIZE];
+        this.options = new short[BLOCK_SIZE];
+        this.timestamps = new long[BLOCK_SIZE];
+        
+        this.buffer = ByteBuffer.allocate(HEADER_SIZE + BLOCK_SIZE * CHOICE_SIZE);
+        this.validLength = -1;
+    }
+    
+    /**
+     * Reads snapshot and all choices written after it from the log file.
+     * @param snapshot - loads the snapshot if the log has one
+     * @param consumer - receives every choice in order they were written
+     * @return count of read choices, not including the snapshot
+     * @throws IOException if file can't be read
+     */
+    public long read(SnapshotReader snapshot, ChoiceConsumer consumer) throws IOException {
+        if(!Files.isRegularFile(file)) {
+            validLength = 0;
+            return 0;
+        }
+        
+        long read = 0;
+        long length = 0;
+        
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            length = readSnapshot(input, snapshot);
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE * CHOICE_SIZE);
+            
+            while(true) {
+                header.clear();
+                
+                if(!readFully(input, header)) {
+                    break;
+                }
+                
+                int magic = header.getInt();
+                int size = header.getInt();
+                
+                if(magic != BLOCK_MAGIC || size <= 0 || size > BLOCK_SIZE) {
+                    Logger.warn("Choice log {} is damaged after {} choices.", file, read);
+                    break;
+                }
+                
+                block.clear();
+                block.limit(size * CHOICE_SIZE);
+                
+                if(!readFully(input, block)) {
+                    break;
+                }
+                
+                int branchOffset = size * 8;
+                int optionOffset = branchOffset + size * 4;
+                int timestampOffset = optionOffset + size * 2;
+                
+                for (int i = 0; i < size; i++) {
+                    consumer.accept(
+                            block.getLong(i * 8),
+                            block.getInt(branchOffset + i * 4),
+                            block.getShort(optionOffset + i * 2),
+                            block.getLong(timestampOffset + i * 8)
+                            );
+                }
+                
+                read += size;
+                length += HEADER_SIZE + size * CHOICE_SIZE;
+            }
+        }
+        
+        validLength = length;
+        return read;
+    }
+    
+    /**
+     * Opens the log for appending. <br>
+     * If the log was read before, damaged tail found while reading is cut off.
+     * @throws IOException if file can't be opened
+     */
+    public void open() throws IOException {
+        Path parent = file.getParent();
+        
+        if(parent != null) {
+            Files.createDirectories(parent);
+        }
+        
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        
+        if(validLength >= 0 && channel.size() > validLength) {
+            channel.truncate(validLength);
+        }
+        
+        channel.position(channel.size());
+    }
+    
+    /**
+     * Adds choice to the current block. Full block is written right away.
+     * @throws IOException if block can't be written
+     */
+    public void append(long chatID, int branch, int option, long timestamp) throws IOException {
+        chatIDs[count] = chatID;
+        branches[count] = branch;
+        options[count] = (short) option;
+        timestamps[count] = timestamp;
+        count++;
+        
+        if(count == BLOCK_SIZE) {
+            flush();
+        }
+    }
+    
+    /**
+     * Writes current block even if it's not full.
+     * @throws IOException if block can't be written
+     */
+    public void flush() throws IOException {
+        if(count == 0) {
+            return;
+        }
+        
+        buffer.clear();
+        buffer.putInt(BLOCK_MAGIC);
+        buffer.putInt(count);
+        
+        // Column by column
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(chatIDs[i]);
+        }
+        
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(branches[i]);
+        }
+        
+        for (int i = 0; i < count; i++) {
+            buffer.putShort(options[i]);
+        }
+        
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(timestamps[i]);
+        }
+        
+        buffer.flip();
+        
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        
+        count = 0;
+    }
+    
+    /**
+     * Replaces all written choices with the snapshot. <br>
+     * New file is fully written and forced before it replaces the old one,
+     * so after a crash the log has either old choices or the snapshot.
+     * @param snapshot - writes statistics of all choices written before
+     * @throws IOException if the snapshot can't be written
+     */
+    public void compact(SnapshotWriter snapshot) throws IOException {
+        flush();
+        
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        
+        try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Length is known only after the snapshot is written, so the header is written last
+            target.position(SNAPSHOT_HEADER_SIZE);
+            
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(target)));
+            snapshot.save(output);
+            output.flush();
+            
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+            header.putInt(SNAPSHOT_MAGIC);
+            header.putLong(target.position() - SNAPSHOT_HEADER_SIZE);
+            header.flip();
+            
+            while(header.hasRemaining()) {
+                target.write(header, header.position());
+            }
+            
+            target.force(true);
+        }
+        
+        channel.close();
+        
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+    
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+    
+    // Loads the snapshot from the beginning of the log if there is one. Returns its size in bytes
+    private long readSnapshot(FileChannel input, SnapshotReader snapshot) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+        
+        if(!readFully(input, header) || header.getInt() != SNAPSHOT_MAGIC) {
+            input.position(0);
+            return 0;
+        }
+        
+        long size = SNAPSHOT_HEADER_SIZE + header.getLong();
+        
+        if(size > input.size()) {
+            throw new IOException("Snapshot of choice log " + file + " is damaged");
+        }
+        
+        // Stream reads ahead, so position of blocks is set after the snapshot by its length
+        snapshot.load(new DataInputStream(new BufferedInputStream(Channels.newInputStream(input))));
+        input.position(size);
+        
+        return size;
+    }
+    
+    // Fills buffer till its limit and flips it
+    private boolean readFully(FileChannel input, ByteBuffer target) throws IOException {
+        while(target.hasRemaining()) {
+            if(input.read(target) < 0) {
+                return false;
+            }
+        }
+        
+        target.flip();
+        return true;
+    }
+    
+    @FunctionalInterface
+    public interface ChoiceConsumer {
+        
+        void accept(long chatID, int branch, int option, long timestamp);
+    }
+    
+    @FunctionalInterface
+    public interface SnapshotReader {
+        
+        void load(DataInput input) throws IOException;
+    }
+    
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        
+        void save(DataOutput output) throws IOException;
+    }
+}
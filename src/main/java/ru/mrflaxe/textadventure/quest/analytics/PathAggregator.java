@@ -0,0 +1,224 @@
+package ru.mrflaxe.textadventure.quest.analytics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.mrflaxe.textadventure.quest.message.branch.Ending;
+import ru.mrflaxe.textadventure.quest.message.branch.ProvideAnswers;
+import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+import ru.mrflaxe.textadventure.quest.registry.QuestRegistry;
+
+/**
+ * Keeps statistics of answer choices of one quest in memory and updates it by each choice. <br>
+ * Branches are found through the quest registry on every use,
+ * so the aggregator doesn't keep an unloaded quest in memory and sees the quest loaded again.
+ */
+public class PathAggregator {
+    
+    private final QuestRegistry questRegistry;
+    private final String questID;
+    
+    // Branch int id and count of choices of each its answer option
+    private final Map<Integer, long[]> choices;
+    // Chat id and branch int id where the last choice of this player led
+    private final Map<Long, Integer> positions;
+    // Branch int id and count of players who stopped on this branch
+    private final Map<Integer, Long> standing;
+    
+    public PathAggregator(QuestRegistry questRegistry, String questID) {
+        this.questRegistry = questRegistry;
+        this.questID = questID;
+        
+        this.choices = new HashMap<>();
+        this.positions = new HashMap<>();
+        this.standing = new HashMap<>();
+    }
+    
+    /**
+     * Counts one choice.
+     * @param chatID - who made choice
+     * @param branch - int id of branch where choice was made
+     * @param option - index of chosen answer option
+     */
+    public synchronized void apply(long chatID, int branch, int option) {
+        long[] counts = choices.get(branch);
+        
+        if(counts == null || counts.length <= option) {
+            long[] grown = new long[option + 1];
+            
+            if(counts != null) {
+                System.arraycopy(counts, 0, grown, 0, counts.length);
+            }
+            
+            counts = grown;
+            choices.put(branch, counts);
+        }
+        
+        counts[option]++;
+        
+        QuestBranch next = getNextBranch(branch, option);
+        Integer previous;
+        
+        // Player who reached the ending didn't drop off anywhere
+        if(next == null || next instanceof Ending) {
+            previous = positions.remove(chatID);
+        } else {
+            previous = positions.put(chatID, next.getIntId());
+            standing.merge(next.getIntId(), 1L, Long::sum);
+        }
+        
+        if(previous != null) {
+            standing.merge(previous, -1L, Long::sum);
+        }
+    }
+    
+    /**
+     * Writes counts of choices and positions of players. <br>
+     * Drop-offs are not written, they are counted again from positions on loading.
+     * @param output - snapshot output
+     * @throws IOException if snapshot can't be written
+     */
+    public synchronized void save(DataOutput output) throws IOException {
+        output.writeInt(choices.size());
+        
+        for (Map.Entry<Integer, long[]> entry : choices.entrySet()) {
+            long[] counts = entry.getValue();
+            
+            output.writeInt(entry.getKey());
+            output.writeInt(counts.length);
+            
+            for (long count : counts) {
+                output.writeLong(count);
+            }
+        }
+        
+        output.writeInt(positions.size());
+        
+        for (Map.Entry<Long, Integer> entry : positions.entrySet()) {
+            output.writeLong(entry.getKey());
+            output.writeInt(entry.getValue());
+        }
+    }
+    
+    /**
+     * Replaces statistics with the snapshot written by {@link #save(DataOutput)}.
+     * @param input - snapshot input
+     * @throws IOException if snapshot can't be read
+     */
+    public synchronized void load(DataInput input) throws IOException {
+        choices.clear();
+        positions.clear();
+        standing.clear();
+        
+        int branches = input.readInt();
+        
+        for (int i = 0; i < branches; i++) {
+            int branch = input.readInt();
+            long[] counts = new long[input.readInt()];
+            
+            for (int option = 0; option < counts.length; option++) {
+                counts[option] = input.readLong();
+            }
+            
+            choices.put(branch, counts);
+        }
+        
+        int players = input.readInt();
+        
+        // Each player stands on the branch of their position
+        for (int i = 0; i < players; i++) {
+            long chatID = input.readLong();
+            int branch = input.readInt();
+            
+            positions.put(chatID, branch);
+            standing.merge(branch, 1L, Long::sum);
+        }
+    }
+    
+    /**
+     * Gets the most chosen transitions between branches.
+     * @param limit - max count of transitions
+     * @return transitions sorted by count of choices
+     */
+    public synchronized List<PathStat> getHottestPaths(int limit) {
+        List<PathStat> paths = new ArrayList<>();
+        
+        choices.forEach((branch, counts) -> {
+            for (int i = 0; i < counts.length; i++) {
+                if(counts[i] == 0) {
+                    continue;
+                }
+                
+                QuestBranch next = getNextBranch(branch, i);
+                String nextID = next == null ? "?" : next.getId();
+                
+                paths.add(new PathStat(getBranchID(branch), i + 1, nextID, counts[i]));
+            }
+        });
+        
+        return paths.stream()
+                .sorted(Comparator.comparingLong(PathStat::getCount).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Gets branches where the most players stopped and haven't made next choice.
+     * @param limit - max count of branches
+     * @return map of branch id and count of players sorted by count
+     */
+    public synchronized List<Map.Entry<String, Long>> getDropOffs(int limit) {
+        Map<String, Long> dropOffs = new HashMap<>();
+        
+        standing.forEach((branch, count) -> {
+            if(count > 0) {
+                dropOffs.put(getBranchID(branch), count);
+            }
+        });
+        
+        return dropOffs.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+    
+    private QuestBranch getNextBranch(int branch, int option) {
+        QuestBranch questBranch = questRegistry.getBranch(questID, branch);
+        
+        if(!(questBranch instanceof ProvideAnswers)) {
+            return null;
+        }
+        
+        ProvideAnswers answers = (ProvideAnswers) questBranch;
+        
+        if(option >= answers.getAnswerOptions().size()) {
+            return null;
+        }
+        
+        return questRegistry.getBranch(questID, answers.getAnswerOption(option).getNextBranchID());
+    }
+    
+    private String getBranchID(int branch) {
+        QuestBranch questBranch = questRegistry.getBranch(questID, branch);
+        return questBranch == null ? "#" + branch : questBranch.getId();
+    }
+    
+    @Getter
+    @AllArgsConstructor
+    public static class PathStat {
+        
+        private final String from;
+        private final int option;
+        private final String to;
+        private final long count;
+    }
+}
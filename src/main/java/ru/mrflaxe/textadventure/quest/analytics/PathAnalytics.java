@@ -0,0 +1,206 @@
+package ru.mrflaxe.textadventure.quest.analytics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.quest.analytics.PathAggregator.PathStat;
+import ru.mrflaxe.textadventure.quest.registry.QuestRegistry;
+
+/**
+ * Collects answer choices of players. <br>
+ * Recording only puts a choice to the queue, so the answer handling doesn't wait for anything.
+ * Background thread writes choices to {@link ChoiceLog} and updates {@link PathAggregator}.
+ * On start statistics is rebuilt from the log.
+ * From time to time the log is compacted to a snapshot of statistics, so start doesn't replay the whole history.
+ */
+public class PathAnalytics {
+    
+    private static final int QUEUE_CAPACITY = 65536;
+    
+    // Log isn't compacted until it has at least this count of choices after the snapshot
+    private static final long MIN_COMPACT_CHOICES = 10_000;
+    
+    // Wakes the writer on close, so it doesn't wait for the next poll timeout
+    private static final Choice STOP = new Choice(0, 0, 0, 0);
+    
+    private final ChoiceLog log;
+    
+    @Getter
+    private final PathAggregator aggregator;
+    
+    private final BlockingQueue<Choice> queue;
+    private final AtomicLong dropped;
+    private final long flushInterval;
+    private final long compactInterval;
+    private final Thread writer;
+    
+    private volatile boolean running;
+    
+    // Count of choices in the log after the snapshot. Used by writer thread only
+    private long uncompacted;
+    
+    public PathAnalytics(String fileName, QuestRegistry questRegistry, String questID, int flushInterval, int compactInterval) throws IOException {
+        this.log = new ChoiceLog(fileName);
+        this.aggregator = new PathAggregator(questRegistry, questID);
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.dropped = new AtomicLong();
+        this.flushInterval = TimeUnit.SECONDS.toMillis(flushInterval);
+        this.compactInterval = TimeUnit.SECONDS.toMillis(compactInterval);
+        
+        long restored = log.read(aggregator::load, (chatID, branch, option, timestamp) -> aggregator.apply(chatID, branch, option));
+        this.uncompacted = restored;
+        Logger.info("Loaded {} answer choices from choice log.", restored);
+        
+        log.open();
+        
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "path-analytics");
+        writer.setDaemon(true);
+        writer.start();
+    }
+    
+    /**
+     * Records answer choice. Never blocks. <br>
+     * If the queue is full the choice is dropped and counted.
+     * @param chatID - who made choice
+     * @param branch - int id of branch where choice was made
+     * @param option - index of chosen answer option
+     */
+    public void record(long chatID, int branch, int option) {
+        if(!queue.offer(new Choice(chatID, branch, option, System.currentTimeMillis()))) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Stops background thread and writes all queued choices. <br>
+     * The thread isn't interrupted, because interrupt during file writing closes the log.
+     */
+    public void close() {
+        running = false;
+        
+        // If the queue is full the writer is busy anyway and sees the flag after the queue is drained
+        queue.offer(STOP);
+        
+        try {
+            writer.join(flushInterval + TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Builds human readable report for console output
+     * @param limit - max count of lines in each part of the report
+     * @return report text
+     */
+    public String report(int limit) {
+        List<PathStat> paths = aggregator.getHottestPaths(limit);
+        List<Map.Entry<String, Long>> dropOffs = aggregator.getDropOffs(limit);
+        
+        String report = "Hottest paths:";
+        
+        for (int i = 0; i < paths.size(); i++) {
+            PathStat path = paths.get(i);
+            report = report + "\n  " + path.getFrom() + " -[" + path.getOption() + "]-> " + path.getTo() + " : " + path.getCount();
+        }
+        
+        report = report + "\nDrop-offs:";
+        
+        for (int i = 0; i < dropOffs.size(); i++) {
+            Map.Entry<String, Long> dropOff = dropOffs.get(i);
+            report = report + "\n  " + dropOff.getKey() + " : " + dropOff.getValue();
+        }
+        
+        if(dropped.get() > 0) {
+            report = report + "\nDropped choices: " + dropped.get();
+        }
+        
+        return report;
+    }
+    
+    private void writeLoop() {
+        List<Choice> batch = new ArrayList<>();
+        long lastFlush = System.currentTimeMillis();
+        long lastCompact = lastFlush;
+        
+        while(running || !queue.isEmpty()) {
+            try {
+                Choice first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                
+                if(first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+            } catch (InterruptedException ignored) {
+                queue.drainTo(batch);
+            }
+            
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    Choice choice = batch.get(i);
+                    
+                    if(choice == STOP) {
+                        continue;
+                    }
+                    
+                    log.append(choice.chatID, choice.branch, choice.option, choice.timestamp);
+                    aggregator.apply(choice.chatID, choice.branch, choice.option);
+                    uncompacted++;
+                }
+                
+                if(System.currentTimeMillis() - lastFlush >= flushInterval) {
+                    log.flush();
+                    lastFlush = System.currentTimeMillis();
+                }
+            } catch (IOException e) {
+                Logger.error("Failed to write choice log: {}", e.getMessage());
+            }
+            
+            batch.clear();
+            
+            if(running && System.currentTimeMillis() - lastCompact >= compactInterval) {
+                compactIfNeeded();
+                lastCompact = System.currentTimeMillis();
+            }
+        }
+        
+        try {
+            log.close();
+        } catch (IOException e) {
+            Logger.error("Failed to close choice log: {}", e.getMessage());
+        }
+    }
+    
+    // Aggregator already contains all choices written to the log, so its snapshot replaces them
+    private void compactIfNeeded() {
+        if(uncompacted < MIN_COMPACT_CHOICES) {
+            return;
+        }
+        
+        try {
+            log.compact(aggregator::save);
+            uncompacted = 0;
+        } catch (IOException e) {
+            Logger.error("Failed to compact choice log: {}", e.getMessage());
+        }
+    }
+    
+    @AllArgsConstructor
+    private static class Choice {
+        
+        private final long chatID;
+        private final int branch;
+        private final int option;
+        private final long timestamp;
+    }
+}
@@ -0,0 +1,417 @@
+package ru.mrflaxe.textadventure.quest.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Append-only memory mapped journal of branch transitions. <br>
+ * Every transition is written to the mapped file right away, so it survives a crash of the process.
+ * Changes are forced to disk by a background thread once per sync interval for all records at once.
+ * <br><br>
+ * The journal keeps only the progress which is not in the database yet.
+ * When progress is saved to the database a checkpoint record removes the chat from the journal.
+ * <br><br>
+ * Record format: chat id (8 bytes), timestamp (8 bytes), quest id length (2 bytes), branch id length (2 bytes),
+ * quest id and branch id in UTF-8, type (1 byte).
+ * Type is written last, so a record with zero type is not finished and ends the journal.
+ */
+public class SessionJournal {
+    
+    private static final int MAGIC = 0x49465346; // IFSF
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 20;
+    private static final int MAX_ID_LENGTH = 0xFFFF;
+    
+    private static final byte TRANSITION = 1;
+    private static final byte CHECKPOINT = 2;
+    
+    private final Path file;
+    private final int initialSize;
+    
+    // Latest not saved transition of each chat
+    private final Map<Long, Entry> pending;
+    private final ScheduledExecutorService flusher;
+    
+    // Only one compaction at a time. Taken before the journal lock, never inside it
+    private final Object compactLock;
+    
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private boolean dirty;
+    private boolean broken;
+    
+    public SessionJournal(String fileName, int initialSize, int syncInterval, int compactInterval) throws IOException {
+        this.file = Paths.get(fileName).toAbsolutePath();
+        this.initialSize = Math.max(HEADER_SIZE + 4096, initialSize);
+        this.pending = new HashMap<>();
+        this.compactLock = new Object();
+        
+        open();
+        
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        flusher.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::compactIfNeeded, compactInterval, compactInterval, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Gets latest transitions which are not saved in the database.
+     * @return map where key is chat id and value is the latest transition
+     */
+    public synchronized Map<Long, Entry> getPending() {
+        return new HashMap<>(pending);
+    }
+    
+    /**
+     * Writes that the player went to another branch.
+     * @param chatID - player chat id
+     * @param questID - id of the quest
+     * @param branchID - id of the new branch
+     */
+    public synchronized void recordTransition(long chatID, String questID, String branchID) {
+        Entry entry = new Entry(questID, branchID, System.currentTimeMillis());
+        
+        if(entry.questBytes.length > MAX_ID_LENGTH || entry.branchBytes.length > MAX_ID_LENGTH) {
+            Logger.error(chatID, branchID, "Quest or branch id is too long to be written to session journal.");
+            return;
+        }
+        
+        pending.put(chatID, entry);
+        append(chatID, entry, TRANSITION);
+    }
+    
+    /**
+     * Writes that progress of the player is saved in the database.
+     * @param chatID - player chat id
+     */
+    public synchronized void recordCheckpoint(long chatID) {
+        // Nothing to forget
+        if(pending.remove(chatID) == null) {
+            return;
+        }
+        
+        append(chatID, new Entry("", "", System.currentTimeMillis()), CHECKPOINT);
+    }
+    
+    /**
+     * Forgets all progress because all of it is saved in the database now.
+     */
+    public void checkpointAll() {
+        synchronized (this) {
+            pending.clear();
+        }
+        
+        compact();
+    }
+    
+    /**
+     * Forces all written records to disk.
+     */
+    public void sync() {
+        MappedByteBuffer current;
+        
+        synchronized (this) {
+            if(!dirty || broken) {
+                return;
+            }
+            
+            current = buffer;
+            dirty = false;
+        }
+        
+        // Forcing out of lock so players are not waiting for the disk
+        current.force();
+    }
+    
+    /**
+     * Stops background thread, forces records to disk and closes the file.
+     */
+    public void close() {
+        flusher.shutdownNow();
+        sync();
+        
+        synchronized (this) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Logger.error("Failed to close session journal: {}", e.getMessage());
+            }
+        }
+    }
+    
+    private void append(long chatID, Entry entry, byte type) {
+        if(broken) {
+            return;
+        }
+        
+        int size = entry.size();
+        
+        // No space left. The file grows now and the next compaction makes it small again
+        if(position + size > buffer.capacity() && !grow(position + size)) {
+            return;
+        }
+        
+        position = write(buffer, position, chatID, entry, type);
+        dirty = true;
+    }
+    
+    // Maps a bigger part of the file. Nothing is forced here, so it is fine to do under the lock
+    private boolean grow(int required) {
+        long size = Math.max(buffer.capacity() * 2L, required);
+        
+        try {
+            if(size > Integer.MAX_VALUE) {
+                throw new IOException("journal can't be bigger than 2 GB");
+            }
+            
+            this.buffer = channel.map(MapMode.READ_WRITE, 0, size);
+            return true;
+        } catch (IOException e) {
+            broken = true;
+            Logger.error("Failed to grow session journal. Journal is disabled until restart: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    private void compactIfNeeded() {
+        synchronized (this) {
+            int used = position - HEADER_SIZE;
+            int needed = sizeOf(pending);
+            
+            // Not worth rewriting when most of records are still actual
+            if(used <= needed * 2) {
+                return;
+            }
+        }
+        
+        compact();
+    }
+    
+    // Writes pending records to a new file and replaces the journal with it.
+    // The old journal stays untouched until the new one is completely on disk.
+    // The new file is written and forced out of the journal lock, so players are not waiting for the disk.
+    private void compact() {
+        synchronized (compactLock) {
+            Map<Long, Entry> snapshot;
+            
+            synchronized (this) {
+                if(broken) {
+                    return;
+                }
+                
+                snapshot = new HashMap<>(pending);
+            }
+            
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            
+            try {
+                writeCompacted(tempFile, snapshot);
+            } catch (IOException e) {
+                // The old journal is still fine, so compaction is tried again later
+                Logger.error("Failed to compact session journal: {}", e.getMessage());
+                return;
+            }
+            
+            synchronized (this) {
+                replace(tempFile, snapshot);
+            }
+        }
+    }
+    
+    private void writeCompacted(Path tempFile, Map<Long, Entry> snapshot) throws IOException {
+        int size = Math.max(initialSize, HEADER_SIZE + sizeOf(snapshot) * 2);
+        
+        Files.deleteIfExists(tempFile);
+        
+        try (FileChannel tempChannel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            
+            MappedByteBuffer tempBuffer = tempChannel.map(MapMode.READ_WRITE, 0, size);
+            writeHeader(tempBuffer);
+            
+            int tempPosition = HEADER_SIZE;
+            
+            for (Map.Entry<Long, Entry> set : snapshot.entrySet()) {
+                tempPosition = write(tempBuffer, tempPosition, set.getKey(), set.getValue(), TRANSITION);
+            }
+            
+            tempBuffer.force();
+        }
+    }
+    
+    // Swaps the journal with the compacted file and writes records made while the file was written
+    private void replace(Path tempFile, Map<Long, Entry> snapshot) {
+        Map<Long, Entry> current = new HashMap<>(pending);
+        
+        try {
+            channel.close();
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            open();
+        } catch (IOException e) {
+            broken = true;
+            Logger.error("Failed to compact session journal. Journal is disabled until restart: {}", e.getMessage());
+            return;
+        }
+        
+        current.forEach((chatID, entry) -> {
+            if(snapshot.get(chatID) != entry) {
+                pending.put(chatID, entry);
+                append(chatID, entry, TRANSITION);
+            }
+        });
+        
+        snapshot.keySet().stream()
+                .filter(chatID -> !current.containsKey(chatID))
+                .forEach(this::recordCheckpoint);
+    }
+    
+    // Maps journal file and reads records from it
+    private synchronized void open() throws IOException {
+        boolean exists = Files.isRegularFile(file);
+        long size = exists ? Math.max(Files.size(file), initialSize) : initialSize;
+        
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(MapMode.READ_WRITE, 0, size);
+        this.position = HEADER_SIZE;
+        this.dirty = false;
+        
+        pending.clear();
+        
+        if(!exists || buffer.getInt(0) == 0) {
+            writeHeader(buffer);
+            buffer.force();
+            return;
+        }
+        
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("File " + file + " is not a session journal or has unsupported version.");
+        }
+        
+        readRecords();
+    }
+    
+    private void readRecords() {
+        while(position + RECORD_HEADER_SIZE < buffer.capacity()) {
+            int questLength = buffer.getShort(position + 16) & MAX_ID_LENGTH;
+            int branchLength = buffer.getShort(position + 18) & MAX_ID_LENGTH;
+            int end = position + RECORD_HEADER_SIZE + questLength + branchLength;
+            
+            // Record was never finished. Everything after it is empty.
+            if(end >= buffer.capacity() || buffer.get(end) == 0) {
+                break;
+            }
+            
+            long chatID = buffer.getLong(position);
+            long timestamp = buffer.getLong(position + 8);
+            String quest = readString(position + RECORD_HEADER_SIZE, questLength);
+            String branch = readString(position + RECORD_HEADER_SIZE + questLength, branchLength);
+            
+            apply(buffer.get(end), chatID, new Entry(quest, branch, timestamp));
+            position = end + 1;
+        }
+    }
+    
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private void apply(byte type, long chatID, Entry entry) {
+        if(type == TRANSITION) {
+            pending.put(chatID, entry);
+        } else if(type == CHECKPOINT) {
+            pending.remove(chatID);
+        }
+    }
+    
+    // Writes the record and returns position after it. Type goes last
+    private static int write(MappedByteBuffer target, int position, long chatID, Entry entry, byte type) {
+        target.putLong(position, chatID);
+        target.putLong(position + 8, entry.timestamp);
+        target.putShort(position + 16, (short) entry.questBytes.length);
+        target.putShort(position + 18, (short) entry.branchBytes.length);
+        
+        int offset = position + RECORD_HEADER_SIZE;
+        
+        for (byte value : entry.questBytes) {
+            target.put(offset++, value);
+        }
+        
+        for (byte value : entry.branchBytes) {
+            target.put(offset++, value);
+        }
+        
+        target.put(offset, type);
+        return offset + 1;
+    }
+    
+    private static int sizeOf(Map<Long, Entry> entries) {
+        return entries.values().stream()
+                .mapToInt(Entry::size)
+                .sum();
+    }
+    
+    private void writeHeader(MappedByteBuffer target) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, VERSION);
+    }
+    
+    /**
+     * Latest transition of the player.
+     */
+    public static class Entry {
+        
+        @Getter
+        private final String quest;
+        @Getter
+        private final String branch;
+        @Getter
+        private final long timestamp;
+        
+        // Encoded ids, so the size of the record is known before writing
+        private final byte[] questBytes;
+        private final byte[] branchBytes;
+        
+        private Entry(String quest, String branch, long timestamp) {
+            this.quest = quest;
+            this.branch = branch;
+            this.timestamp = timestamp;
+            this.questBytes = quest.getBytes(StandardCharsets.UTF_8);
+            this.branchBytes = branch.getBytes(StandardCharsets.UTF_8);
+        }
+        
+        private int size() {
+            return RECORD_HEADER_SIZE + questBytes.length + branchBytes.length + 1;
+        }
+    }
+}
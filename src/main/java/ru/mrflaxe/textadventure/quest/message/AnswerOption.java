@@ -4,14 +4,22 @@ import org.jetbrains.annotations.Nullable;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import ru.mrflaxe.textadventure.quest.registry.QuestText;
 
-@Getter
 @AllArgsConstructor
 public class AnswerOption {
-
-    @Nullable
-    private final String text;
     
+    private final QuestText questText;
+    
+    // Handle of the text in the pool
+    private final int text;
+    
+    @Getter
     @Nullable
     private final String nextBranchID; // it's like a link to next dialogue line
+    
+    @Nullable
+    public String getText() {
+        return questText.get(text);
+    }
 }
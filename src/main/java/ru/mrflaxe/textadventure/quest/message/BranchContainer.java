@@ -1,11 +1,7 @@
 package ru.mrflaxe.textadventure.quest.message;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -13,27 +9,48 @@ import java.util.Map;
 
 import org.jetbrains.annotations.Nullable;
 
+import lombok.Getter;
 import ru.mrflaxe.textadventure.achievement.Achievement;
-import ru.mrflaxe.textadventure.achievement.AchievmentManager;
+import ru.mrflaxe.textadventure.achievement.AchievementCatalog;
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.configuration.ConfigurationSection;
+import ru.mrflaxe.textadventure.logging.Logger;
 import ru.mrflaxe.textadventure.quest.message.branch.AchievementBranch;
 import ru.mrflaxe.textadventure.quest.message.branch.CommonBranch;
 import ru.mrflaxe.textadventure.quest.message.branch.EndingAchievementBranch;
 import ru.mrflaxe.textadventure.quest.message.branch.EndingBranch;
 import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+import ru.mrflaxe.textadventure.quest.message.branch.RenderMode;
+import ru.mrflaxe.textadventure.quest.message.branch.ResumeMode;
+import ru.mrflaxe.textadventure.quest.registry.QuestText;
+import ru.mrflaxe.textadventure.tool.HTMLSymbolFormatter;
 
+/**
+ * Compiled graph of one quest. Branches are loaded from all yaml files of the quest folder. <br>
+ * Yaml files are read one by one and each one is parsed fully before its text goes to the text pool,
+ * so the heap should fit the biggest file of the quest. Very large quests should be split into several files.
+ */
 public class BranchContainer {
-
-    private final AchievmentManager achievementManager;
+    
+    private final AchievementCatalog achievements;
+    private final QuestText text;
+    private final HTMLSymbolFormatter formatter;
+    
+    @Getter
+    private final String questID;
     
     private final Map<String, QuestBranch> branches; // String is identificator;
+    private final Map<Integer, QuestBranch> branchesByIntId;
     
-    public BranchContainer(AchievmentManager achievmentManager) {
-        this.achievementManager = achievmentManager;
+    public BranchContainer(String questID, Path questFolder, AchievementCatalog achievements, QuestText text) {
+        this.achievements = achievements;
+        this.text = text;
+        this.formatter = new HTMLSymbolFormatter();
+        this.questID = questID;
         
         branches = new HashMap<>();
-        initializeQuestBranches();
+        branchesByIntId = new HashMap<>();
+        initializeQuestBranches(questFolder);
     }
     
     /**
@@ -46,60 +63,55 @@ public class BranchContainer {
         return branches.get(id);
     }
     
-    private void initializeQuestBranches() {
-        // Creating quest folder if not exist yet
-        File questFolder = new File("configs" + File.separator + "quest");
-        Path qusetFolderPath = questFolder.toPath();
-        
-        try {
-            Files.createDirectories(qusetFolderPath);
-        } catch (IOException e) {}
-        
-        
-        // Creating demo configuration if not exist TODO add config setting to disable this thing
-        Path questConfigPath = qusetFolderPath.resolve("quest.yml");
+    /**
+     * Returns branch by given int id if exist or null.
+     * @param intId of branch
+     * @return branch by given int id
+     */
+    @Nullable
+    public QuestBranch getBranch(int intId) {
+        return branchesByIntId.get(intId);
+    }
+    
+    /**
+     * Gets count of branches in this quest.
+     * @return count of branches
+     */
+    public int size() {
+        return branches.size();
+    }
+    
+    private void initializeQuestBranches(Path questFolder) {
+        File[] files = questFolder.toFile().listFiles();
         
-        // If quest file does not exist will create sample from resources
-        if(!Files.isRegularFile(questConfigPath)) {
-            InputStream resource = this.getClass()
-                    .getResourceAsStream("/quest/quest.yml");
-            
-            if(resource == null) {
-                System.err.println("resource is null");
-            }
-            
-            try {
-                Files.createFile(questConfigPath);
-                Files.copy(resource, questConfigPath, StandardCopyOption.REPLACE_EXISTING);
-                System.out.println("Copied a configuration file from internal resource to: " + questConfigPath);
-            } catch (IOException e) {
-                System.err.println("Failed to create " + questConfigPath + " file.");
-            }
+        if(files == null) {
+            Logger.error("Failed to read quest folder {}", questFolder);
+            return;
         }
         
-        File[] files = questFolder.listFiles();
-        
         // In quest folder can be more than one yaml files.
         // It's allow to avoid big files which hard to manage
-        // TODO add possibility to group files in folders for better navigation.
         for (File file : files) {
             String fileName = file.getName();
             
-            if(!fileName.endsWith(".yml")) {
-                return;
+            // Folders of other quests may be here too
+            if(!file.isFile() || !fileName.endsWith(".yml")) {
+                continue;
             }
             
-            Configuration questConfig = new Configuration(qusetFolderPath, fileName);
+            Configuration questConfig = new Configuration(questFolder, fileName);
             questConfig.refresh();
             
-            retrieveBranchesFromConfig(questConfig);
+            // Raw text and its formatted version. Equal strings are formatted only once.
+            // Kept for one file only, text of previous files is already in the pool
+            Map<String, String> formatted = new HashMap<>();
+            
+            retrieveBranchesFromConfig(questConfig, formatted);
         }
-        
-        return;
     }
     
     
-    private void retrieveBranchesFromConfig(Configuration questConfig) {
+    private void retrieveBranchesFromConfig(Configuration questConfig, Map<String, String> formatted) {
         Map<String, ConfigurationSection> questBranches = questConfig.getAllSubsections();
         
         // Each entry set is single branch
@@ -108,8 +120,12 @@ public class BranchContainer {
             String branchId = set.getKey();
             ConfigurationSection branchSection = set.getValue();
             
-            // Getting lines from config section
-            List<String> lines = branchSection.getStringList("lines", true);
+            // Getting lines from config section. Branch keeps only their handles in the text pool
+            List<String> rawLines = branchSection.getStringList("lines", false);
+            List<String> formattedLines = new ArrayList<>(rawLines.size());
+            
+            rawLines.forEach(line -> formattedLines.add(format(line, formatted)));
+            List<String> lines = text.addAll(formattedLines);
             
             // If branch has section ending means this branch doesn't have answer options.
             // Only EndingAchievementBranch and EndingBranch objects can not have answer options.
@@ -120,52 +136,95 @@ public class BranchContainer {
                     // If ending has achievment will created EndingAchievementBranch object.
                     if(branchSection.containsSection("achievement")) {
                         String achievementID = branchSection.getString("achievement");
-                        Achievement achievement = achievementManager.getAchievement(achievementID);
+                        Achievement achievement = achievements.getAchievement(achievementID);
                         
                         QuestBranch achievementBranch = new EndingAchievementBranch(branchId, lines, achievement);
-                        branches.put(branchId, achievementBranch);
+                        registerBranch(achievementBranch, branchSection);
                         return;
                     }
                     
                     // Else will created just EndingBranch
                     QuestBranch branchData = new EndingBranch(branchId, lines);
-                    branches.put(branchId, branchData);
+                    registerBranch(branchData, branchSection);
                     return;
                 }
             }
             
-            List<AnswerOption> answerOptions = getAnswerOptions(branchSection);
+            List<AnswerOption> answerOptions = getAnswerOptions(branchSection, formatted);
             
             // Now if common branch have achievement section will create AchievementBranch object
             if(branchSection.containsSection("achievement")) {
                 String achievementID = branchSection.getString("achievement");
-                Achievement achievement = achievementManager.getAchievement(achievementID);
+                Achievement achievement = achievements.getAchievement(achievementID);
                 
                 QuestBranch achievementBranch = new AchievementBranch(branchId, lines, answerOptions, achievement);
-                branches.put(branchId, achievementBranch);
+                registerBranch(achievementBranch, branchSection);
                 return;
             }
             
             // Otherwise just CommonBranch
             QuestBranch branchData = new CommonBranch(branchId, lines, answerOptions);
-            branches.put(branchId, branchData);
+            registerBranch(branchData, branchSection);
         });
     }
     
-    private List<AnswerOption> getAnswerOptions(ConfigurationSection branchSection) {
+    // Applies optional branch settings and puts the branch to container
+    private void registerBranch(QuestBranch branch, ConfigurationSection branchSection) {
+        if(branchSection.containsSection("resume")) {
+            String resumeKey = branchSection.getString("resume");
+            ResumeMode resumeMode = ResumeMode.getByKey(resumeKey);
+            
+            if(resumeMode == null) {
+                Logger.warn("Unknown resume mode '{}' in branch '{}'.", resumeKey, branch.getId());
+            }
+            
+            branch.setResumeMode(resumeMode);
+        }
+        
+        if(branchSection.containsSection("render")) {
+            String renderKey = branchSection.getString("render");
+            RenderMode renderMode = RenderMode.getByKey(renderKey);
+            
+            if(renderMode == null) {
+                Logger.warn("Unknown render mode '{}' in branch '{}'.", renderKey, branch.getId());
+            }
+            
+            branch.setRenderMode(renderMode);
+        }
+        
+        branch.setQuestID(questID);
+        branches.put(branch.getId(), branch);
+        
+        QuestBranch sameIntId = branchesByIntId.put(branch.getIntId(), branch);
+        
+        if(sameIntId != null && !sameIntId.getId().equals(branch.getId())) {
+            Logger.warn("Branches '{}' and '{}' have the same int id. Rename one of them or saves of '{}' may be restored wrong.",
+                    sameIntId.getId(), branch.getId(), sameIntId.getId());
+        }
+    }
+    
+    private List<AnswerOption> getAnswerOptions(ConfigurationSection branchSection, Map<String, String> formatted) {
         ConfigurationSection answerSection = branchSection.getSection("answer-options");
         Map<String, ConfigurationSection> subSections = answerSection.getAllSubSections();
         
         List<AnswerOption> answerOptions = new ArrayList<>();
         
         subSections.values().forEach(value -> {
-            String text = value.getString("text", true);
+            String optionText = format(value.getString("text"), formatted);
             String nextBranchId = value.getString("link");
             
-            AnswerOption answerOption = new AnswerOption(text, nextBranchId);
+            AnswerOption answerOption = new AnswerOption(text, text.add(optionText), nextBranchId);
             answerOptions.add(answerOption);
         });
         
         return answerOptions;
     }
+    
+    private String format(String raw, Map<String, String> formatted) {
+        if(raw == null) {
+            return null;
+        }
+        
+        return formatted.computeIfAbsent(raw, formatter::formmat);
+    }
 }
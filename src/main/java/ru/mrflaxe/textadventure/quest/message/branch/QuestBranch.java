@@ -2,17 +2,38 @@ package ru.mrflaxe.textadventure.quest.message.branch;
 
 import java.util.List;
 
+import org.jetbrains.annotations.Nullable;
+
 import lombok.Getter;
+import lombok.Setter;
 
 @Getter
 public abstract class QuestBranch {
-
+    
     private final String id;
     
+    // Compact id for binary storages. Stays the same while string id is the same
+    private final int intId;
+    
     private final List<String> lines;
     
+    // Id of the quest this branch belongs to
+    @Setter
+    private String questID;
+    
+    // Null means the default mode from config.yml is used
+    @Nullable
+    @Setter
+    private ResumeMode resumeMode;
+    
+    // Null means the default mode from config.yml is used
+    @Nullable
+    @Setter
+    private RenderMode renderMode;
+    
     public QuestBranch(String id, List<String> lines) {
         this.id = id;
+        this.intId = id.hashCode();
         this.lines = lines;
     }
 }
@@ -0,0 +1,47 @@
+package ru.mrflaxe.textadventure.quest.message.branch;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.Getter;
+
+/**
+ * Describes how lines of a branch are sent to a player.
+ */
+public enum RenderMode {
+    
+    // Each line is a separate message with 'typing' status before it
+    SEPARATE("separate"),
+    // The first line is sent as a message and next lines are added to it by editing
+    EDIT("edit"),
+    // Consecutive short lines are joined into one message
+    MERGE("merge");
+    
+    @Getter
+    private final String key;
+    
+    private RenderMode(String key) {
+        this.key = key;
+    }
+    
+    /**
+     * Gets render mode by its config key.
+     * @param key - key from configuration
+     * @return render mode or null if there is no mode with such key
+     */
+    @Nullable
+    public static RenderMode getByKey(String key) {
+        if(key == null) {
+            return null;
+        }
+        
+        RenderMode[] values = values();
+        
+        for (int i = 0; i < values.length; i++) {
+            if(values[i].getKey().equalsIgnoreCase(key)) {
+                return values[i];
+            }
+        }
+        
+        return null;
+    }
+}
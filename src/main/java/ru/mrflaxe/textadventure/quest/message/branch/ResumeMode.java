@@ -0,0 +1,47 @@
+package ru.mrflaxe.textadventure.quest.message.branch;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.Getter;
+
+/**
+ * Describes how a branch is shown to a player who continues the game from a save.
+ */
+public enum ResumeMode {
+    
+    // Sends all lines of the branch again with typing delays
+    FULL("full"),
+    // Sends the last line of the branch together with answer options
+    LAST_LINE("last-line"),
+    // Sends only answer options
+    OPTIONS("options");
+    
+    @Getter
+    private final String key;
+    
+    private ResumeMode(String key) {
+        this.key = key;
+    }
+    
+    /**
+     * Gets resume mode by its config key.
+     * @param key - key from configuration
+     * @return resume mode or null if there is no mode with such key
+     */
+    @Nullable
+    public static ResumeMode getByKey(String key) {
+        if(key == null) {
+            return null;
+        }
+        
+        ResumeMode[] values = values();
+        
+        for (int i = 0; i < values.length; i++) {
+            if(values[i].getKey().equalsIgnoreCase(key)) {
+                return values[i];
+            }
+        }
+        
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package ru.mrflaxe.textadventure.quest.registry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Keeps text in one growing byte array. <br>
+ * Grown array is published through a volatile field, so text can be read while new text is appended.
+ */
+public class HeapTextArena implements TextArena {
+    
+    private volatile byte[] bytes;
+    private int size;
+    
+    public HeapTextArena() {
+        this.bytes = new byte[16 * 1024];
+    }
+    
+    @Override
+    public int append(byte[] text) {
+        byte[] bytes = this.bytes;
+        
+        if(size + text.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + text.length));
+        }
+        
+        System.arraycopy(text, 0, bytes, size, text.length);
+        this.bytes = bytes;
+        
+        int offset = size;
+        size += text.length;
+        
+        return offset;
+    }
+    
+    @Override
+    public boolean equals(int offset, byte[] text) {
+        byte[] bytes = this.bytes;
+        
+        for (int i = 0; i < text.length; i++) {
+            if(bytes[offset + i] != text[i]) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    @Override
+    public String read(int offset, int length) {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public long size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isHeap() {
+        return true;
+    }
+    
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,117 @@
+package ru.mrflaxe.textadventure.quest.registry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Keeps text in a memory mapped file, so it doesn't take heap. <br>
+ * The file is mapped by segments and text never crosses a segment border.
+ * The operating system keeps often read pages in memory and drops the rest.
+ * <br><br>
+ * Text is built from quest files on every start, so the file is recreated and deleted on close.
+ * Segments are kept in a copy on write list, so text can be read while new segments are mapped.
+ * Offsets are int, so the file holds up to 2 GB of text.
+ */
+public class MappedTextArena implements TextArena {
+    
+    public static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    
+    private final Path file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments;
+    
+    // Position in the last segment
+    private int position;
+    private long used;
+    
+    public MappedTextArena(Path file) throws IOException {
+        this.file = file;
+        
+        Files.deleteIfExists(file);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segments = new CopyOnWriteArrayList<>();
+        this.position = SEGMENT_SIZE;
+    }
+    
+    @Override
+    public int append(byte[] text) throws IOException {
+        if(text.length > SEGMENT_SIZE) {
+            throw new IOException("Text of " + text.length + " bytes is longer than a segment");
+        }
+        
+        if(position + text.length > SEGMENT_SIZE) {
+            if(segments.size() == Integer.MAX_VALUE / SEGMENT_SIZE) {
+                throw new IOException("Text file is full");
+            }
+            
+            segments.add(channel.map(MapMode.READ_WRITE, (long) segments.size() * SEGMENT_SIZE, SEGMENT_SIZE));
+            position = 0;
+        }
+        
+        ByteBuffer segment = segments.get(segments.size() - 1).duplicate();
+        segment.position(position);
+        segment.put(text);
+        
+        int offset = (segments.size() - 1) * SEGMENT_SIZE + position;
+        position += text.length;
+        used += text.length;
+        
+        return offset;
+    }
+    
+    @Override
+    public boolean equals(int offset, byte[] text) {
+        ByteBuffer segment = segments.get(offset / SEGMENT_SIZE);
+        int start = offset % SEGMENT_SIZE;
+        
+        for (int i = 0; i < text.length; i++) {
+            if(segment.get(start + i) != text[i]) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    @Override
+    public String read(int offset, int length) {
+        ByteBuffer segment = segments.get(offset / SEGMENT_SIZE).duplicate();
+        segment.position(offset % SEGMENT_SIZE);
+        
+        byte[] text = new byte[length];
+        segment.get(text);
+        
+        return new String(text, StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public long size() {
+        return used;
+    }
+    
+    @Override
+    public boolean isHeap() {
+        return false;
+    }
+    
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Logger.error("Failed to delete quest text file {}: {}", file, e.getMessage());
+        }
+    }
+}
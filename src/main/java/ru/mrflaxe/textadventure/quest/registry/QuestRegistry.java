@@ -0,0 +1,340 @@
+package ru.mrflaxe.textadventure.quest.registry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+
+import lombok.Getter;
+import ru.mrflaxe.textadventure.achievement.AchievementCatalog;
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.quest.message.BranchContainer;
+import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+
+/**
+ * Catalog of all quests the bot can run. <br>
+ * Yaml files right in 'configs/quest' folder are the default quest. Each subfolder is another quest
+ * and the name of the subfolder is its id.
+ * <br><br>
+ * Quests are loaded on first use and unloaded when nobody played them during the idle time,
+ * so big catalogs don't stay in memory. Sessions hold their quest by {@link #acquire(String)},
+ * and held quests are never unloaded. Loading, holding and unloading of a quest are atomic,
+ * so a quest can't be handed to a session while it's being unloaded.
+ * Text of all loaded quests is kept in one {@link TextPool}, so strings common to several quests are stored once.
+ * Strings used only by an unloaded quest are freed together with it.
+ */
+public class QuestRegistry {
+    
+    // All quests should start with this branch
+    public static final String START_BRANCH = "start";
+    
+    private final AchievementCatalog achievements;
+    
+    // Text of all loaded quests
+    private final TextPool textPool;
+    
+    @Getter
+    private final String defaultQuestID;
+    private final long idleTime;
+    
+    // Quest id and its folder. Catalog is read once on start
+    private final Map<String, Path> catalog;
+    private final Map<String, LoadedQuest> loaded;
+    private final ScheduledExecutorService unloader;
+    
+    public QuestRegistry(AchievementCatalog achievements, Configuration config) {
+        this.achievements = achievements;
+        
+        // Text stays in heap unless 'file' storage is set. File storage keeps only recently sent lines in heap
+        boolean fileStorage = config.containsSection("quests.text.storage") && config.getString("quests.text.storage").equals("file");
+        
+        this.textPool = fileStorage
+                ? createFilePool(config.getString("quests.text.file-name"), config.getInt("quests.text.cache-size") * 1024L)
+                : new TextPool();
+        
+        this.defaultQuestID = config.containsSection("quests.default")
+                ? config.getString("quests.default")
+                : "main";
+        
+        int idleMinutes = config.containsSection("quests.idle-unload")
+                ? Math.max(1, config.getInt("quests.idle-unload"))
+                : 30;
+        
+        this.idleTime = TimeUnit.MINUTES.toMillis(idleMinutes);
+        
+        this.catalog = readCatalog(Paths.get("configs", "quest"));
+        this.loaded = new ConcurrentHashMap<>();
+        
+        this.unloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quest-unloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        unloader.scheduleWithFixedDelay(this::unloadIdle, 1, 1, TimeUnit.MINUTES);
+    }
+    
+    /**
+     * Gets ids of all quests in the catalog.
+     * @return sorted quest ids
+     */
+    public Set<String> getQuestIDs() {
+        return catalog.keySet();
+    }
+    
+    public boolean hasQuest(String questID) {
+        return catalog.containsKey(questID);
+    }
+    
+    /**
+     * Gets quest graph and loads it if it's not loaded yet.
+     * @param questID - id of the quest, null means the default quest
+     * @return quest graph or null if there is no such quest
+     */
+    @Nullable
+    public BranchContainer getQuest(@Nullable String questID) {
+        return access(questID, 0);
+    }
+    
+    /**
+     * Gets quest graph and holds the quest loaded until {@link #release(String)} is called.
+     * Each call should be paired with one release.
+     * @param questID - id of the quest, null means the default quest
+     * @return quest graph or null if there is no such quest. Nothing is held in this case
+     */
+    @Nullable
+    public BranchContainer acquire(@Nullable String questID) {
+        return access(questID, 1);
+    }
+    
+    /**
+     * Stops holding the quest. It's unloaded after the idle time when nobody holds it.
+     * @param questID - id of the quest, null means the default quest
+     */
+    public void release(@Nullable String questID) {
+        String id = questID == null ? defaultQuestID : questID;
+        
+        loaded.computeIfPresent(id, (key, quest) -> {
+            quest.holders--;
+            quest.lastAccess = System.currentTimeMillis();
+            return quest;
+        });
+    }
+    
+    /**
+     * Gets branch of the quest.
+     * @param questID - id of the quest, null means the default quest
+     * @param branchID - id of the branch
+     * @return branch or null if there is no such quest or branch
+     */
+    @Nullable
+    public QuestBranch getBranch(@Nullable String questID, String branchID) {
+        BranchContainer quest = getQuest(questID);
+        return quest == null ? null : quest.getBranch(branchID);
+    }
+    
+    /**
+     * Gets branch of the quest by its int id.
+     * @param questID - id of the quest, null means the default quest
+     * @param branchIntId - int id of the branch
+     * @return branch or null if there is no such quest or branch
+     */
+    @Nullable
+    public QuestBranch getBranch(@Nullable String questID, int branchIntId) {
+        BranchContainer quest = getQuest(questID);
+        return quest == null ? null : quest.getBranch(branchIntId);
+    }
+    
+    public int getLoadedCount() {
+        return loaded.size();
+    }
+    
+    /**
+     * Builds report of the text pool and strings of each loaded quest.
+     * @return report lines
+     */
+    public String getTextReport() {
+        String report = textPool.report();
+        
+        for (Map.Entry<String, LoadedQuest> entry : new TreeMap<>(loaded).entrySet()) {
+            report = report + "\nQuest '" + entry.getKey() + "': " + entry.getValue().text.report();
+        }
+        
+        return report;
+    }
+    
+    public void shutdown() {
+        unloader.shutdownNow();
+        textPool.close();
+    }
+    
+    // Loads the quest if needed and adds given count of holders in one atomic step
+    private BranchContainer access(@Nullable String questID, int holders) {
+        String id = questID == null ? defaultQuestID : questID;
+        Path folder = catalog.get(id);
+        
+        if(folder == null) {
+            return null;
+        }
+        
+        LoadedQuest quest = loaded.compute(id, (key, current) -> {
+            LoadedQuest result = current == null ? load(key, folder) : current;
+            
+            result.holders += holders;
+            result.lastAccess = System.currentTimeMillis();
+            return result;
+        });
+        
+        return quest.branches;
+    }
+    
+    // Removes quests which nobody holds and which were not used during the idle time
+    private void unloadIdle() {
+        long now = System.currentTimeMillis();
+        
+        for (String questID : loaded.keySet()) {
+            // Check and removal are done under the lock of the quest entry, so the quest can't be acquired between them
+            loaded.computeIfPresent(questID, (key, quest) -> {
+                if(quest.holders > 0 || now - quest.lastAccess < idleTime) {
+                    return quest;
+                }
+                
+                quest.text.release();
+                Logger.info("Quest '{}' is unloaded after idle time", key);
+                return null;
+            });
+        }
+    }
+    
+    private LoadedQuest load(String questID, Path folder) {
+        long start = System.currentTimeMillis();
+        
+        QuestText text = new QuestText(textPool);
+        BranchContainer branches = new BranchContainer(questID, folder, achievements, text);
+        
+        if(branches.getBranch(START_BRANCH) == null) {
+            Logger.error("Quest '{}' doesn't have '{}' branch.", questID, START_BRANCH);
+        }
+        
+        Logger.info("Loaded quest '{}' with {} branches in {} ms", questID, branches.size(), System.currentTimeMillis() - start);
+        Logger.info("Quest '{}' text: {}", questID, text.report());
+        
+        return new LoadedQuest(branches, text);
+    }
+    
+    private Map<String, Path> readCatalog(Path questFolder) {
+        createSampleQuest(questFolder);
+        
+        Map<String, Path> quests = new TreeMap<>();
+        File[] files = questFolder.toFile().listFiles();
+        
+        if(files == null) {
+            Logger.error("Failed to read quest folder {}", questFolder);
+            return quests;
+        }
+        
+        boolean hasDefault = false;
+        
+        for (File file : files) {
+            if(file.isDirectory()) {
+                quests.put(file.getName(), file.toPath());
+                continue;
+            }
+            
+            hasDefault |= file.getName().endsWith(".yml");
+        }
+        
+        if(hasDefault) {
+            Path previous = quests.put(defaultQuestID, questFolder);
+            
+            if(previous != null) {
+                Logger.warn("Quest folder '{}' is hidden by the default quest. Rename it.", defaultQuestID);
+            }
+        }
+        
+        Logger.info("Found {} quests: {}", quests.size(), quests.keySet());
+        return quests;
+    }
+    
+    // Compaction writes live text to the other of two files, so the previous one can be deleted after it
+    private TextPool createFilePool(String fileName, long cacheChars) {
+        Path[] files = { Paths.get(fileName), Paths.get(getCompactedFileName(fileName)) };
+        int[] created = new int[1];
+        
+        try {
+            return new TextPool(() -> new MappedTextArena(files[created[0]++ % 2]), Math.max(1, cacheChars));
+        } catch (UncheckedIOException e) {
+            Logger.error("Failed to create quest text file. Text will be kept in heap: {}", e.getCause().getMessage());
+            return new TextPool();
+        }
+    }
+    
+    // 'quest-text.bin' becomes 'quest-text-compacted.bin'
+    private static String getCompactedFileName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        
+        if(dot <= 0) {
+            return fileName + "-compacted";
+        }
+        
+        return fileName.substring(0, dot) + "-compacted" + fileName.substring(dot);
+    }
+    
+    // If quest folder is empty creates sample quest from resources
+    private void createSampleQuest(Path questFolder) {
+        try {
+            Files.createDirectories(questFolder);
+        } catch (IOException e) {}
+        
+        String[] content = questFolder.toFile().list();
+        
+        if(content != null && content.length > 0) {
+            return;
+        }
+        
+        Path questConfigPath = questFolder.resolve("quest.yml");
+        InputStream resource = this.getClass().getResourceAsStream("/quest/quest.yml");
+        
+        if(resource == null) {
+            Logger.error("Sample quest is missing in resources");
+            return;
+        }
+        
+        try {
+            Files.copy(resource, questConfigPath, StandardCopyOption.REPLACE_EXISTING);
+            Logger.info("Copied a configuration file from internal resource to: {}", questConfigPath);
+        } catch (IOException e) {
+            Logger.error("Failed to create {} file.", questConfigPath);
+        }
+    }
+    
+    private static class LoadedQuest {
+        
+        private final BranchContainer branches;
+        private final QuestText text;
+        
+        // Count of sessions holding the quest. Changed only inside compute of the loaded map
+        private int holders;
+        private long lastAccess;
+        
+        private LoadedQuest(BranchContainer branches, QuestText text) {
+            this.branches = branches;
+            this.text = text;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.mrflaxe.textadventure.quest.registry;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Text of one quest in the shared {@link TextPool}. <br>
+ * Remembers which strings of the pool the quest uses,
+ * so they can be released when the quest is unloaded.
+ */
+public class QuestText {
+    
+    private final TextPool pool;
+    
+    // Handles used by this quest
+    private final BitSet held;
+    
+    private long references;
+    private long separateBytes;
+    private boolean released;
+    
+    public QuestText(TextPool pool) {
+        this.pool = pool;
+        this.held = new BitSet();
+    }
+    
+    /**
+     * Adds text to the pool or finds equal text added by this or another quest.
+     * @param text - text to add
+     * @return handle of the text or {@link TextPool#NULL} if text is null
+     */
+    public synchronized int add(@Nullable String text) {
+        int handle = pool.add(text, held);
+        
+        if(handle != TextPool.NULL) {
+            references++;
+            separateBytes += TextPool.estimateSeparate(text);
+        }
+        
+        return handle;
+    }
+    
+    /**
+     * Adds each text of the list.
+     * @param texts - texts to add
+     * @return list backed by the pool
+     */
+    public List<String> addAll(List<String> texts) {
+        int[] handles = new int[texts.size()];
+        
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = add(texts.get(i));
+        }
+        
+        return pool.list(handles);
+    }
+    
+    /**
+     * Gets text by its handle.
+     * @param handle - handle from {@link #add(String)}
+     * @return string with the text or null for {@link TextPool#NULL}
+     */
+    @Nullable
+    public String get(int handle) {
+        return pool.get(handle);
+    }
+    
+    /**
+     * Releases strings of this quest. Strings used by no other quest are freed,
+     * so the text can't be read after this.
+     */
+    public synchronized void release() {
+        if(released) {
+            return;
+        }
+        
+        released = true;
+        pool.release(held, references, separateBytes);
+    }
+    
+    /**
+     * Builds report of strings used by this quest.
+     * @return report line
+     */
+    public synchronized String report() {
+        return references + " references to " + held.cardinality() + " distinct strings, "
+                + pool.countShared(held) + " of them shared with other quests";
+    }
+}
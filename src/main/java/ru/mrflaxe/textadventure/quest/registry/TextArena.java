@@ -0,0 +1,48 @@
+package ru.mrflaxe.textadventure.quest.registry;
+
+import java.io.IOException;
+
+/**
+ * Storage of UTF-8 bytes of {@link TextPool}. Offsets of stored text never change. <br>
+ * One thread appends text while any threads read text appended before.
+ */
+public interface TextArena {
+    
+    /**
+     * Stores bytes at the end of the arena.
+     * @param bytes - bytes to store
+     * @return offset of stored bytes
+     * @throws IOException if bytes can't be stored
+     */
+    int append(byte[] bytes) throws IOException;
+    
+    /**
+     * Checks if stored bytes are equal to given ones.
+     * @param offset - offset of stored bytes
+     * @param bytes - bytes to compare with, their length is the length of stored bytes
+     * @return true if equal
+     */
+    boolean equals(int offset, byte[] bytes);
+    
+    /**
+     * Decodes stored bytes.
+     * @param offset - offset of stored bytes
+     * @param length - count of stored bytes
+     * @return decoded string
+     */
+    String read(int offset, int length);
+    
+    /**
+     * Gets count of bytes used by stored text.
+     * @return used bytes
+     */
+    long size();
+    
+    /**
+     * Tells if the text is kept in heap.
+     * @return true for heap, false for file
+     */
+    boolean isHeap();
+    
+    void close();
+}
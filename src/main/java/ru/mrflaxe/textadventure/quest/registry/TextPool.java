@@ -0,0 +1,532 @@
+package ru.mrflaxe.textadventure.quest.registry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.jetbrains.annotations.Nullable;
+
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Keeps text of all loaded quests in a {@link TextArena}. <br>
+ * Each distinct string is stored once as UTF-8 bytes and is referenced by an int handle,
+ * so equal lines and answer options cost 4 bytes per use instead of a separate string,
+ * even when they are used by different quests.
+ * Strings are decoded on every read, which happens only when a line is sent.
+ * <br><br>
+ * Each quest adds its text through its own {@link QuestText}, which counts the quests using every string.
+ * When a quest is unloaded its strings used by no other quest are freed and their handles are reused.
+ * The arena only grows, so when freed text takes more than half of it
+ * live text is copied to a new arena and the old one is closed.
+ * <br><br>
+ * When the arena is a file, recently read strings are kept in a LRU cache limited by count of chars,
+ * so only text of active branches stays in heap.
+ * <br><br>
+ * Reading doesn't take the lock of the pool. Stored bytes never change and readers see the arena
+ * with offsets through one volatile {@link Layout}, so only the cache is locked while a string is read.
+ */
+public class TextPool {
+    
+    // Handle of null text
+    public static final int NULL = -1;
+    
+    // Approximate heap cost of a separate string: String object and array header
+    private static final int STRING_OVERHEAD = 24 + 16;
+    
+    // Freed text smaller than this is never compacted
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+    
+    private final ArenaFactory arenas;
+    
+    // Arena with offset and length of each string in it. Read without lock
+    private volatile Layout layout;
+    private int[] hashes;
+    
+    // Count of quests using each string. Zero means the handle is free
+    private int[] users;
+    private int count;
+    
+    // Handles freed by unloaded quests
+    private int[] freeHandles;
+    private int freeCount;
+    
+    // Open addressing table of handle + 1, zero is an empty slot
+    private int[] table;
+    
+    // Bytes of strings which are still used
+    private long liveBytes;
+    
+    // Handle and decoded string. Null if cache is disabled
+    private final Map<Integer, String> cache;
+    private final long cacheLimit;
+    private long cachedChars;
+    
+    private long references;
+    private long separateBytes;
+    private long hits;
+    private long misses;
+    private long compactions;
+    
+    /**
+     * Creates pool which keeps text in heap without cache.
+     */
+    public TextPool() {
+        this(HeapTextArena::new, 0);
+    }
+    
+    /**
+     * Creates pool over arenas from given factory.
+     * @param arenas - creates the first arena and new arenas on compaction
+     * @param cacheLimit - max count of chars in the cache, zero disables it
+     * @throws UncheckedIOException if the first arena can't be created
+     */
+    public TextPool(ArenaFactory arenas, long cacheLimit) {
+        this.arenas = arenas;
+        
+        try {
+            this.layout = new Layout(arenas.create(), new int[256], new int[256]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        this.hashes = new int[256];
+        this.users = new int[256];
+        this.freeHandles = new int[16];
+        this.table = new int[512];
+        
+        this.cacheLimit = cacheLimit;
+        this.cache = cacheLimit > 0 ? new LinkedHashMap<>(256, 0.75f, true) : null;
+    }
+    
+    /**
+     * Adds text used by a quest or finds equal text added before.
+     * @param text - text to add
+     * @param held - handles already used by the quest. The handle of the text is added there
+     * @return handle of the text or {@link #NULL} if text is null
+     * @throws UncheckedIOException if text can't be written to the arena
+     */
+    synchronized int add(@Nullable String text, BitSet held) {
+        if(text == null) {
+            return NULL;
+        }
+        
+        references++;
+        separateBytes += estimateSeparate(text);
+        
+        int handle = find(text);
+        
+        if(handle == NULL) {
+            handle = append(text);
+        }
+        
+        // Every quest is counted once, however many times it uses the text
+        if(!held.get(handle)) {
+            held.set(handle);
+            users[handle]++;
+        }
+        
+        return handle;
+    }
+    
+    /**
+     * Frees strings of an unloaded quest which are not used by other quests.
+     * @param held - handles used by the quest
+     * @param referenceCount - count of uses of these strings by the quest
+     * @param separateSize - estimated heap size of these uses as separate strings
+     */
+    synchronized void release(BitSet held, long referenceCount, long separateSize) {
+        for (int handle = held.nextSetBit(0); handle >= 0; handle = held.nextSetBit(handle + 1)) {
+            if(--users[handle] == 0) {
+                free(handle);
+            }
+        }
+        
+        references -= referenceCount;
+        separateBytes -= separateSize;
+        
+        long freedBytes = layout.arena.size() - liveBytes;
+        
+        if(freedBytes > liveBytes && freedBytes >= MIN_COMPACT_BYTES) {
+            compact();
+        }
+    }
+    
+    /**
+     * Counts strings of a quest which are used by other quests too.
+     * @param held - handles used by the quest
+     * @return count of shared strings
+     */
+    synchronized int countShared(BitSet held) {
+        int shared = 0;
+        
+        for (int handle = held.nextSetBit(0); handle >= 0; handle = held.nextSetBit(handle + 1)) {
+            if(users[handle] > 1) {
+                shared++;
+            }
+        }
+        
+        return shared;
+    }
+    
+    /**
+     * Gets text by its handle.
+     * @param handle - handle from {@link QuestText#add(String)}
+     * @return string with the text or null for {@link #NULL}
+     */
+    @Nullable
+    public String get(int handle) {
+        if(handle == NULL) {
+            return null;
+        }
+        
+        Layout current = layout;
+        
+        if(cache == null) {
+            return current.read(handle);
+        }
+        
+        synchronized (cache) {
+            String text = cache.get(handle);
+            
+            if(text != null) {
+                hits++;
+                return text;
+            }
+            
+            misses++;
+        }
+        
+        // Decoding is done outside the lock, so readers of different strings don't wait for each other
+        String text = current.read(handle);
+        
+        synchronized (cache) {
+            if(cache.putIfAbsent(handle, text) == null) {
+                cachedChars += text.length();
+                evict();
+            }
+        }
+        
+        return text;
+    }
+    
+    /**
+     * Builds report of memory saved by the pool.
+     * @return report lines
+     */
+    public synchronized String report() {
+        TextArena arena = layout.arena;
+        int distinct = count - freeCount;
+        long cachedBytes = 0;
+        
+        if(cache != null) {
+            synchronized (cache) {
+                cachedBytes = cachedChars * 2;
+            }
+        }
+        
+        // Offsets, lengths, hashes with user counts and the table. Every use costs an int handle
+        long indexBytes = count * 16L + table.length * 4L + references * 4;
+        long heapBytes = indexBytes + (arena.isHeap() ? arena.size() : cachedBytes);
+        long saved = separateBytes - heapBytes;
+        long percent = separateBytes == 0 ? 0 : saved * 100 / separateBytes;
+        
+        String report = "Quest text pool: " + references + " references to " + distinct + " distinct strings, "
+                + kilobytes(heapBytes) + " KB in heap instead of " + kilobytes(separateBytes) + " KB as separate strings, "
+                + "saved " + kilobytes(saved) + " KB (" + percent + "%)";
+        
+        if(compactions > 0 || arena.size() > liveBytes) {
+            report = report + "\nFreed text: " + kilobytes(arena.size() - liveBytes) + " KB, compacted " + compactions + " times";
+        }
+        
+        if(cache != null) {
+            synchronized (cache) {
+                long requests = hits + misses;
+                
+                report = report + "\nText file: " + kilobytes(arena.size()) + " KB, cached " + cache.size() + " strings of "
+                        + cachedChars + "/" + cacheLimit + " chars, hit rate "
+                        + (requests == 0 ? 0 : hits * 100 / requests) + "% of " + requests + " reads";
+            }
+        }
+        
+        return report;
+    }
+    
+    public synchronized int size() {
+        return count - freeCount;
+    }
+    
+    /**
+     * Closes the arena. Text can't be read after this.
+     */
+    public synchronized void close() {
+        layout.arena.close();
+    }
+    
+    /**
+     * Estimates heap size of the text as a separate string.
+     * Strings of Latin-1 characters take one byte per char since Java 9, others two.
+     * @param text - text to estimate
+     * @return size in bytes
+     */
+    static long estimateSeparate(String text) {
+        boolean latin = true;
+        
+        for (int i = 0; i < text.length() && latin; i++) {
+            latin = text.charAt(i) < 256;
+        }
+        
+        long size = STRING_OVERHEAD + (latin ? text.length() : text.length() * 2L);
+        return (size + 7) & ~7;
+    }
+    
+    /**
+     * Creates list backed by the pool.
+     * @param handles - handles of list elements
+     * @return read only list
+     */
+    List<String> list(int[] handles) {
+        return new PooledList(handles);
+    }
+    
+    // Finds handle of equal text or returns NULL
+    private int find(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int hash = text.hashCode();
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        Layout current = layout;
+        
+        while(table[slot] != 0) {
+            int handle = table[slot] - 1;
+            
+            if(hashes[handle] == hash && current.lengths[handle] == bytes.length && current.arena.equals(current.offsets[handle], bytes)) {
+                return handle;
+            }
+            
+            slot = (slot + 1) & mask;
+        }
+        
+        return NULL;
+    }
+    
+    private int append(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Layout current = layout;
+        int offset;
+        
+        try {
+            offset = current.arena.append(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        
+        int handle;
+        
+        if(freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            if(count == hashes.length) {
+                current = new Layout(current.arena, Arrays.copyOf(current.offsets, count * 2), Arrays.copyOf(current.lengths, count * 2));
+                hashes = Arrays.copyOf(hashes, count * 2);
+                users = Arrays.copyOf(users, count * 2);
+            }
+            
+            handle = count++;
+        }
+        
+        current.offsets[handle] = offset;
+        current.lengths[handle] = bytes.length;
+        hashes[handle] = text.hashCode();
+        users[handle] = 0;
+        liveBytes += bytes.length;
+        
+        // Table grows before the new string is linked, so it holds only strings with users
+        if((count - freeCount) * 2 > table.length) {
+            rehash();
+        }
+        
+        insert(handle, table);
+        
+        // Readers get the handle later, so this volatile write makes the entry visible to them
+        this.layout = current;
+        return handle;
+    }
+    
+    // Removes the string from the table and the cache. Its bytes stay in the arena until compaction
+    private void free(int handle) {
+        int mask = table.length - 1;
+        int slot = mix(hashes[handle]) & mask;
+        
+        while(table[slot] != handle + 1) {
+            slot = (slot + 1) & mask;
+        }
+        
+        // Shifts following entries back, so lookups never stop at the emptied slot
+        int next = (slot + 1) & mask;
+        
+        while(table[next] != 0) {
+            int home = mix(hashes[table[next] - 1]) & mask;
+            
+            if(((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                slot = next;
+            }
+            
+            next = (next + 1) & mask;
+        }
+        
+        table[slot] = 0;
+        
+        if(cache != null) {
+            synchronized (cache) {
+                String cached = cache.remove(handle);
+                
+                if(cached != null) {
+                    cachedChars -= cached.length();
+                }
+            }
+        }
+        
+        if(freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+        }
+        
+        freeHandles[freeCount++] = handle;
+        liveBytes -= layout.lengths[handle];
+    }
+    
+    // Copies live strings to a new arena. Handles stay the same, so quests don't notice it
+    private void compact() {
+        TextArena compacted;
+        
+        try {
+            compacted = arenas.create();
+        } catch (IOException e) {
+            Logger.warn("Failed to create arena for quest text compaction: {}", e.getMessage());
+            return;
+        }
+        
+        Layout current = layout;
+        int[] movedOffsets = new int[current.offsets.length];
+        
+        try {
+            for (int handle = 0; handle < count; handle++) {
+                if(users[handle] > 0) {
+                    byte[] bytes = current.read(handle).getBytes(StandardCharsets.UTF_8);
+                    movedOffsets[handle] = compacted.append(bytes);
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn("Failed to compact quest text: {}", e.getMessage());
+            compacted.close();
+            return;
+        }
+        
+        long before = current.arena.size();
+        
+        // Readers which got the old layout still read the old arena. Its memory is freed when they drop it
+        this.layout = new Layout(compacted, movedOffsets, current.lengths.clone());
+        current.arena.close();
+        
+        compactions++;
+        Logger.info("Quest text is compacted from {} KB to {} KB", kilobytes(before), kilobytes(compacted.size()));
+    }
+    
+    // Removes least recently read strings until the cache fits the limit
+    private void evict() {
+        Iterator<String> iterator = cache.values().iterator();
+        
+        while(cachedChars > cacheLimit && iterator.hasNext()) {
+            cachedChars -= iterator.next().length();
+            iterator.remove();
+        }
+    }
+    
+    private void rehash() {
+        int[] grown = new int[table.length * 2];
+        
+        for (int handle = 0; handle < count; handle++) {
+            if(users[handle] > 0) {
+                insert(handle, grown);
+            }
+        }
+        
+        this.table = grown;
+    }
+    
+    private void insert(int handle, int[] table) {
+        int mask = table.length - 1;
+        int slot = mix(hashes[handle]) & mask;
+        
+        while(table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        
+        table[slot] = handle + 1;
+    }
+    
+    // Spreads close hash codes of similar strings over the table
+    private int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+    
+    private String kilobytes(long bytes) {
+        return String.format("%.1f", bytes / 1024.0);
+    }
+    
+    // Arena and offsets of strings in it. Arrays are replaced when the arena is compacted or they are grown
+    private static class Layout {
+        
+        private final TextArena arena;
+        private final int[] offsets;
+        private final int[] lengths;
+        
+        private Layout(TextArena arena, int[] offsets, int[] lengths) {
+            this.arena = arena;
+            this.offsets = offsets;
+            this.lengths = lengths;
+        }
+        
+        private String read(int handle) {
+            return arena.read(offsets[handle], lengths[handle]);
+        }
+    }
+    
+    /**
+     * Creates arenas of the pool.
+     */
+    @FunctionalInterface
+    public interface ArenaFactory {
+        
+        TextArena create() throws IOException;
+    }
+    
+    // Read only list of pooled strings
+    private class PooledList extends AbstractList<String> implements RandomAccess {
+        
+        private final int[] handles;
+        
+        private PooledList(int[] handles) {
+            this.handles = handles;
+        }
+        
+        @Override
+        public String get(int index) {
+            return TextPool.this.get(handles[index]);
+        }
+        
+        @Override
+        public int size() {
+            return handles.length;
+        }
+    }
+}
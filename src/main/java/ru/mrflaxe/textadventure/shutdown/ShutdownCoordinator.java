@@ -0,0 +1,136 @@
+package ru.mrflaxe.textadventure.shutdown;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.model.request.Keyboard;
+import com.pengrad.telegrambot.model.request.ParseMode;
+import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.SendResponse;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.quest.QuestSessionManager;
+import ru.mrflaxe.textadventure.quest.message.branch.QuestBranch;
+import ru.mrflaxe.textadventure.tool.ThrottledSender;
+import ru.mrflaxe.textadventure.update.UpdateProvider;
+import ru.mrflaxe.textadventure.update.polling.PollingController;
+import ru.mrflaxe.textadventure.user.User;
+
+/**
+ * Stops the bot without losing progress of active players. <br>
+ * Steps are: stop receiving updates, cancel pending quest sendings,
+ * save all sessions in one transaction and notify players within the deadline.
+ */
+public class ShutdownCoordinator {
+    
+    private final TelegramBot bot;
+    private final PollingController pollingController;
+    private final Configuration messages;
+    private final UpdateProvider updateProvider;
+    private final QuestSessionManager sessionManager;
+    
+    private final int deadline;
+    private final int messagesPerSecond;
+    
+    public ShutdownCoordinator(
+            TelegramBot bot,
+            PollingController pollingController,
+            Configuration config,
+            Configuration messages,
+            UpdateProvider updateProvider,
+            QuestSessionManager sessionManager
+            ) {
+        this.bot = bot;
+        this.pollingController = pollingController;
+        this.messages = messages;
+        this.updateProvider = updateProvider;
+        this.sessionManager = sessionManager;
+        
+        this.deadline = getInt(config, "shutdown.deadline", 30);
+        this.messagesPerSecond = getInt(config, "shutdown.messages-per-second", 25);
+    }
+    
+    public ShutdownReport shutdown() {
+        long start = System.currentTimeMillis();
+        ShutdownReport report = new ShutdownReport();
+        
+        // No new updates from now
+        pollingController.stop();
+        
+        // Cancels all timers and saves progress of everyone in one transaction
+        Map<User, QuestBranch> sessions = sessionManager.stopAllSessions();
+        
+        report.setClosedSessions(sessions.size());
+        report.setSavesFlushed(sessionManager.saveSessions(sessions));
+        sessionManager.shutdown();
+        
+        notifyPlayers(sessions.keySet(), report, start);
+        
+        report.setDuration(System.currentTimeMillis() - start);
+        return report;
+    }
+    
+    private void notifyPlayers(Set<User> players, ShutdownReport report, long start) {
+        if(players.isEmpty()) {
+            return;
+        }
+        
+        // All players had active session so all of them have a save now.
+        // The notice goes together with the menu keyboard in one message.
+        String notify = messages.getString("on-disable");
+        Keyboard menuKeyboard = updateProvider.buildMenuKeyboard(true);
+        
+        ThrottledSender sender = new ThrottledSender(bot, messagesPerSecond);
+        Map<Long, CompletableFuture<SendResponse>> sendings = new HashMap<>();
+        
+        players.forEach(user -> {
+            long chatID = user.getChatID();
+            
+            SendMessage request = new SendMessage(chatID, notify)
+                    .parseMode(ParseMode.HTML)
+                    .replyMarkup(menuKeyboard);
+            
+            sendings.put(chatID, sender.send(request));
+        });
+        
+        long deadlineTime = start + TimeUnit.SECONDS.toMillis(deadline);
+        
+        sendings.forEach((chatID, sending) -> {
+            long timeLeft = Math.max(0, deadlineTime - System.currentTimeMillis());
+            
+            try {
+                SendResponse response = sending.get(timeLeft, TimeUnit.MILLISECONDS);
+                
+                if(response.isOk()) {
+                    report.getDelivered().add(chatID);
+                } else {
+                    report.getFailed().add(chatID);
+                }
+            } catch (TimeoutException exception) {
+                report.getTimedOut().add(chatID);
+            } catch (ExecutionException exception) {
+                report.getFailed().add(chatID);
+            } catch (InterruptedException exception) {
+                report.getTimedOut().add(chatID);
+                Thread.currentThread().interrupt();
+            }
+        });
+        
+        sender.shutdown();
+    }
+    
+    private int getInt(Configuration config, String section, int defaultValue) {
+        if(!config.containsSection(section)) {
+            return defaultValue;
+        }
+        
+        int value = config.getInt(section);
+        return value <= 0 ? defaultValue : value;
+    }
+}
@@ -0,0 +1,52 @@
+package ru.mrflaxe.textadventure.shutdown;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Result of the bot shutdown. Tells whose progress was saved and who got the notice.
+ */
+@Getter
+public class ShutdownReport {
+    
+    private final List<Long> delivered;
+    private final List<Long> failed;
+    private final List<Long> timedOut;
+    
+    @Setter
+    private int closedSessions;
+    
+    @Setter
+    private boolean savesFlushed;
+    
+    @Setter
+    private long duration;
+    
+    public ShutdownReport() {
+        this.delivered = new ArrayList<>();
+        this.failed = new ArrayList<>();
+        this.timedOut = new ArrayList<>();
+    }
+    
+    @Override
+    public String toString() {
+        String report = "Shutdown finished in " + duration + " ms.\n"
+                + "Closed sessions: " + closedSessions + ", saves " + (savesFlushed ? "flushed" : "NOT flushed") + ".\n"
+                + "Notices delivered: " + delivered.size()
+                + ", failed: " + failed.size()
+                + ", not sent before deadline: " + timedOut.size() + ".";
+        
+        if(!failed.isEmpty()) {
+            report = report + "\nFailed chats: " + failed;
+        }
+        
+        if(!timedOut.isEmpty()) {
+            report = report + "\nTimed out chats: " + timedOut;
+        }
+        
+        return report;
+    }
+}
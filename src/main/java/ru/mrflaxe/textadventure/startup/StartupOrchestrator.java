@@ -0,0 +1,148 @@
+package ru.mrflaxe.textadventure.startup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import ru.mrflaxe.textadventure.MyBot;
+import ru.mrflaxe.textadventure.achievement.AchievementCatalog;
+import ru.mrflaxe.textadventure.achievement.AchievmentManager;
+import ru.mrflaxe.textadventure.cluster.ClusterRole;
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.database.Database;
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.migration.MigrationRunner;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.quest.registry.QuestRegistry;
+import ru.mrflaxe.textadventure.user.UserProvider;
+
+/**
+ * Starts the bot running independent steps at the same time. <br>
+ * Messages, achievements and database connection are loaded in parallel.
+ * The default quest is parsed while database connects and migrates,
+ * known chats and the leaderboard are read from database in parallel.
+ * The bot is assembled and starts receiving updates as soon as all of them are ready.
+ */
+public class StartupOrchestrator {
+    
+    private static final int THREADS = 4;
+    
+    private final Configuration config;
+    private final ExecutorService executor;
+    
+    @Getter
+    private final StartupReport report;
+    
+    private long startTime;
+    
+    public StartupOrchestrator(Configuration config) {
+        this.config = config;
+        this.report = new StartupReport();
+        
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Builds and launches the bot.
+     * @param role - standalone bot or cluster worker
+     * @return launched bot
+     * @throws java.util.concurrent.CompletionException if any phase failed
+     */
+    public MyBot start(ClusterRole role) {
+        this.startTime = System.currentTimeMillis();
+        
+        try {
+            CompletableFuture<Configuration> messages = supply("messages", () -> new Configuration("messages.yml"));
+            CompletableFuture<AchievementCatalog> achievements = supply("achievements",
+                    () -> new AchievementCatalog(new Configuration("achievements.yml")));
+            
+            CompletableFuture<Database> connection = supply("database", this::connectDatabase);
+            CompletableFuture<DatabaseManager> database = connection.thenApplyAsync(db -> measure("migrations", () -> createManager(db)), executor);
+            
+            // Quests don't need database
+            CompletableFuture<QuestRegistry> quests = achievements.thenApplyAsync(catalog -> measure("quests", () -> loadQuests(catalog)), executor);
+            
+            CompletableFuture<UserProvider> users = database.thenApplyAsync(db -> measure("users", () -> new UserProvider(db)), executor);
+            CompletableFuture<AchievmentManager> leaderboard = database.thenCombineAsync(achievements,
+                    (db, catalog) -> measure("leaderboard", () -> new AchievmentManager(catalog, db)), executor);
+            
+            // Waits for all phases before the bot is assembled, so its phase doesn't include waiting
+            CompletableFuture.allOf(messages, users, leaderboard, quests).join();
+            
+            MyBot bot = measure("bot", () -> new MyBot(
+                    messages.join(),
+                    config,
+                    database.join(),
+                    users.join(),
+                    leaderboard.join(),
+                    quests.join()
+                    ));
+            
+            measure("launch", () -> launch(bot, role));
+            
+            report.setDuration(System.currentTimeMillis() - startTime);
+            return bot;
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    private Database connectDatabase() {
+        Database database = new Database(config);
+        database.establishConnection();
+        
+        return database;
+    }
+    
+    // Creates tables and brings them to the latest schema version.
+    // Bot doesn't start on an old schema, because all queries would fail on it
+    private DatabaseManager createManager(Database database) {
+        if(database.getConnection() != null && !new MigrationRunner(database.getConnection()).migrate()) {
+            throw new IllegalStateException("Database schema is not up to date because migration failed");
+        }
+        
+        DatabaseManager databaseManager = database.createManager();
+        
+        if(databaseManager == null) {
+            Logger.error("Failed to create DatabaseManager");
+        }
+        
+        return databaseManager;
+    }
+    
+    // The default quest is needed right after start to restore journal and to start analytics
+    private QuestRegistry loadQuests(AchievementCatalog achievements) {
+        QuestRegistry questRegistry = new QuestRegistry(achievements, config);
+        questRegistry.getQuest(null);
+        
+        return questRegistry;
+    }
+    
+    private MyBot launch(MyBot bot, ClusterRole role) {
+        if(role == ClusterRole.WORKER) {
+            bot.launchWorker();
+        } else {
+            bot.launch();
+        }
+        
+        return bot;
+    }
+    
+    private <T> CompletableFuture<T> supply(String phase, Supplier<T> step) {
+        return CompletableFuture.supplyAsync(() -> measure(phase, step), executor);
+    }
+    
+    private <T> T measure(String phase, Supplier<T> step) {
+        long start = System.currentTimeMillis();
+        T result = step.get();
+        
+        report.addPhase(phase, start - startTime, System.currentTimeMillis() - start);
+        return result;
+    }
+}
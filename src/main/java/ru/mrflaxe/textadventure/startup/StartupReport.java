@@ -0,0 +1,68 @@
+package ru.mrflaxe.textadventure.startup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Timings of startup phases. Phases which ran at the same time overlap,
+ * so the total time is less than the sum of the phases.
+ */
+public class StartupReport {
+    
+    private final List<Phase> phases;
+    
+    @Getter
+    @Setter
+    private long duration;
+    
+    public StartupReport() {
+        this.phases = new ArrayList<>();
+    }
+    
+    /**
+     * Adds finished phase.
+     * @param name - name of the phase
+     * @param start - millis from the startup beginning to the phase start
+     * @param duration - millis the phase took
+     */
+    public synchronized void addPhase(String name, long start, long duration) {
+        phases.add(new Phase(name, start, duration));
+    }
+    
+    @Override
+    public synchronized String toString() {
+        List<Phase> sorted = new ArrayList<>(phases);
+        sorted.sort((first, second) -> Long.compare(first.start, second.start));
+        
+        long serial = 0;
+        StringBuilder report = new StringBuilder("Startup finished in " + duration + " ms, the bot accepts updates.");
+        
+        for (Phase phase : sorted) {
+            serial += phase.duration;
+            
+            report.append("\n").append(String.format("%-12s %6d - %6d ms (%d ms)",
+                    phase.name, phase.start, phase.start + phase.duration, phase.duration));
+        }
+        
+        report.append("\nPhases take ").append(serial).append(" ms one after another, ")
+                .append(Math.max(0, serial - duration)).append(" ms saved by running them in parallel.");
+        
+        return report.toString();
+    }
+    
+    private static class Phase {
+        
+        private final String name;
+        private final long start;
+        private final long duration;
+        
+        private Phase(String name, long start, long duration) {
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.mrflaxe.textadventure.tool;
+
+/**
+ * Bloom filter of long values. <br>
+ * Answers 'definitely not added' or 'maybe added'.
+ * False answers are always right, true answers are wrong with small probability.
+ */
+public class BloomFilter {
+    
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+    
+    /**
+     * @param expectedCount - count of values expected to be added
+     * @param falsePositiveRate - wanted probability of wrong 'maybe added' answer
+     */
+    public BloomFilter(int expectedCount, double falsePositiveRate) {
+        Validate.isTrue(expectedCount > 0, "'expectedCount' must be positive!");
+        Validate.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "'falsePositiveRate' must be between 0 and 1!");
+        
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedCount * Math.log(falsePositiveRate) / (ln2 * ln2));
+        
+        this.bitCount = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 63, optimalBits));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedCount * ln2));
+        this.bits = new long[(bitCount + 63) / 64];
+    }
+    
+    public synchronized void add(long value) {
+        long hash = mix(value);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        
+        for (int i = 0; i < hashCount; i++) {
+            int index = Math.floorMod(first + i * second, bitCount);
+            bits[index >>> 6] |= 1L << index;
+        }
+    }
+    
+    public synchronized boolean mightContain(long value) {
+        long hash = mix(value);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        
+        for (int i = 0; i < hashCount; i++) {
+            int index = Math.floorMod(first + i * second, bitCount);
+            
+            if((bits[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    // Spreads bits of the value so close chat ids don't get close hashes
+    private long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.mrflaxe.textadventure.tool;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.pengrad.telegrambot.Callback;
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.BaseRequest;
+import com.pengrad.telegrambot.response.BaseResponse;
+
+/**
+ * Sends requests asynchronously not faster than given rate. <br>
+ * Telegram starts to reject requests when a bot sends more than about 30 messages per second,
+ * so mass sendings should go through this class.
+ */
+public class ThrottledSender {
+
+    private final TelegramBot bot;
+    private final ScheduledExecutorService scheduler;
+    private final long intervalNanos;
+    
+    private long nextSendTime;
+    
+    public ThrottledSender(TelegramBot bot, int messagesPerSecond) {
+        Validate.isTrue(messagesPerSecond > 0, "'messagesPerSecond' must be positive!");
+        
+        this.bot = bot;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "throttled-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond;
+        this.nextSendTime = System.nanoTime();
+    }
+    
+    /**
+     * Queues request for sending.
+     * @param request - request to send
+     * @return future completed with response or with exception if request failed
+     */
+    public <T extends BaseRequest<T, R>, R extends BaseResponse> CompletableFuture<R> send(T request) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        long delay = reserveSlot();
+        
+        scheduler.schedule(() -> bot.execute(request, new Callback<T, R>() {
+            
+            @Override
+            public void onResponse(T request, R response) {
+                result.complete(response);
+            }
+            
+            @Override
+            public void onFailure(T request, IOException exception) {
+                result.completeExceptionally(exception);
+            }
+        }), delay, TimeUnit.NANOSECONDS);
+        
+        return result;
+    }
+    
+    /**
+     * Stops sending. Requests which were not sent yet are dropped.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+    
+    // Returns delay before the next free sending slot and takes this slot
+    private synchronized long reserveSlot() {
+        long now = System.nanoTime();
+        
+        if(nextSendTime < now) {
+            nextSendTime = now;
+        }
+        
+        long delay = nextSendTime - now;
+        nextSendTime += intervalNanos;
+        
+        return delay;
+    }
+}
@@ -0,0 +1,81 @@
+package ru.mrflaxe.textadventure.update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent by each update handler. <br>
+ * Updated from threads handling updates and can be read from any other thread.
+ */
+public class HandlerMetrics {
+    
+    // Handler name and its counters
+    private final Map<String, HandlerCounters> handlers;
+    
+    public HandlerMetrics() {
+        this.handlers = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Records one handled update.
+     * @param handler - name of the handler
+     * @param nanos - time spent by the handler
+     */
+    public void record(String handler, long nanos) {
+        HandlerCounters counters = handlers.computeIfAbsent(handler, name -> new HandlerCounters());
+        
+        counters.calls.increment();
+        counters.totalTime.add(nanos);
+        counters.maxTime.accumulate(nanos);
+    }
+    
+    /**
+     * Builds human readable report for console output
+     * @param limit - max count of handlers, the slowest ones go first
+     * @return report text
+     */
+    public String report(int limit) {
+        List<Map.Entry<String, HandlerCounters>> sorted = new ArrayList<>(handlers.entrySet());
+        sorted.sort((first, second) -> Long.compare(second.getValue().maxTime.get(), first.getValue().maxTime.get()));
+        
+        if(sorted.isEmpty()) {
+            return "No updates were handled yet";
+        }
+        
+        StringBuilder report = new StringBuilder("Slowest handlers:");
+        
+        for (int i = 0; i < sorted.size() && i < limit; i++) {
+            HandlerCounters counters = sorted.get(i).getValue();
+            long calls = counters.calls.sum();
+            
+            report.append("\n").append(sorted.get(i).getKey()).append(": ")
+                    .append(calls).append(" calls, avg ")
+                    .append(millis(calls == 0 ? 0 : counters.totalTime.sum() / calls)).append(" ms, max ")
+                    .append(millis(counters.maxTime.get())).append(" ms");
+        }
+        
+        return report.toString();
+    }
+    
+    private String millis(long nanos) {
+        return String.format("%.2f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    
+    private static class HandlerCounters {
+        
+        private final LongAdder calls;
+        private final LongAdder totalTime;
+        private final LongAccumulator maxTime;
+        
+        private HandlerCounters() {
+            this.calls = new LongAdder();
+            this.totalTime = new LongAdder();
+            this.maxTime = new LongAccumulator(Math::max, 0);
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.util.Map;
 
 import com.pengrad.telegrambot.TelegramBot;
 import com.pengrad.telegrambot.UpdatesListener;
+import com.pengrad.telegrambot.model.CallbackQuery;
+import com.pengrad.telegrambot.model.Message;
 import com.pengrad.telegrambot.model.Update;
 import com.pengrad.telegrambot.model.request.Keyboard;
 import com.pengrad.telegrambot.model.request.KeyboardButton;
@@ -17,32 +19,44 @@ import lombok.Getter;
 import ru.mrflaxe.textadventure.achievement.AchievmentManager;
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.database.DatabaseManager;
-import ru.mrflaxe.textadventure.database.model.ProfileModel;
 import ru.mrflaxe.textadventure.quest.QuestSessionManager;
+import ru.mrflaxe.textadventure.quest.registry.QuestRegistry;
 import ru.mrflaxe.textadventure.tool.Cooldown;
 import ru.mrflaxe.textadventure.update.handlers.AchievementHandler;
 import ru.mrflaxe.textadventure.update.handlers.ExitHandler;
 import ru.mrflaxe.textadventure.update.handlers.InfoHandler;
 import ru.mrflaxe.textadventure.update.handlers.MessageHandler;
 import ru.mrflaxe.textadventure.update.handlers.PlayHandler;
+import ru.mrflaxe.textadventure.update.handlers.QuestsHandler;
 import ru.mrflaxe.textadventure.update.handlers.StartHandler;
+import ru.mrflaxe.textadventure.update.handlers.TopHandler;
 import ru.mrflaxe.textadventure.update.handlers.UnknownCommandHandler;
+import ru.mrflaxe.textadventure.update.response.StaticResponse;
+import ru.mrflaxe.textadventure.update.response.StaticResponseSender;
 import ru.mrflaxe.textadventure.user.User;
 import ru.mrflaxe.textadventure.user.UserProvider;
 
 public class UpdateProvider implements UpdatesListener {
-
+    
     private final TelegramBot telegramBot;
+    private final StaticResponseSender staticResponses;
     private final Configuration messages;
     private final DatabaseManager databaseManager;
     private final UserProvider userProvider;
+    private final AchievmentManager achievmentManager;
     
     @Getter
     private final QuestSessionManager questSessions;
     
+    @Getter
+    private final HandlerMetrics handlerMetrics;
+    
     private Map<String, MessageHandler> commandHandlers;
     private MessageHandler unknownCommandHandler;
     
+    @Getter
+    private AchievementHandler achievementHandler;
+    
     private String profileButton;
     private String infoButton;
     private String playButton;
@@ -50,26 +64,36 @@ public class UpdateProvider implements UpdatesListener {
     
     private Cooldown cooldown;
     
+    private StaticResponse waitResponse;
+    private StaticResponse menuResponse;
+    private StaticResponse menuWithSaveResponse;
+    
     public UpdateProvider(
             TelegramBot telegramBot,
+            StaticResponseSender staticResponses,
             Configuration config,
             Configuration messages,
             DatabaseManager databaseManager,
             AchievmentManager achievmentManager,
+            QuestRegistry questRegistry,
             UserProvider userProvider
             ) {
         this.commandHandlers = new HashMap<>();
-        this.unknownCommandHandler = new UnknownCommandHandler(telegramBot, messages, this);
+        this.handlerMetrics = new HandlerMetrics();
+        this.unknownCommandHandler = new UnknownCommandHandler(telegramBot, messages, this, staticResponses);
         
         this.telegramBot = telegramBot;
+        this.staticResponses = staticResponses;
         this.messages = messages;
         this.databaseManager = databaseManager;
         this.userProvider = userProvider;
+        this.achievmentManager = achievmentManager;
         
         this.questSessions = new QuestSessionManager(
                 this,
                 databaseManager,
                 achievmentManager,
+                questRegistry,
                 config,
                 messages,
                 telegramBot
@@ -78,13 +102,53 @@ public class UpdateProvider implements UpdatesListener {
         int cooldown = config.getInt("send-cooldown");
         this.cooldown = new Cooldown(cooldown);
         
-        initializeHandlers();
+        initializeHandlers(config);
         registerButtons();
+        registerStaticResponses();
     }
     
     @Override
     public int process(List<Update> updates) {
+        // Loads users of all chats in this batch at once.
+        // New users get their profiles in one transaction.
+        Map<Long, String> chats = new HashMap<>();
+        
+        updates.forEach(update -> {
+            Message message = update.message();
+            
+            if(message != null) {
+                chats.putIfAbsent(message.chat().id(), message.chat().firstName());
+            }
+            
+            // Chat id of a private chat is the same as user id
+            CallbackQuery query = update.callbackQuery();
+            
+            if(query != null) {
+                chats.putIfAbsent(query.from().id(), query.from().firstName());
+            }
+        });
+        
+        userProvider.prepareUsers(chats);
+        
         updates.forEach(update -> {
+            // Taps on inline answer buttons. They are not limited by cooldown
+            // because taps on old buttons are rejected anyway
+            if(update.callbackQuery() != null) {
+                User user = userProvider.getUser(update.callbackQuery().from().id());
+                
+                if(user != null) {
+                    measure("callback", () -> questSessions.handleCallback(update.callbackQuery(), user));
+                }
+                
+                return;
+            }
+            
+            // Only messages and callbacks are handled. Other update types are not requested
+            // but may still come if allowed updates were changed in config
+            if(update.message() == null) {
+                return;
+            }
+            
             // Gets text of the message
             String textMessage = update.message().text();
             // Gets id of the chat
@@ -93,27 +157,14 @@ public class UpdateProvider implements UpdatesListener {
             // Gets user from provider
             User user = userProvider.getUser(chatID);
             
-            // If it's new user save his data in cache
-            // And if he is new for database save there
+            // Means database is not available right now
             if(user == null) {
-                String name = update.message().chat().firstName();
-                user = new User(chatID, name, databaseManager);
-                userProvider.addUser(chatID, user);
-                
-                if(!databaseManager.hasProfile(chatID)) {
-                    // Saving new profile to database
-                    databaseManager.createAndSaveProfile(chatID, name);
-                }
+                return;
             }
             
             // If cooldown still going asks user to wait
             if(cooldown.isCooldown()) {
-                String message = messages.getString("wait", true);
-                
-                SendMessage request = new SendMessage(user.getChatID(), message);
-                request.parseMode(ParseMode.HTML);
-                
-                telegramBot.execute(request);
+                measure("wait", () -> staticResponses.send(waitResponse, user.getChatID()));
                 return;
             }
             
@@ -125,26 +176,28 @@ public class UpdateProvider implements UpdatesListener {
                 // If user tries to leave game
                 if(textMessage.equals("/exit")) {
                     // Handling exit command
-                    commandHandlers.get(textMessage).handle(update);
+                    handle(commandHandlers.get(textMessage), update);
                     return;
                 }
                 
                 // In other cases the message can be or answer option or just some random text
                 // Anyway will handle it in quest handler
-                questSessions.handle(update.message(), user);
+                measure("quest", () -> questSessions.handle(update.message(), user));
                 return;
             }
             
             // If text is not null it can be a command
             if(textMessage != null) {
+                MessageHandler handler = getCommandHandler(textMessage);
+                
                 // If commandHandlers contains this message as a key so it's a command
                 // Will handle it
-                if(commandHandlers.containsKey(textMessage)) {
-                    commandHandlers.get(textMessage).handle(update);
+                if(handler != null) {
+                    handle(handler, update);
                     return;
                 // Otherwise will say user that bot doesn't know such command
                 } else {
-                    unknownCommandHandler.handle(update);
+                    handle(unknownCommandHandler, update);
                     return;
                 }
             }
@@ -153,41 +206,60 @@ public class UpdateProvider implements UpdatesListener {
         return CONFIRMED_UPDATES_ALL;
     }
     
+    /**
+     * Reads messages.yml again and encodes static responses with new texts. <br>
+     * Texts of buttons and quest headers are read once at start, so they change only after restart.
+     */
+    public void reloadMessages() {
+        messages.refresh();
+        staticResponses.reload();
+        achievementHandler.clearCache();
+    }
+    
     /**
      * Returns user to bot main menu
      * @param user - whom to return
      */
     public void returnToMainMenu(User user) {
-        String message = messages.getString("menu.message", true);
         long chatID = user.getChatID();
+        boolean userHasSave = databaseManager.hasQuestSave(chatID);
         
-        ProfileModel profile = user.getUserProfile();
-        
-        boolean userHasSave = databaseManager.hasQuestSave(profile);
-        String playButton;
-        
+        // Sending message and keyboard
+        staticResponses.send(userHasSave ? menuWithSaveResponse : menuResponse, chatID);
+    }
+    
+    /**
+     * Creates main menu keyboard
+     * @param userHasSave - if true keyboard will have 'continue' button instead of 'start'
+     * @return main menu keyboard
+     */
+    public Keyboard buildMenuKeyboard(boolean userHasSave) {
         // If user has save showing one button
         // If not showing another. Simple
-        if(!userHasSave) {
-            playButton = this.playButton;
-        } else {
-            playButton = this.continueButton;
-        }
-
+        String playButton = userHasSave ? this.continueButton : this.playButton;
+        
         // Creating new replyKeyboard with menu buttons
-        Keyboard replKeyboardMarkup = new ReplyKeyboardMarkup(
+        return new ReplyKeyboardMarkup(
                 new KeyboardButton[]{
                         new KeyboardButton(playButton)
                 }, new KeyboardButton[] {
                         new KeyboardButton(profileButton),
                         new KeyboardButton(infoButton)
                 }).resizeKeyboard(true);
+    }
+    
+    private void handle(MessageHandler handler, Update update) {
+        measure(handler.getClass().getSimpleName(), () -> handler.handle(update));
+    }
+    
+    private void measure(String name, Runnable action) {
+        long start = System.nanoTime();
         
-        // Sending message and keyboard
-        SendMessage request = new SendMessage(chatID, message).replyMarkup(replKeyboardMarkup);
-        request.parseMode(ParseMode.HTML);
-        
-        telegramBot.execute(request);
+        try {
+            action.run();
+        } finally {
+            handlerMetrics.record(name, System.nanoTime() - start);
+        }
     }
     
     private void registerButtons() {
@@ -203,13 +275,50 @@ public class UpdateProvider implements UpdatesListener {
         addAlternativeCommandTrigger(continueButton, "/play");
     }
     
+    // Messages which are the same for everyone are encoded once
+    private void registerStaticResponses() {
+        this.waitResponse = staticResponses.register(() -> new SendMessage(0, messages.getString("wait", true))
+                .parseMode(ParseMode.HTML));
+        
+        this.menuResponse = staticResponses.register(() -> buildMenuMessage(false));
+        this.menuWithSaveResponse = staticResponses.register(() -> buildMenuMessage(true));
+    }
+    
+    private SendMessage buildMenuMessage(boolean userHasSave) {
+        String message = messages.getString("menu.message", true);
+        
+        return new SendMessage(0, message)
+                .replyMarkup(buildMenuKeyboard(userHasSave))
+                .parseMode(ParseMode.HTML);
+    }
+    
+    // Commands may have arguments after a space, buttons are matched by the whole text
+    private MessageHandler getCommandHandler(String text) {
+        MessageHandler handler = commandHandlers.get(text);
+        
+        if(handler != null || !text.startsWith("/")) {
+            return handler;
+        }
+        
+        int space = text.indexOf(' ');
+        return space < 0 ? null : commandHandlers.get(text.substring(0, space));
+    }
+    
     // links handlers with command triggers
-    private void initializeHandlers() {
-        commandHandlers.put("/achievement", new AchievementHandler(telegramBot, messages, this, databaseManager));
-        commandHandlers.put("/info", new InfoHandler(telegramBot, messages, this));
+    private void initializeHandlers(Configuration config) {
+        int percentRefresh = config.containsSection("achievement-percent-refresh")
+                ? config.getInt("achievement-percent-refresh")
+                : 5;
+        
+        this.achievementHandler = new AchievementHandler(telegramBot, messages, this, databaseManager, achievmentManager, percentRefresh);
+        
+        commandHandlers.put("/achievement", achievementHandler);
+        commandHandlers.put("/info", new InfoHandler(telegramBot, messages, this, staticResponses));
         commandHandlers.put("/play", new PlayHandler(telegramBot, messages, this, userProvider, questSessions));
         commandHandlers.put("/start", new StartHandler(telegramBot, messages, this, userProvider));
         commandHandlers.put("/exit", new ExitHandler(telegramBot, messages, this, questSessions, userProvider));
+        commandHandlers.put("/quests", new QuestsHandler(telegramBot, messages, this, questSessions.getQuestRegistry()));
+        commandHandlers.put("/top", new TopHandler(telegramBot, messages, this, achievmentManager.getLeaderboard(), databaseManager));
     }
     
     /**
@@ -1,8 +1,13 @@
 package ru.mrflaxe.textadventure.update.handlers;
 
 import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import com.pengrad.telegrambot.TelegramBot;
@@ -11,36 +16,124 @@ import com.pengrad.telegrambot.model.request.ParseMode;
 import com.pengrad.telegrambot.request.SendMessage;
 
 import ru.mrflaxe.textadventure.achievement.Achievement;
+import ru.mrflaxe.textadventure.achievement.AchievmentManager;
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.database.DatabaseManager;
 import ru.mrflaxe.textadventure.database.model.AchievementModel;
 import ru.mrflaxe.textadventure.update.UpdateProvider;
 
+/**
+ * Sends list of player's achievements. <br>
+ * Rendered lists are cached by chat id and removed when the player gets a new achievement.
+ * Percents of owners are counted once per refresh time for all players, so lists rendered
+ * before the refresh are rendered again on the next request.
+ */
 public class AchievementHandler extends MessageHandler {
-
+    
+    // Lists of players who didn't request them for a long time are removed first
+    private static final int MAX_CACHED_LISTS = 10_000;
+    
     private final DatabaseManager databaseManager;
+    private final long percentRefresh;
+    
+    private final Map<Long, RenderedList> renderedLists;
     
-    public AchievementHandler(TelegramBot bot, Configuration messages, UpdateProvider updateProvider, DatabaseManager databaseManager) {
+    // Achievement id and its rendered percent of owners for the current refresh period
+    private final Map<String, String> percentInfos;
+    private volatile long percentPeriod;
+    
+    private final LongAdder hits;
+    private final LongAdder misses;
+    
+    public AchievementHandler(
+            TelegramBot bot,
+            Configuration messages,
+            UpdateProvider updateProvider,
+            DatabaseManager databaseManager,
+            AchievmentManager achievmentManager,
+            int percentRefreshMinutes
+            ) {
         super(bot, messages, updateProvider);
         
         this.databaseManager = databaseManager;
+        this.percentRefresh = TimeUnit.MINUTES.toMillis(Math.max(1, percentRefreshMinutes));
+        
+        this.renderedLists = Collections.synchronizedMap(new LinkedHashMap<Long, RenderedList>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RenderedList> eldest) {
+                return size() > MAX_CACHED_LISTS;
+            }
+        });
+        
+        this.percentInfos = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        
+        achievmentManager.addAchievementListener(renderedLists::remove);
     }
-
+    
     @Override
     public void handle(Update update) {
         Long chatID = update.message().chat().id();
+        long period = System.currentTimeMillis() / percentRefresh;
+        
+        RenderedList rendered = renderedLists.get(chatID);
+        
+        if(rendered == null || rendered.period != period) {
+            misses.increment();
+            rendered = new RenderedList(render(chatID, period), period);
+            renderedLists.put(chatID, rendered);
+        } else {
+            hits.increment();
+        }
         
+        SendMessage request = new SendMessage(chatID, rendered.message);
+        request.parseMode(ParseMode.HTML);
+        
+        bot.execute(request);
+    }
+    
+    /**
+     * Removes all rendered lists and percents, for example after messages were changed.
+     */
+    public void clearCache() {
+        renderedLists.clear();
+        percentInfos.clear();
+    }
+    
+    /**
+     * Builds human readable report for console output
+     * @return report text
+     */
+    public String report() {
+        long hits = this.hits.sum();
+        long requests = hits + misses.sum();
+        
+        return "Achievement lists: " + renderedLists.size() + "/" + MAX_CACHED_LISTS + " cached, "
+                + percentInfos.size() + " percents, hit rate "
+                + (requests == 0 ? 0 : hits * 100 / requests) + "% of " + requests + " requests";
+    }
+    
+    private String render(long chatID, long period) {
         List<AchievementModel> achievementModels = databaseManager.getAchievements(chatID);
+        
+        if(achievementModels == null) {
+            achievementModels = Collections.emptyList();
+        }
+        
         List<Achievement> achievements = achievementModels.stream()
                 .map(AchievementModel::getAchievment)
                 .collect(Collectors.toList());
         
-        String message = buildMessage(achievements);
-        
-        SendMessage request = new SendMessage(chatID, message);
-        request.parseMode(ParseMode.HTML);
+        // Percents of the previous period are not valid anymore
+        if(percentPeriod != period) {
+            percentInfos.clear();
+            percentPeriod = period;
+        }
         
-        bot.execute(request);
+        return buildMessage(achievements);
     }
     
     // I'm too lazy to comment this
@@ -55,40 +148,36 @@ public class AchievementHandler extends MessageHandler {
                     + emptyAchievements;
         }
         
-        String percentPattern = messages.getString("achievement.list.percent-pattern", true);
-        List<String> achievementsInfo = new ArrayList<>();
+        StringBuilder message = new StringBuilder(head).append("\n");
         
-        achievements.forEach(achievement -> {
-            String achievementID = achievement.getId();
-            String name = achievement.getName();
-            String description = achievement.getDescription();
-            float percent = databaseManager.getAchievmentPercent(achievementID);
-            
-            DecimalFormat formatter = new DecimalFormat("##.##");
-            String textPrecent = formatter.format(percent);
-            
-            String precentInfo = percentPattern.replace("%percent%", "" + textPrecent);
-            
-            if(databaseManager.isOnlyOneOwner(achievementID)) {
-                precentInfo = messages.getString("achievement.list.the-only-one", true);
-            }
-            
-            String achievementInfo = name + "\n"
-                    + description + "\n"
-                    + precentInfo;
-            
-            achievementsInfo.add(achievementInfo);
-        });
-        
-        String message = head + "\n";
+        achievements.forEach(achievement -> message.append("\n")
+                .append(achievement.getName()).append("\n")
+                .append(achievement.getDescription()).append("\n")
+                .append(percentInfos.computeIfAbsent(achievement.getId(), this::buildPercentInfo)).append("\n"));
         
-        for (int i = 0; i < achievementsInfo.size(); i++) {
-            String achivementInfo = achievementsInfo.get(i);
-            
-            message = message + "\n"
-                    + achivementInfo + "\n";
+        return message.toString();
+    }
+    
+    // Counting owners reads all profiles, so it's done once per refresh period for each achievement
+    private String buildPercentInfo(String achievementID) {
+        if(databaseManager.isOnlyOneOwner(achievementID)) {
+            return messages.getString("achievement.list.the-only-one", true);
         }
         
-        return message;
+        float percent = databaseManager.getAchievmentPercent(achievementID);
+        String textPrecent = new DecimalFormat("##.##").format(percent);
+        
+        return messages.getString("achievement.list.percent-pattern", true).replace("%percent%", textPrecent);
+    }
+    
+    private static class RenderedList {
+        
+        private final String message;
+        private final long period;
+        
+        private RenderedList(String message, long period) {
+            this.message = message;
+            this.period = period;
+        }
     }
 }
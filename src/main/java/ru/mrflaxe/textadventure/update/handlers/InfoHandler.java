@@ -12,25 +12,29 @@ import com.pengrad.telegrambot.request.SendMessage;
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.configuration.ConfigurationSection;
 import ru.mrflaxe.textadventure.update.UpdateProvider;
+import ru.mrflaxe.textadventure.update.response.StaticResponse;
+import ru.mrflaxe.textadventure.update.response.StaticResponseSender;
 
 public class InfoHandler extends MessageHandler {
     
-    public InfoHandler(TelegramBot bot, Configuration messages, UpdateProvider updateProvider) {
+    private final StaticResponseSender staticResponses;
+    private final StaticResponse response;
+    
+    public InfoHandler(TelegramBot bot, Configuration messages, UpdateProvider updateProvider, StaticResponseSender staticResponses) {
         super(bot, messages, updateProvider);
+        
+        this.staticResponses = staticResponses;
+        this.response = staticResponses.register(() -> new SendMessage(0, buildInfoMessage())
+                .parseMode(ParseMode.HTML)
+                .disableWebPagePreview(true));
     }
-
+    
     @Override
     public void handle(Update update) {
         long chatId = update.message().chat().id();
-        String message = buildInfoMessage();
-        
-        SendMessage request = new SendMessage(chatId, message);
-        request.parseMode(ParseMode.HTML);
-        request.disableWebPagePreview(true);
-        
-        bot.execute(request);
+        staticResponses.send(response, chatId);
     }
-
+    
     private String buildInfoMessage() {
         String author = messages.getString("info.author", true);
         String github = messages.getString("info.github", true);
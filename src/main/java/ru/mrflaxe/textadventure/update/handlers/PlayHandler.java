@@ -2,6 +2,8 @@ package ru.mrflaxe.textadventure.update.handlers;
 
 import com.pengrad.telegrambot.TelegramBot;
 import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.model.request.ParseMode;
+import com.pengrad.telegrambot.request.SendMessage;
 
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.quest.QuestSessionManager;
@@ -37,8 +39,23 @@ public class PlayHandler extends MessageHandler {
             return;
         }
         
+        // Quest id may follow the command: /play <quest id>. Menu buttons don't have it
+        String text = update.message().text().trim();
+        int space = text.indexOf(' ');
+        String questID = text.startsWith("/") && space > 0 ? text.substring(space + 1).trim() : null;
+        
+        if(questID != null && !questSessions.getQuestRegistry().hasQuest(questID)) {
+            String message = messages.getString("quests.unknown", true);
+            
+            SendMessage request = new SendMessage(chatID, message);
+            request.parseMode(ParseMode.HTML);
+            
+            bot.execute(request);
+            return;
+        }
+        
         // Starts game
-        questSessions.openSession(user);
+        questSessions.openSession(user, questID);
     }
 
 }
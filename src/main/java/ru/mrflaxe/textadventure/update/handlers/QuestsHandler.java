@@ -0,0 +1,41 @@
+package ru.mrflaxe.textadventure.update.handlers;
+
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.model.request.ParseMode;
+import com.pengrad.telegrambot.request.SendMessage;
+
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.quest.registry.QuestRegistry;
+import ru.mrflaxe.textadventure.update.UpdateProvider;
+
+public class QuestsHandler extends MessageHandler {
+    
+    private final QuestRegistry questRegistry;
+    
+    public QuestsHandler(TelegramBot bot, Configuration messages, UpdateProvider updateProvider, QuestRegistry questRegistry) {
+        super(bot, messages, updateProvider);
+        
+        this.questRegistry = questRegistry;
+    }
+    
+    @Override
+    public void handle(Update update) {
+        long chatID = update.message().chat().id();
+        
+        String head = messages.getString("quests.head", true);
+        String pattern = messages.getString("quests.pattern", true);
+        
+        String message = head + "\n";
+        
+        // Catalog is read from folders only, so listing quests doesn't load them
+        for (String questID : questRegistry.getQuestIDs()) {
+            message = message + pattern.replace("%quest%", questID) + "\n";
+        }
+        
+        SendMessage request = new SendMessage(chatID, message);
+        request.parseMode(ParseMode.HTML);
+        
+        bot.execute(request);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.mrflaxe.textadventure.update.handlers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.model.request.ParseMode;
+import com.pengrad.telegrambot.request.SendMessage;
+
+import ru.mrflaxe.textadventure.achievement.Leaderboard;
+import ru.mrflaxe.textadventure.achievement.Leaderboard.Place;
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.database.DatabaseManager;
+import ru.mrflaxe.textadventure.database.model.ProfileModel;
+import ru.mrflaxe.textadventure.update.UpdateProvider;
+
+public class TopHandler extends MessageHandler {
+    
+    // Count of players in the top
+    private static final int TOP_SIZE = 10;
+    
+    private final Leaderboard leaderboard;
+    private final DatabaseManager databaseManager;
+    
+    public TopHandler(TelegramBot bot, Configuration messages, UpdateProvider updateProvider, Leaderboard leaderboard, DatabaseManager databaseManager) {
+        super(bot, messages, updateProvider);
+        
+        this.leaderboard = leaderboard;
+        this.databaseManager = databaseManager;
+    }
+    
+    @Override
+    public void handle(Update update) {
+        long chatID = update.message().chat().id();
+        
+        List<Place> top = leaderboard.getTop(TOP_SIZE);
+        String message = messages.getString("top.head", true) + "\n\n";
+        
+        if(top.isEmpty()) {
+            message = message + messages.getString("top.empty", true);
+        } else {
+            message = message + buildTop(top);
+        }
+        
+        Place own = leaderboard.getPlace(chatID);
+        
+        // The player is shown separately only if he is not in the top already
+        if(own != null && own.getRank() > TOP_SIZE) {
+            message = message + "\n" + messages.getString("top.your-place", true)
+                    .replace("%rank%", String.valueOf(own.getRank()))
+                    .replace("%count%", String.valueOf(own.getAchievements()));
+        }
+        
+        SendMessage request = new SendMessage(chatID, message);
+        request.parseMode(ParseMode.HTML);
+        
+        bot.execute(request);
+    }
+    
+    // Names are read with one query for the whole top
+    private String buildTop(List<Place> top) {
+        String pattern = messages.getString("top.pattern", true);
+        String unknownName = messages.getString("top.unknown-name", true);
+        
+        List<Long> chatIDs = top.stream()
+                .map(Place::getChatID)
+                .collect(Collectors.toList());
+        
+        Map<Long, String> names = new HashMap<>();
+        List<ProfileModel> profiles = databaseManager.getProfiles(chatIDs);
+        
+        if(profiles != null) {
+            profiles.forEach(profile -> names.put(profile.getChatId(), profile.getName()));
+        }
+        
+        String message = "";
+        
+        for (Place place : top) {
+            String name = names.get(place.getChatID());
+            
+            message = message + pattern
+                    .replace("%rank%", String.valueOf(place.getRank()))
+                    .replace("%name%", name == null ? unknownName : escape(name))
+                    .replace("%count%", String.valueOf(place.getAchievements())) + "\n";
+        }
+        
+        return message;
+    }
+    
+    // Names are chosen by players, so they can't be sent as HTML
+    private String escape(String name) {
+        return name.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+}
@@ -7,22 +7,25 @@ import com.pengrad.telegrambot.request.SendMessage;
 
 import ru.mrflaxe.textadventure.configuration.Configuration;
 import ru.mrflaxe.textadventure.update.UpdateProvider;
+import ru.mrflaxe.textadventure.update.response.StaticResponse;
+import ru.mrflaxe.textadventure.update.response.StaticResponseSender;
 
 public class UnknownCommandHandler extends MessageHandler {
-
-    public UnknownCommandHandler(TelegramBot bot, Configuration messages, UpdateProvider updateProvider) {
+    
+    private final StaticResponseSender staticResponses;
+    private final StaticResponse response;
+    
+    public UnknownCommandHandler(TelegramBot bot, Configuration messages, UpdateProvider updateProvider, StaticResponseSender staticResponses) {
         super(bot, messages, updateProvider);
         
+        this.staticResponses = staticResponses;
+        this.response = staticResponses.register(() -> new SendMessage(0, messages.getString("error.unknown-command", true))
+                .parseMode(ParseMode.HTML));
     }
-
+    
     @Override
     public void handle(Update update) {
-        String message = messages.getString("error.unknown-command", true);
         long chatID = update.message().chat().id();
-        
-        SendMessage request = new SendMessage(chatID, message);
-        request.parseMode(ParseMode.HTML);
-        
-        bot.execute(request);
+        staticResponses.send(response, chatID);
     }
 }
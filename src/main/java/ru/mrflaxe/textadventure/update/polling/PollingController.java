@@ -0,0 +1,214 @@
+package ru.mrflaxe.textadventure.update.polling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.UpdatesListener;
+import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.request.GetUpdates;
+import com.pengrad.telegrambot.response.GetUpdatesResponse;
+
+import lombok.Getter;
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.logging.Logger;
+import ru.mrflaxe.textadventure.quest.AnswerMode;
+
+/**
+ * Long polling loop which tunes getUpdates parameters between polls. <br>
+ * The library's own loop calls the listener only for non-empty batches,
+ * so this loop sends the requests itself and sees every response, including empty ones.
+ */
+public class PollingController {
+    
+    // Telegram does not accept limit out of 1-100 range
+    private static final int TELEGRAM_MAX_LIMIT = 100;
+    
+    // Pause before the next request after a failed one
+    private static final long ERROR_DELAY_MILLIS = 1000;
+    
+    private final UpdatesListener listener;
+    private final GetUpdates request;
+    
+    @Getter
+    private final PollingMetrics metrics;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final int idleTimeout;
+    private final int busyTimeout;
+    
+    private int limit;
+    
+    private volatile boolean running;
+    private Thread thread;
+    
+    public PollingController(UpdatesListener listener, Configuration config) {
+        this.listener = listener;
+        this.metrics = new PollingMetrics();
+        
+        this.maxLimit = clampLimit(getInt(config, "polling.max-limit", TELEGRAM_MAX_LIMIT));
+        this.minLimit = Math.min(maxLimit, clampLimit(getInt(config, "polling.min-limit", 20)));
+        this.idleTimeout = Math.max(0, getInt(config, "polling.idle-timeout", 50));
+        this.busyTimeout = Math.max(0, getInt(config, "polling.busy-timeout", 10));
+        
+        String[] allowedUpdates = getAllowedUpdates(config);
+        
+        this.limit = minLimit;
+        this.request = new GetUpdates()
+                .limit(limit)
+                .timeout(idleTimeout)
+                .allowedUpdates(allowedUpdates);
+        
+        metrics.recordParameters(limit, idleTimeout);
+    }
+    
+    /**
+     * Starts polling on its own thread.
+     * @param bot - client which sends getUpdates requests
+     */
+    public synchronized void start(TelegramBot bot) {
+        if(running) {
+            return;
+        }
+        
+        this.running = true;
+        this.thread = new Thread(() -> poll(bot), "telegram-polling");
+        thread.start();
+    }
+    
+    /**
+     * Stops polling. Updates of the request in progress are neither handled nor confirmed,
+     * so Telegram sends them again after restart.
+     */
+    public synchronized void stop() {
+        this.running = false;
+        
+        // Wakes the thread if it waits after a failed request
+        if(thread != null) {
+            thread.interrupt();
+        }
+    }
+    
+    private void poll(TelegramBot bot) {
+        while(running) {
+            long start = System.currentTimeMillis();
+            GetUpdatesResponse response;
+            
+            try {
+                response = bot.execute(request);
+            } catch (RuntimeException e) {
+                if(running) {
+                    Logger.warn("Failed to get updates: {}", e.getMessage());
+                    pause();
+                }
+                
+                continue;
+            }
+            
+            if(!running) {
+                return;
+            }
+            
+            if(!response.isOk()) {
+                Logger.warn("Failed to get updates, error {}: {}", response.errorCode(), response.description());
+                pause();
+                continue;
+            }
+            
+            List<Update> updates = response.updates() == null ? Collections.emptyList() : response.updates();
+            handle(updates, System.currentTimeMillis() - start);
+        }
+    }
+    
+    private void handle(List<Update> updates, long latency) {
+        int batchSize = updates.size();
+        metrics.record(latency, batchSize);
+        
+        try {
+            if(batchSize > 0) {
+                confirm(updates, listener.process(updates));
+            }
+        } catch (RuntimeException e) {
+            // Batch is confirmed anyway, otherwise the same updates would fail forever
+            Logger.error("Failed to handle {} updates", batchSize, e);
+            confirm(updates, UpdatesListener.CONFIRMED_UPDATES_ALL);
+        } finally {
+            adapt(batchSize);
+        }
+    }
+    
+    // Next request starts after the last confirmed update, the same way the library does it
+    private void confirm(List<Update> updates, int confirmed) {
+        if(confirmed == UpdatesListener.CONFIRMED_UPDATES_NONE) {
+            return;
+        }
+        
+        int lastUpdateID = confirmed == UpdatesListener.CONFIRMED_UPDATES_ALL
+                ? updates.get(updates.size() - 1).updateId()
+                : confirmed;
+        
+        request.offset(lastUpdateID + 1);
+    }
+    
+    private void pause() {
+        try {
+            Thread.sleep(ERROR_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Full batch means there are more updates waiting, so next time asks for more.
+    // Empty batch means nobody writes, so waits longer and asks for less.
+    private void adapt(int batchSize) {
+        int timeout;
+        
+        if(batchSize == 0) {
+            limit = Math.max(minLimit, limit / 2);
+            timeout = idleTimeout;
+        } else if(batchSize >= limit) {
+            limit = Math.min(maxLimit, limit * 2);
+            timeout = busyTimeout;
+        } else {
+            timeout = busyTimeout;
+        }
+        
+        request.limit(limit).timeout(timeout);
+        metrics.recordParameters(limit, timeout);
+    }
+    
+    private String[] getAllowedUpdates(Configuration config) {
+        List<String> allowedUpdates = new ArrayList<>();
+        
+        if(config.containsSection("polling.allowed-updates")) {
+            allowedUpdates.addAll(config.getStringList("polling.allowed-updates"));
+        } else {
+            allowedUpdates.add("message");
+        }
+        
+        // Inline answer buttons come as callback queries
+        boolean inlineAnswers = config.containsSection("answer-mode")
+                && AnswerMode.getByKey(config.getString("answer-mode")) == AnswerMode.INLINE;
+        
+        if(inlineAnswers && !allowedUpdates.contains("callback_query")) {
+            allowedUpdates.add("callback_query");
+        }
+        
+        return allowedUpdates.toArray(new String[0]);
+    }
+    
+    private int getInt(Configuration config, String section, int defaultValue) {
+        if(!config.containsSection(section)) {
+            return defaultValue;
+        }
+        
+        int value = config.getInt(section);
+        return value < 0 ? defaultValue : value;
+    }
+    
+    private int clampLimit(int limit) {
+        return Math.max(1, Math.min(TELEGRAM_MAX_LIMIT, limit));
+    }
+}
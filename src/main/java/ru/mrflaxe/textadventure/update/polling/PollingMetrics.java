@@ -0,0 +1,113 @@
+package ru.mrflaxe.textadventure.update.polling;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * Counters of the long polling loop. <br>
+ * Updated from the polling thread and can be read from any other thread.
+ */
+public class PollingMetrics {
+    
+    private final AtomicLong polls;
+    private final AtomicLong emptyPolls;
+    private final AtomicLong updates;
+    private final AtomicLong totalLatency;
+    
+    @Getter
+    private volatile long lastLatency;
+    
+    @Getter
+    private volatile int lastBatchSize;
+    
+    @Getter
+    private volatile int maxBatchSize;
+    
+    @Getter
+    private volatile int currentLimit;
+    
+    @Getter
+    private volatile int currentTimeout;
+    
+    public PollingMetrics() {
+        this.polls = new AtomicLong();
+        this.emptyPolls = new AtomicLong();
+        this.updates = new AtomicLong();
+        this.totalLatency = new AtomicLong();
+    }
+    
+    /**
+     * Records one finished getUpdates round trip.
+     * @param latency - time in millis spent waiting for the response
+     * @param batchSize - count of received updates
+     */
+    public void record(long latency, int batchSize) {
+        polls.incrementAndGet();
+        updates.addAndGet(batchSize);
+        totalLatency.addAndGet(latency);
+        
+        if(batchSize == 0) {
+            emptyPolls.incrementAndGet();
+        }
+        
+        if(batchSize > maxBatchSize) {
+            maxBatchSize = batchSize;
+        }
+        
+        this.lastLatency = latency;
+        this.lastBatchSize = batchSize;
+    }
+    
+    /**
+     * Remembers parameters which will be used by the next request
+     * @param limit - updates limit
+     * @param timeout - long polling timeout in seconds
+     */
+    public void recordParameters(int limit, int timeout) {
+        this.currentLimit = limit;
+        this.currentTimeout = timeout;
+    }
+    
+    public long getPolls() {
+        return polls.get();
+    }
+    
+    public long getEmptyPolls() {
+        return emptyPolls.get();
+    }
+    
+    public long getUpdates() {
+        return updates.get();
+    }
+    
+    /**
+     * @return average poll latency in millis or 0 if there was no polls yet
+     */
+    public long getAverageLatency() {
+        long count = polls.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+    
+    /**
+     * @return average count of updates per poll
+     */
+    public double getAverageBatchSize() {
+        long count = polls.get();
+        return count == 0 ? 0 : (double) updates.get() / count;
+    }
+    
+    /**
+     * Builds human readable report for console output
+     * @return report text
+     */
+    public String report() {
+        return "Polls: " + getPolls() + " (empty: " + getEmptyPolls() + ")\n"
+                + "Updates received: " + getUpdates() + "\n"
+                + "Batch size: last " + lastBatchSize
+                + ", avg " + String.format("%.2f", getAverageBatchSize())
+                + ", max " + maxBatchSize + "\n"
+                + "Poll latency: last " + lastLatency + " ms, avg " + getAverageLatency() + " ms\n"
+                + "Next request: limit " + currentLimit + ", timeout " + currentTimeout + " s";
+    }
+}
@@ -0,0 +1,58 @@
+package ru.mrflaxe.textadventure.update.response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.pengrad.telegrambot.BotUtils;
+import com.pengrad.telegrambot.request.SendMessage;
+
+/**
+ * Message which is the same for every chat, encoded to JSON once. <br>
+ * Only chat id is written for each sending, the rest of the body is taken as ready bytes.
+ */
+public class StaticResponse {
+    
+    private static final byte[] PREFIX = "{\"chat_id\":".getBytes(StandardCharsets.UTF_8);
+    
+    // Builds the message with any chat id, the id is replaced on sending
+    private final Supplier<SendMessage> template;
+    
+    // Everything after chat id starting with comma
+    private volatile byte[] suffix;
+    
+    StaticResponse(Supplier<SendMessage> template) {
+        this.template = template;
+        encode();
+    }
+    
+    /**
+     * Encodes the message again, for example after messages were changed.
+     */
+    public void encode() {
+        Map<String, Object> parameters = new LinkedHashMap<>(template.get().getParameters());
+        parameters.remove("chat_id");
+        
+        // Library's own Gson, so the body is the same as the library would send
+        String json = BotUtils.toJson(parameters);
+        this.suffix = ("," + json.substring(1)).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Builds request body for the chat.
+     * @param chatID - chat to send to
+     * @return JSON body of the request
+     */
+    byte[] getBody(long chatID) {
+        byte[] id = Long.toString(chatID).getBytes(StandardCharsets.US_ASCII);
+        byte[] suffix = this.suffix;
+        byte[] body = new byte[PREFIX.length + id.length + suffix.length];
+        
+        System.arraycopy(PREFIX, 0, body, 0, PREFIX.length);
+        System.arraycopy(id, 0, body, PREFIX.length, id.length);
+        System.arraycopy(suffix, 0, body, PREFIX.length + id.length, suffix.length);
+        
+        return body;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.mrflaxe.textadventure.update.response;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import com.pengrad.telegrambot.request.SendMessage;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import ru.mrflaxe.textadventure.configuration.Configuration;
+import ru.mrflaxe.textadventure.logging.Logger;
+
+/**
+ * Sends {@link StaticResponse} messages directly to Bot API as ready JSON bodies. <br>
+ * Uses the same HTTP client as the bot, so both share connections.
+ */
+public class StaticResponseSender {
+    
+    private static final String DEFAULT_API_URL = "https://api.telegram.org/bot";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    
+    private final OkHttpClient httpClient;
+    private final String sendMessageUrl;
+    
+    private final List<StaticResponse> responses;
+    
+    public StaticResponseSender(OkHttpClient httpClient, Configuration config) {
+        this.httpClient = httpClient;
+        
+        String apiUrl = config.containsSection("bot-api-url")
+                ? config.getString("bot-api-url")
+                : DEFAULT_API_URL;
+        
+        this.sendMessageUrl = apiUrl + config.getString("bot-token") + "/sendMessage";
+        this.responses = new CopyOnWriteArrayList<>();
+    }
+    
+    /**
+     * Creates static response from message template.
+     * @param template - builds the message with any chat id. Called again on {@link #reload()}
+     * @return encoded response
+     */
+    public StaticResponse register(Supplier<SendMessage> template) {
+        StaticResponse response = new StaticResponse(template);
+        responses.add(response);
+        
+        return response;
+    }
+    
+    /**
+     * Encodes all responses again. Should be called after messages are reloaded.
+     */
+    public void reload() {
+        responses.forEach(StaticResponse::encode);
+    }
+    
+    /**
+     * Sends the response to the chat and waits for Bot API to accept it.
+     * @param response - response to send
+     * @param chatID - chat to send to
+     */
+    public void send(StaticResponse response, long chatID) {
+        Request request = new Request.Builder()
+                .url(sendMessageUrl)
+                .post(RequestBody.create(response.getBody(chatID), JSON))
+                .build();
+        
+        // Errors like blocked bot are ignored the same way as responses of bot.execute
+        try {
+            httpClient.newCall(request).execute().close();
+        } catch (IOException e) {
+            Logger.error(chatID, null, "Failed to send message: {}", e.getMessage());
+        }
+    }
+}
@@ -27,8 +27,7 @@ public class User {
     }
     
     public SaveModel getUserSave() {
-        ProfileModel profile = getUserProfile();
-        return databaseManager.getQuestSave(profile);
+        return databaseManager.getQuestSave(chatID);
     }
     
     public boolean hasAchievement(Achievement achievement) {
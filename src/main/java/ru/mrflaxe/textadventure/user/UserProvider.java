@@ -1,20 +1,33 @@
 package ru.mrflaxe.textadventure.user;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ru.mrflaxe.textadventure.database.DatabaseManager;
 import ru.mrflaxe.textadventure.database.model.ProfileModel;
+import ru.mrflaxe.textadventure.tool.BloomFilter;
 
 public class UserProvider {
     
+    // Expected count of profiles is at least this. Prevents tiny filter on new databases
+    private static final int MIN_EXPECTED_PROFILES = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    
     private final DatabaseManager databaseManager;
     private final Map<Long, User> users; // cache
     
+    // Chat ids which have profile in database.
+    // If filter says chat id is unknown there is no reason to look for the profile.
+    // Null if chat ids failed to load.
+    private volatile BloomFilter knownChats;
+    
     public UserProvider(DatabaseManager databaseManager) {
         this.databaseManager = databaseManager;
-        this.users = new HashMap<>();
-        
+        this.users = new ConcurrentHashMap<>();
+        this.knownChats = loadKnownChats();
     }
     
     /**
@@ -24,8 +37,10 @@ public class UserProvider {
      */
     public User getUser(long chatID) {
         // If user contained in cache
-        if(users.containsKey(chatID)) {
-            return users.get(chatID);
+        User cached = users.get(chatID);
+        
+        if(cached != null) {
+            return cached;
         }
         
         // Gets user data from database
@@ -38,6 +53,85 @@ public class UserProvider {
         return loadUser(profile);
     }
     
+    /**
+     * Makes sure all given chats have users in cache and profiles in database. <br>
+     * Known chats are loaded with one query and new profiles are created in one transaction.
+     * Synchronized so the same new chat can't be created twice.
+     * @param chats - map where key is chat id and value is user first name
+     */
+    public synchronized void prepareUsers(Map<Long, String> chats) {
+        Map<Long, String> unknown = new HashMap<>();
+        Map<Long, String> maybeKnown = new HashMap<>();
+        
+        chats.forEach((chatID, name) -> {
+            if(users.containsKey(chatID)) {
+                return;
+            }
+            
+            if(knownChats == null || knownChats.mightContain(chatID)) {
+                maybeKnown.put(chatID, name);
+            } else {
+                unknown.put(chatID, name);
+            }
+        });
+        
+        // Filter can be wrong about known chats, so they are checked in database
+        if(!maybeKnown.isEmpty()) {
+            List<ProfileModel> profiles = databaseManager.getProfiles(maybeKnown.keySet());
+            
+            // Can't say who is new if database failed
+            if(profiles == null) {
+                return;
+            }
+            
+            profiles.forEach(profile -> {
+                loadUser(profile);
+                maybeKnown.remove(profile.getChatId());
+            });
+            
+            unknown.putAll(maybeKnown);
+        }
+        
+        if(unknown.isEmpty()) {
+            return;
+        }
+        
+        List<ProfileModel> created = databaseManager.createProfiles(unknown);
+        
+        // Another process sharing the database could create some of them after the filter was loaded
+        if(created == null) {
+            created = createMissingProfiles(unknown);
+        }
+        
+        if(created == null) {
+            return;
+        }
+        
+        created.forEach(profile -> {
+            if(knownChats != null) {
+                knownChats.add(profile.getChatId());
+            }
+            
+            loadUser(profile);
+        });
+    }
+    
+    /**
+     * Loads chat ids from database again. <br>
+     * Cluster workers call it when they take over chats, because profiles of these chats
+     * could be created by other workers after the filter was loaded.
+     */
+    public synchronized void reloadKnownChats() {
+        this.knownChats = loadKnownChats();
+    }
+    
+    /**
+     * @return count of users in cache
+     */
+    public int getCachedUsers() {
+        return users.size();
+    }
+    
     /**
      * Adds user to cache
      * @param chatID
@@ -45,6 +139,12 @@ public class UserProvider {
      */
     public void addUser(long chatID, User user) {
         users.put(chatID, user);
+        
+        BloomFilter filter = knownChats;
+        
+        if(filter != null) {
+            filter.add(chatID);
+        }
     }
     
     /**
@@ -61,4 +161,45 @@ public class UserProvider {
         
         return user;
     }
+    
+    // Checks in database which chats have profiles and creates profiles only for the rest.
+    // Returns existing and created profiles or null if database failed
+    private List<ProfileModel> createMissingProfiles(Map<Long, String> chats) {
+        List<ProfileModel> existing = databaseManager.getProfiles(chats.keySet());
+        
+        if(existing == null) {
+            return null;
+        }
+        
+        List<ProfileModel> profiles = new ArrayList<>(existing);
+        Map<Long, String> missing = new HashMap<>(chats);
+        profiles.forEach(profile -> missing.remove(profile.getChatId()));
+        
+        if(!missing.isEmpty()) {
+            List<ProfileModel> created = databaseManager.createProfiles(missing);
+            
+            if(created != null) {
+                profiles.addAll(created);
+            }
+        }
+        
+        return profiles;
+    }
+    
+    // Returns null if chat ids can't be read. Then every chat is checked in database.
+    private BloomFilter loadKnownChats() {
+        long count = databaseManager.countProfiles();
+        
+        if(count < 0) {
+            return null;
+        }
+        
+        BloomFilter filter = new BloomFilter((int) Math.min(Integer.MAX_VALUE, Math.max(MIN_EXPECTED_PROFILES, count * 2)), FALSE_POSITIVE_RATE);
+        
+        if(databaseManager.forEachChatID(filter::add) < 0) {
+            return null;
+        }
+        
+        return filter;
+    }
 }
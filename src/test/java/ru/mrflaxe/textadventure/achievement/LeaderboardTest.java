@@ -0,0 +1,130 @@
+package ru.mrflaxe.textadventure.achievement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import ru.mrflaxe.textadventure.achievement.Leaderboard.Place;
+
+class LeaderboardTest {
+    
+    @Test
+    void playersAreOrderedByCountThenDayThenChatID() {
+        Leaderboard leaderboard = new Leaderboard();
+        
+        leaderboard.add(30, 5);
+        leaderboard.add(20, 5);
+        leaderboard.add(10, 7);
+        leaderboard.add(40, 1);
+        leaderboard.add(40, 2);
+        
+        assertTop(leaderboard, 40, 20, 30, 10);
+        
+        assertEquals(1, leaderboard.getPlace(40).getRank());
+        assertEquals(2, leaderboard.getPlace(40).getAchievements());
+        assertEquals(2, leaderboard.getPlace(20).getRank());
+        assertEquals(4, leaderboard.getPlace(10).getRank());
+        assertNull(leaderboard.getPlace(50));
+    }
+    
+    @Test
+    void addingAchievementMovesPlayerUp() {
+        Leaderboard leaderboard = new Leaderboard();
+        
+        for (long chatID = 1; chatID <= 5; chatID++) {
+            leaderboard.add(chatID, 1);
+        }
+        
+        leaderboard.add(5, 2);
+        leaderboard.add(4, 3);
+        leaderboard.add(4, 3);
+        
+        assertTop(leaderboard, 4, 5, 1, 2, 3);
+        assertEquals(5, leaderboard.size());
+    }
+    
+    @Test
+    void topIsLimited() {
+        Leaderboard leaderboard = new Leaderboard();
+        
+        for (long chatID = 1; chatID <= 100; chatID++) {
+            leaderboard.add(chatID, chatID);
+        }
+        
+        List<Place> top = leaderboard.getTop(3);
+        
+        assertEquals(3, top.size());
+        assertEquals(1, top.get(0).getChatID());
+        assertEquals(3, top.get(2).getRank());
+        assertEquals(100, leaderboard.getTop(1000).size());
+    }
+    
+    @Test
+    void rebuildReplacesPlayers() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.add(1, 1);
+        
+        Map<Long, long[]> counts = new HashMap<>();
+        counts.put(7L, new long[] { 1, 4 });
+        counts.put(8L, new long[] { 3, 9 });
+        counts.put(9L, new long[] { 1, 2 });
+        
+        leaderboard.rebuild(counts);
+        
+        assertTop(leaderboard, 8, 9, 7);
+        assertNull(leaderboard.getPlace(1));
+    }
+    
+    @Test
+    void ranksMatchSortedListAfterRandomAchievements() {
+        Leaderboard leaderboard = new Leaderboard();
+        Map<Long, long[]> expected = new HashMap<>();
+        Random random = new Random(42);
+        
+        for (int i = 0; i < 20_000; i++) {
+            long chatID = random.nextInt(500);
+            long day = random.nextInt(1000);
+            
+            leaderboard.add(chatID, day);
+            
+            long[] value = expected.computeIfAbsent(chatID, key -> new long[2]);
+            value[0]++;
+            value[1] = Math.max(value[1], day);
+        }
+        
+        List<Long> sorted = new ArrayList<>(expected.keySet());
+        sorted.sort(Comparator.<Long>comparingLong(chatID -> -expected.get(chatID)[0])
+                .thenComparingLong(chatID -> expected.get(chatID)[1])
+                .thenComparingLong(chatID -> chatID));
+        
+        List<Place> top = leaderboard.getTop(sorted.size());
+        
+        for (int i = 0; i < sorted.size(); i++) {
+            long chatID = sorted.get(i);
+            Place place = leaderboard.getPlace(chatID);
+            
+            assertEquals(chatID, top.get(i).getChatID());
+            assertEquals(i + 1, place.getRank());
+            assertEquals(expected.get(chatID)[0], place.getAchievements());
+        }
+    }
+    
+    private void assertTop(Leaderboard leaderboard, long... chatIDs) {
+        List<Place> top = leaderboard.getTop(chatIDs.length);
+        
+        assertEquals(chatIDs.length, top.size());
+        
+        for (int i = 0; i < chatIDs.length; i++) {
+            assertEquals(chatIDs[i], top.get(i).getChatID());
+            assertEquals(i + 1, top.get(i).getRank());
+        }
+    }
+}
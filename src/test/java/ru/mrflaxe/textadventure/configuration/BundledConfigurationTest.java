@@ -0,0 +1,68 @@
+package ru.mrflaxe.textadventure.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Makes sure every yaml file shipped inside the jar can be parsed,
+ * so a broken sample config fails the build instead of the first startup.
+ */
+class BundledConfigurationTest {
+
+    @TempDir
+    Path configFolder;
+    
+    @Test
+    void configIsCopiedAndLoaded() {
+        Configuration config = load("config.yml");
+        
+        assertTrue(config.containsSection("database.type"));
+        assertTrue(config.containsSection("bot-token"));
+        assertTrue(config.containsSection("cluster.bind"));
+        assertTrue(config.containsSection("quests"));
+    }
+    
+    @Test
+    void messagesAreCopiedAndLoaded() {
+        Configuration messages = load("messages.yml");
+        
+        assertTrue(messages.containsSection("error"));
+        assertTrue(messages.containsSection("menu"));
+    }
+    
+    @Test
+    void achievementsAreCopiedAndLoaded() {
+        Configuration achievements = load("achievements.yml");
+        
+        assertTrue(achievements.containsSection("bad-tester"));
+    }
+    
+    @Test
+    void sampleQuestParses() throws IOException {
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("quest/quest.yml")) {
+            assertNotNull(input, "quest/quest.yml is missing from resources");
+            
+            Map<String, Object> quest = new Yaml().load(input);
+            
+            assertNotNull(quest);
+            assertTrue(quest.containsKey("start"));
+        }
+    }
+    
+    private Configuration load(String fileName) {
+        Configuration configuration = new Configuration(configFolder, fileName);
+        configuration.refresh();
+        
+        assertTrue(configFolder.resolve(fileName).toFile().isFile(), fileName + " was not copied");
+        return configuration;
+    }
+}
@@ -0,0 +1,120 @@
+package ru.mrflaxe.textadventure.database.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogStoreTest {
+    
+    @TempDir
+    Path folder;
+    
+    @Test
+    void tornTailIsCutOff() throws IOException {
+        Path file = folder.resolve("storage.log");
+        write(file, "first", "second", "third");
+        
+        // Last record is only partly on disk
+        long size = Files.size(file);
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.setLength(size - 2);
+        }
+        
+        LogStore store = new LogStore(file);
+        List<String> records = read(store);
+        
+        assertEquals(Arrays.asList("first", "second"), records);
+        assertEquals(size - frameOf("third"), Files.size(file));
+        
+        // New records go right after the last valid one
+        store.append(payload("fourth"));
+        store.close();
+        
+        assertEquals(Arrays.asList("first", "second", "fourth"), read(new LogStore(file)));
+    }
+    
+    @Test
+    void recordWithWrongChecksumEndsTheLog() throws IOException {
+        Path file = folder.resolve("storage.log");
+        write(file, "first", "second", "third");
+        
+        // Damages payload of the second record
+        long offset = 8 + frameOf("first") + 8;
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(offset);
+            raw.write('S');
+        }
+        
+        assertEquals(Arrays.asList("first"), read(new LogStore(file)));
+    }
+    
+    @Test
+    void rewriteReplacesTheLog() throws IOException {
+        Path file = folder.resolve("storage.log");
+        
+        LogStore store = new LogStore(file);
+        read(store);
+        
+        for (int i = 0; i < 100; i++) {
+            store.append(payload("old " + i));
+        }
+        
+        store.rewrite(output -> {
+            output.accept(payload("live 1"));
+            output.accept(payload("live 2"));
+        });
+        
+        assertEquals(8 + frameOf("live 1") + frameOf("live 2"), store.size());
+        assertEquals(store.size(), Files.size(file));
+        
+        // The log keeps working after the swap
+        store.append(payload("after"));
+        store.close();
+        
+        assertEquals(Arrays.asList("live 1", "live 2", "after"), read(new LogStore(file)));
+        assertFalse(Files.exists(folder.resolve("storage.log.tmp")));
+    }
+    
+    private void write(Path file, String... records) throws IOException {
+        LogStore store = new LogStore(file);
+        read(store);
+        
+        for (String record : records) {
+            store.append(payload(record));
+        }
+        
+        store.close();
+    }
+    
+    private List<String> read(LogStore store) throws IOException {
+        List<String> records = new ArrayList<>();
+        
+        store.open(payload -> {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            records.add(new String(bytes, StandardCharsets.UTF_8));
+        });
+        
+        return records;
+    }
+    
+    private ByteBuffer payload(String record) {
+        return ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private long frameOf(String record) {
+        return 8 + record.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
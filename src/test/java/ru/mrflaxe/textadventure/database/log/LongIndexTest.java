@@ -0,0 +1,94 @@
+package ru.mrflaxe.textadventure.database.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LongIndexTest {
+    
+    // Table of an index for 8 entries
+    private static final int CAPACITY = 16;
+    
+    @Test
+    void deleteShiftsChainAcrossTheEndOfTable() {
+        LongIndex<String> index = new LongIndex<>(8);
+        
+        List<Long> lastSlot = keysWithSlot(CAPACITY - 1, 3);
+        long first = lastSlot.get(0);
+        long second = lastSlot.get(1);
+        long third = lastSlot.get(2);
+        long zero = keysWithSlot(0, 1).get(0);
+        
+        // Chain starts in the last slot and wraps: first, second, third, zero
+        index.put(first, "first");
+        index.put(second, "second");
+        index.put(third, "third");
+        index.put(zero, "zero");
+        
+        assertEquals("first", index.remove(first));
+        
+        assertNull(index.get(first));
+        assertEquals("second", index.get(second));
+        assertEquals("third", index.get(third));
+        assertEquals("zero", index.get(zero));
+        
+        // Reinserted key goes to the end of the shifted chain
+        index.put(first, "first again");
+        assertEquals("second", index.remove(second));
+        assertEquals("zero", index.remove(zero));
+        
+        assertEquals("first again", index.get(first));
+        assertEquals("third", index.get(third));
+        assertNull(index.get(second));
+        assertNull(index.get(zero));
+        assertEquals(2, index.size());
+    }
+    
+    @Test
+    void behavesLikeHashMap() {
+        Random random = new Random(3);
+        LongIndex<Long> index = new LongIndex<>(8);
+        Map<Long, Long> expected = new HashMap<>();
+        
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(64);
+            
+            if(random.nextBoolean()) {
+                assertEquals(expected.put(key, (long) i), index.put(key, (long) i));
+            } else {
+                assertEquals(expected.remove(key), index.remove(key));
+            }
+            
+            assertEquals(expected.size(), index.size());
+        }
+        
+        for (long key = 0; key < 64; key++) {
+            assertEquals(expected.get(key), index.get(key));
+        }
+    }
+    
+    private List<Long> keysWithSlot(int slot, int count) {
+        List<Long> keys = new ArrayList<>();
+        
+        for (long key = 1; keys.size() < count; key++) {
+            if(slotOf(key) == slot) {
+                keys.add(key);
+            }
+        }
+        
+        return keys;
+    }
+    
+    // Same hash as in LongIndex
+    private int slotOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (CAPACITY - 1);
+    }
+}